@@ -1,4 +1,20 @@
 #!/bin/bash
 
-gradle -q run -Ptestfile=${1}
+# Sends the files to a compile server (./server.sh) if one is running,
+# otherwise compiles them with gradle
+PORT=${LJ_PORT:-7457}
 
+if { exec 3<>/dev/tcp/127.0.0.1/$PORT; } 2>/dev/null; then
+    { pwd; for arg in "$@"; do printf '%s\n' "$arg"; done; echo; } >&3
+
+    while IFS= read -r line <&3; do
+        case "$line" in
+            "out "*) printf '%s\n' "${line#out }" ;;
+            "err "*) printf '%s\n' "${line#err }" >&2 ;;
+            "exit "*) exit "${line#exit }" ;;
+        esac
+    done
+    exit 1
+fi
+
+gradle -q run -Pljargs="$*"
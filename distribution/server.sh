@@ -0,0 +1,4 @@
+#!/bin/bash
+
+# Runs a compile server for compile.sh on port $LJ_PORT (default 7457)
+java -jar lj.jar --server ${LJ_PORT:-7457}
@@ -9,6 +9,70 @@ help() {
     echo "    -r  Recursively run all LJ files in the given directory"
     echo "    -s  Set the expected output for the LJ files to their actual output."
     echo "        If -s option not present, LJ file output will be compared to the previous expected output"
+    echo "    -m  Compile with --stream or --bytecode, or interpret with --interpret (-m stream, -m bytecode,"
+    echo "        -m interpret). Compile output is compared to <name>_<mode>_compile.exp, and the programs must"
+    echo "        run as they do without it. Interpreted programs' output is compared to <name>_interpret_run.exp"
+    echo "        and <name>_interpret_test.exp"
+}
+
+# Takes the name of an output file without its extension. If the -s option is
+# used, copy the output to the expected output. Otherwise, show a diff between
+# the expected and actual output.
+check() {
+    local out=$1
+    local exp=${2:-$1}
+    local what=$3
+    if $set_expected; then
+        cp $out.out $exp.exp
+    else
+        touch $exp.exp
+        diff -u $out.out $exp.exp > $out.diff
+        if [ -s $out.diff ]; then
+            ((changes_found += 1))
+            echo "Changes detected in $what output; use -s option to set expected output"
+            echo
+            cat $out.diff
+            echo
+        fi
+    fi
+}
+
+# Like test, for a file compiled with --$mode
+test_mode() {
+    local file=$1
+    if [ $mode == interpret ]; then
+        echo "Interpreting $file"
+        ./compile.sh --interpret --run $file 2>&1 < /dev/null | tee $base\_interpret_run.out
+        echo "Done interpreting"
+        echo
+        echo "Interpreting tests for $file"
+        ./compile.sh --interpret --test $file 2>&1 < /dev/null | grep -wvi time > $base\_interpret_test.out
+        echo "Done testing"
+        echo
+        check $base\_interpret_run "" "interpreted run"
+        check $base\_interpret_test "" "interpreted test"
+        return
+    fi
+
+    echo "Compiling $file with --$mode"
+    ./compile.sh --$mode $file 2>&1 | grep -wvi time > $base\_$mode\_compile.out
+    echo "Done compiling"
+    echo
+    echo "Running $file"
+    ./run.sh 2>&1 | tee $base\_$mode\_run.out
+    echo "Done running"
+    echo
+    echo "Running tests for $file"
+    ./test.sh 2>&1 | grep -wvi time > $base\_$mode\_test.out
+    echo "Done testing"
+    echo
+    check $base\_$mode\_compile "" "--$mode compile"
+
+    # Only the compile output may differ from the default mode's
+    if ! $set_expected; then
+        check $base\_$mode\_run $base\_run "--$mode run"
+        check $base\_$mode\_test $base\_test "--$mode test"
+    fi
 }
 
 # Takes the name of a file. If the input file is a LJ file, compile and run it.
@@ -25,6 +89,10 @@ test() {
         outdir=$parent/outputs
         base=$outdir/$name
         mkdir -p $outdir
+        if [ -n "$mode" ]; then
+            test_mode $file
+            return
+        fi
         echo "Compiling $file"
         ./compile.sh $file 2>&1 | grep -wvi time > $base\_compile.out
         echo "Done compiling"
@@ -37,39 +105,9 @@ test() {
         ./test.sh 2>&1 | grep -wvi time > $base\_test.out
         echo "Done testing"
         echo
-        if $set_expected; then
-            cp $base\_compile.out $base\_compile.exp
-            cp $base\_run.out $base\_run.exp
-            cp $base\_test.out $base\_test.exp
-        else
-            touch $base\_compile.exp
-            touch $base\_run.exp
-            touch $base\_test.exp
-            diff -u $base\_compile.out $base\_compile.exp > $base\_compile.diff
-            if [ -s $base\_compile.diff ]; then
-                ((changes_found += 1))
-                echo "Changes detected in compile output; use -s option to set expected output"
-                echo
-                cat $base\_compile.diff
-                echo
-            fi
-            diff -u $base\_run.out $base\_run.exp > $base\_run.diff
-            if [ -s $base\_run.diff ]; then
-                ((changes_found += 1))
-                echo "Changes detected in run output; use -s option to set expected output"
-                echo
-                cat $base\_run.diff
-                echo
-            fi
-            diff -u $base\_test.out $base\_test.exp > $base\_test.diff
-            if [ -s $base\_test.diff ]; then
-                ((changes_found += 1))
-                echo "Changes detected in test output; use -s option to set expected output"
-                echo
-                cat $base\_test.diff
-                echo
-            fi
-        fi
+        check $base\_compile "" compile
+        check $base\_run "" run
+        check $base\_test "" test
     elif [ -d $file ] && $recursive; then
         for sub in $(ls $file); do
             test $file/$sub
@@ -80,9 +118,10 @@ test() {
 help_flag=false
 recursive=false
 set_expected=false
+mode=
 
 # Parse flags
-while getopts :hrs flag; do
+while getopts :hrsm: flag; do
     case $flag in
         h)
             help_flag=true
@@ -93,6 +132,9 @@ while getopts :hrs flag; do
         s)
             set_expected=true
             ;;
+        m)
+            mode=$OPTARG
+            ;;
         \?)
             echo "Unexpected flag $OPTARG" 1>&2
             echo
@@ -108,6 +150,17 @@ if $help_flag; then
     exit
 fi
 
+case "$mode" in
+    ""|stream|bytecode|interpret)
+        ;;
+    *)
+        echo "Unexpected mode $mode" 1>&2
+        echo
+        help
+        exit
+        ;;
+esac
+
 # Make sure there's at least one file given
 if [ $# == 0 ]; then
     echo "Expecting at least one file" 1>&2
@@ -0,0 +1,101 @@
+package com.github.lessjava.benchmark;
+
+import java.io.StringWriter;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.lessjava.CompilationContext;
+import com.github.lessjava.InMemoryCompiler;
+import com.github.lessjava.visitor.impl.LJASTConverter;
+import com.github.lessjava.visitor.impl.LJGenerateJava;
+
+/**
+ * The stages of the compiler that don't change their input: lexing, parsing,
+ * conversion to an AST, code generation and javac. Each operation takes every
+ * program of the corpus through one stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(2)
+public class CompilerBenchmark {
+    @Param("tests")
+    public String corpus;
+
+    private List<String> sources;
+    private List<ParseTree> parseTrees;
+    private List<Corpus.Program> programs;
+    private List<String> generated;
+
+    @Setup
+    public void setup() {
+        sources = new Corpus(corpus).sources;
+        parseTrees = Corpus.parseAll(sources);
+        programs = Corpus.compileUpTo(parseTrees, null);
+        generated = Corpus.generateAll(programs);
+    }
+
+    @Benchmark
+    public void lexer(Blackhole bh) {
+        for (String source : sources) {
+            bh.consume(Corpus.lexer(source).getAllTokens());
+        }
+    }
+
+    @Benchmark
+    public void parser(Blackhole bh) {
+        for (String source : sources) {
+            bh.consume(Corpus.parse(source));
+        }
+    }
+
+    @Benchmark
+    public void converter(Blackhole bh) {
+        for (ParseTree tree : parseTrees) {
+            LJASTConverter converter = new LJASTConverter(new CompilationContext());
+            new ParseTreeWalker().walk(converter, tree);
+            bh.consume(converter.getAST());
+        }
+    }
+
+    @Benchmark
+    public void generateJava(Blackhole bh) {
+        for (Corpus.Program program : programs) {
+            LJGenerateJava generateJava = new LJGenerateJava(program.context, null);
+            program.ast.traverse(generateJava);
+            bh.consume(generateJava.getSource());
+        }
+    }
+
+    /**
+     * javac in memory, as for --run; the wrappers are on the class path already.
+     * Each operation takes seconds, so there are fewer iterations.
+     */
+    @Benchmark
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public void javac(Blackhole bh) {
+        for (String source : generated) {
+            bh.consume(InMemoryCompiler.compile(source, Paths.get("generated/Main.java"), Paths.get("generated"),
+                    new StringWriter()));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.lessjava.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+import com.github.lessjava.CompilationContext;
+import com.github.lessjava.ProgramParser;
+import com.github.lessjava.generated.LJLexer;
+import com.github.lessjava.generated.LJParser;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.visitor.impl.BuildParentLinks;
+import com.github.lessjava.visitor.impl.LJASTBuildClassLinks;
+import com.github.lessjava.visitor.impl.LJASTConverter;
+import com.github.lessjava.visitor.impl.LJASTInferConstructors;
+import com.github.lessjava.visitor.impl.LJAssignTestVariables;
+import com.github.lessjava.visitor.impl.LJGenerateJava;
+import com.github.lessjava.visitor.impl.LJInferenceWorklist;
+import com.github.lessjava.visitor.impl.LJStaticAnalysis;
+
+/**
+ * The .lj programs under a directory (tests/ by default), and the compiler's
+ * pipeline to take them through, pass by pass, in the order LJCompiler runs
+ * the passes
+ */
+public class Corpus {
+    // Passes between conversion to an AST and code generation, by name
+    public static final Map<String, BiConsumer<CompilationContext, ASTProgram>> PASSES = new LinkedHashMap<>();
+
+    static {
+        PASSES.put("parentLinks", (context, program) -> program.traverse(new BuildParentLinks()));
+        PASSES.put("classLinks", (context, program) -> program.traverse(new LJASTBuildClassLinks()));
+        PASSES.put("inferConstructors", (context, program) -> program.traverse(new LJASTInferConstructors(context)));
+        PASSES.put("staticAnalysis", (context, program) -> program.traverse(new LJStaticAnalysis(context)));
+        PASSES.put("inference", (context, program) -> new LJInferenceWorklist(context, program).run());
+        PASSES.put("assignTestVariables", (context, program) -> program.traverse(new LJAssignTestVariables()));
+        PASSES.put("finalStaticAnalysis", (context, program) -> program.traverse(new LJStaticAnalysis(context)));
+    }
+
+    /**
+     * A program on its way through the compiler
+     */
+    public static class Program {
+        public final CompilationContext context = new CompilationContext();
+        public final ASTProgram ast;
+
+        private Program(ParseTree parseTree) {
+            LJASTConverter converter = new LJASTConverter(context);
+            new ParseTreeWalker().walk(converter, parseTree);
+            this.ast = converter.getAST();
+        }
+    }
+
+    public final List<String> sources = new ArrayList<>();
+
+    /**
+     * Programs with syntax errors and those expected to fail (tests/failing)
+     * are left out
+     */
+    public Corpus(String directory) {
+        try (Stream<Path> files = Files.walk(Paths.get(directory))) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".lj") && !f.toString().contains("failing"))
+                    .sorted().collect(Collectors.toList())) {
+                String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                LJParser parser = new LJParser(new CommonTokenStream(lexer(source)));
+
+                parser.removeErrorListeners();
+                parser.program();
+
+                if (parser.getNumberOfSyntaxErrors() == 0) {
+                    sources.add(source);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No .lj files in " + directory);
+        }
+    }
+
+    public static LJLexer lexer(String source) {
+        return new LJLexer(new ANTLRInputStream(source));
+    }
+
+    public static ParseTree parse(String source) {
+        return ProgramParser.parse(new LJParser(new CommonTokenStream(lexer(source))));
+    }
+
+    public static List<ParseTree> parseAll(List<String> sources) {
+        List<ParseTree> trees = new ArrayList<>();
+
+        for (String source : sources) {
+            trees.add(parse(source));
+        }
+
+        return trees;
+    }
+
+    /**
+     * @return Every program, converted to an AST and taken through the passes
+     *         before the given one (all passes if it is null)
+     */
+    public static List<Program> compileUpTo(List<ParseTree> trees, String pass) {
+        List<String> names = new ArrayList<>(PASSES.keySet());
+
+        if (pass != null && !names.contains(pass)) {
+            throw new IllegalArgumentException("Unknown pass " + pass + ", expected one of " + names);
+        }
+
+        List<Program> programs = new ArrayList<>();
+
+        for (ParseTree tree : trees) {
+            Program program = new Program(tree);
+
+            for (String name : pass == null ? names : names.subList(0, names.indexOf(pass))) {
+                PASSES.get(name).accept(program.context, program.ast);
+            }
+
+            programs.add(program);
+        }
+
+        return programs;
+    }
+
+    /**
+     * @return Main.java of every program
+     */
+    public static List<String> generateAll(List<Program> programs) {
+        List<String> generated = new ArrayList<>();
+
+        for (Program program : programs) {
+            LJGenerateJava generateJava = new LJGenerateJava(program.context, null);
+            program.ast.traverse(generateJava);
+            generated.add(generateJava.getSource());
+        }
+
+        return generated;
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.lessjava.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.lessjava.ProgramParser;
+import com.github.lessjava.generated.LJParser;
+
+/**
+ * Parsing of a large synthetic program, with long expressions of every
+ * precedence level, method calls and assignments, as LJCompiler parses it
+ * (SLL first) and with full LL prediction only
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(2)
+public class ParserBenchmark {
+    @Param("500")
+    public int functions;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = synthetic(functions);
+    }
+
+    @Benchmark
+    public ParseTree twoStage() {
+        return ProgramParser.parse(new LJParser(new CommonTokenStream(Corpus.lexer(source))));
+    }
+
+    @Benchmark
+    public ParseTree ll() {
+        LJParser parser = new LJParser(new CommonTokenStream(Corpus.lexer(source)));
+
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+        return parser.program();
+    }
+
+    /**
+     * @return A valid program of the given number of functions, each a chain
+     *         of the previous one
+     */
+    public static String synthetic(int functions) {
+        StringBuilder s = new StringBuilder();
+
+        s.append("main() {\n  println(f0(1, 2))\n}\n\n");
+
+        for (int i = 0; i < functions; i++) {
+            String next = i + 1 < functions ? "f" + (i + 1) + "(a + 1, b)" : "a";
+
+            s.append("f").append(i).append("(a, b) {\n");
+            s.append("  xs = [a, a * 2, (a + 3) % 7, -a]\n");
+            s.append("  m = {a, b, a + b}\n");
+            s.append("  c = a * 2 + b / 3 - (a % 5) * (b - a) + xs.get(0) - m.size()\n");
+            s.append("  if (a < b && b >= 0 || !(a == b) && a != 3 * b - 1) {\n");
+            s.append("    c += xs.size() * (a + b * (a - b * (a + 1)))\n");
+            s.append("  }\n");
+            s.append("  while (c > 100 && c <= 1000000) {\n");
+            s.append("    c -= (c / 2 + a * a - b) % 10 + 1\n");
+            s.append("  }\n");
+            s.append("  c += xs[1] + xs[2] * xs[3]\n");
+            s.append("  return ").append(next).append(" + c * 0\n");
+            s.append("}\n\n");
+        }
+
+        return s.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.lessjava.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.lessjava.CompilationContext;
+import com.github.lessjava.types.ast.ASTProgram;
+
+/**
+ * The AST passes, one at a time. Passes change the AST, so every operation
+ * gets fresh ASTs that have been through the passes before the measured one.
+ * "inference" is the whole fixed-point loop of type inference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(2)
+public class PassBenchmark {
+    @Param("tests")
+    public String corpus;
+
+    @Param({ "parentLinks", "classLinks", "inferConstructors", "staticAnalysis", "inference",
+            "assignTestVariables", "finalStaticAnalysis" })
+    public String pass;
+
+    private List<ParseTree> parseTrees;
+    private BiConsumer<CompilationContext, ASTProgram> visitor;
+    private List<Corpus.Program> programs;
+
+    @Setup
+    public void setup() {
+        parseTrees = Corpus.parseAll(new Corpus(corpus).sources);
+        visitor = Corpus.PASSES.get(pass);
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        programs = Corpus.compileUpTo(parseTrees, pass);
+    }
+
+    @Benchmark
+    public List<Corpus.Program> pass() {
+        for (Corpus.Program program : programs) {
+            visitor.accept(program.context, program.ast);
+        }
+
+        return programs;
+    }
+}
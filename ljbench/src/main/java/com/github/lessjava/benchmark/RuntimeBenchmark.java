@@ -0,0 +1,303 @@
+package com.github.lessjava.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wrappers.LJIO;
+import wrappers.LJIntList;
+import wrappers.LJIntMap;
+import wrappers.LJIntSet;
+import wrappers.LJList;
+import wrappers.LJMap;
+import wrappers.LJSet;
+
+/**
+ * Operations of the wrappers generated programs run on, each repeated size
+ * times per operation. The LJInt* collections are those used with
+ * --primitives. Reading from LJIO isn't measured: its scanner is bound to the
+ * standard input once, when the class is loaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(2)
+public class RuntimeBenchmark {
+    @Param({ "100", "10000" })
+    public int size;
+
+    private LJList<Integer> list;
+    private LJIntList intList;
+    private LJMap<Integer, Integer> map;
+    private LJIntMap<Integer> intMap;
+    private LJSet<Integer> set;
+    private LJIntSet intSet;
+
+    private PrintStream stdout;
+
+    @Setup
+    public void setup() {
+        list = new LJList<>();
+        intList = new LJIntList();
+        map = new LJMap<>();
+        intMap = new LJIntMap<>();
+        set = new LJSet<>();
+        intSet = new LJIntSet();
+
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+            intList.add(i);
+            map.put(i, i);
+            intMap.putInt(i, i);
+            set.add(i);
+            intSet.add(i);
+        }
+
+        // LJIO prints to System.out, which is thrown away
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    // Lists
+
+    @Benchmark
+    public LJList<Integer> listAdd() {
+        LJList<Integer> l = new LJList<>();
+
+        for (int i = 0; i < size; i++) {
+            l.add(i);
+        }
+
+        return l;
+    }
+
+    @Benchmark
+    public LJIntList intListAdd() {
+        LJIntList l = new LJIntList();
+
+        for (int i = 0; i < size; i++) {
+            l.add(i);
+        }
+
+        return l;
+    }
+
+    @Benchmark
+    public int listGet() {
+        int sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            sum += list.get(i);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int intListGet() {
+        int sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            sum += intList.getInt(i);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Every element goes in at the back and comes out at the front
+     */
+    @Benchmark
+    public int listQueue() {
+        int sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            list.enqueue(i);
+            sum += list.dequeue();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int intListQueue() {
+        int sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            intList.enqueue(i);
+            sum += intList.dequeue();
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int listStack() {
+        int sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            list.push(i);
+            sum += list.pop();
+        }
+
+        return sum;
+    }
+
+    /**
+     * Insertion and removal in the middle of the list
+     */
+    @Benchmark
+    public LJList<Integer> listInsertRemove() {
+        for (int i = 0; i < size; i++) {
+            list.insert(size / 2, i);
+            list.removeAt(size / 2);
+        }
+
+        return list;
+    }
+
+    @Benchmark
+    public boolean listContains() {
+        return list.contains(size - 1) && intList.contains(size - 1);
+    }
+
+    // Maps
+
+    @Benchmark
+    public LJMap<Integer, Integer> mapPut() {
+        LJMap<Integer, Integer> m = new LJMap<>();
+
+        for (int i = 0; i < size; i++) {
+            m.put(i, i);
+        }
+
+        return m;
+    }
+
+    @Benchmark
+    public LJIntMap<Integer> intMapPut() {
+        LJIntMap<Integer> m = new LJIntMap<>();
+
+        for (int i = 0; i < size; i++) {
+            m.putInt(i, i);
+        }
+
+        return m;
+    }
+
+    @Benchmark
+    public int mapGet() {
+        int sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (map.contains(i)) {
+                sum += map.get(i);
+            }
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int intMapGet() {
+        int sum = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (intMap.contains(i)) {
+                sum += intMap.get(i);
+            }
+        }
+
+        return sum;
+    }
+
+    // Sets
+
+    @Benchmark
+    public LJSet<Integer> setAdd() {
+        LJSet<Integer> s = new LJSet<>();
+
+        for (int i = 0; i < size; i++) {
+            s.add(i);
+        }
+
+        return s;
+    }
+
+    @Benchmark
+    public LJIntSet intSetAdd() {
+        LJIntSet s = new LJIntSet();
+
+        for (int i = 0; i < size; i++) {
+            s.add(i);
+        }
+
+        return s;
+    }
+
+    @Benchmark
+    public int setContains() {
+        int found = 0;
+
+        for (int i = 0; i < 2 * size; i++) {
+            found += set.contains(i) ? 1 : 0;
+        }
+
+        return found;
+    }
+
+    @Benchmark
+    public int intSetContains() {
+        int found = 0;
+
+        for (int i = 0; i < 2 * size; i++) {
+            found += intSet.contains(i) ? 1 : 0;
+        }
+
+        return found;
+    }
+
+    // Output
+
+    @Benchmark
+    public void println() {
+        for (int i = 0; i < size; i++) {
+            LJIO.println(i);
+        }
+    }
+
+    @Benchmark
+    public void printf() {
+        for (int i = 0; i < size; i++) {
+            LJIO.printf("%d %s%n", i, "x");
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package wrappers;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing table of int keys backing {@link LJIntSet} and
+ * {@link LJIntMap}. Lookups use linear probing over primitive arrays.
+ *
+ * Iteration does not follow the probe order: it replays the bucket order a
+ * java.util.HashMap with the same Integer keys, sizing and insertion history
+ * would use, so printing an LJIntSet/LJIntMap gives the same output as the
+ * equivalent LJSet/LJMap. Keys are logged as they are inserted, and the order
+ * is rebuilt from the log the first time the table is iterated after a change,
+ * in time linear in the size and bucket count, as iterating a HashMap takes.
+ */
+class IntHashTable {
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MINIMUM_SLOTS = 8;
+
+    private int[] keys;
+    private Object[] values;
+    private int[] stamps;
+    private boolean[] used;
+    private int size;
+
+    // Emulated java.util.HashMap table length and resize threshold
+    private int buckets;
+    private int threshold;
+
+    // Keys in insertion order, indexed by stamp; entries whose key was removed
+    // since, or inserted again, are stale
+    private int[] log;
+    private int logSize;
+
+    // Keys in HashMap iteration order, or null if they changed since
+    private int[] order;
+
+    /**
+     * @param withValues
+     *            Whether a value is stored for every key
+     * @param initialThreshold
+     *            Emulated HashMap threshold before the first insertion (0 for the
+     *            default capacity)
+     */
+    IntHashTable(boolean withValues, int initialThreshold) {
+        this.keys = new int[MINIMUM_SLOTS];
+        this.values = withValues ? new Object[MINIMUM_SLOTS] : null;
+        this.stamps = new int[MINIMUM_SLOTS];
+        this.used = new boolean[MINIMUM_SLOTS];
+        this.log = new int[MINIMUM_SLOTS];
+        this.threshold = initialThreshold;
+    }
+
+    /**
+     * Threshold of {@code new HashMap<>(initialCapacity)}
+     */
+    static int forCapacity(int initialCapacity) {
+        int n = -1 >>> Integer.numberOfLeadingZeros(Math.max(initialCapacity, 1) - 1);
+        return (n < 0) ? 1 : (n >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY : n + 1;
+    }
+
+    /**
+     * Threshold of {@code new HashMap<>(map)} for a map of the given size
+     */
+    static int forMapCopy(int size) {
+        if (size == 0) {
+            return 0;
+        }
+
+        float ft = ((float) size / LOAD_FACTOR) + 1.0F;
+        return forCapacity((ft < (float) MAXIMUM_CAPACITY) ? (int) ft : MAXIMUM_CAPACITY);
+    }
+
+    /**
+     * Threshold of {@code new HashSet<>(collection)} for a collection of the given
+     * size
+     */
+    static int forCollectionCopy(int size) {
+        return forCapacity(Math.max((int) (size / LOAD_FACTOR) + 1, 16));
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int key) {
+        return find(key) >= 0;
+    }
+
+    Object get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    /**
+     * Inserts the key if it is absent
+     *
+     * @return True if the key was added
+     */
+    boolean add(int key) {
+        return insert(key, null, false);
+    }
+
+    /**
+     * Associates the key with the value
+     *
+     * @return Previous value, or null if the key was absent
+     */
+    Object put(int key, Object value) {
+        int slot = find(key);
+
+        if (slot >= 0) {
+            Object previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+
+        insert(key, value, true);
+        return null;
+    }
+
+    /**
+     * Removes the key
+     *
+     * @return True if the key was present
+     */
+    boolean remove(int key) {
+        int slot = find(key);
+
+        if (slot < 0) {
+            return false;
+        }
+
+        delete(slot);
+        return true;
+    }
+
+    /**
+     * Removes the key
+     *
+     * @return Value removed, or null if the key was absent
+     */
+    Object removeValue(int key) {
+        int slot = find(key);
+
+        if (slot < 0) {
+            return null;
+        }
+
+        Object previous = values[slot];
+        delete(slot);
+        return previous;
+    }
+
+    void clear() {
+        Arrays.fill(used, false);
+        if (values != null) {
+            Arrays.fill(values, null);
+        }
+        size = 0;
+        logSize = 0;
+        order = null;
+    }
+
+    /**
+     * Keys in java.util.HashMap iteration order. The returned array must not be
+     * modified; it is a snapshot, not affected by later modifications.
+     */
+    int[] keysInOrder() {
+        if (order == null) {
+            order = orderByBucket();
+        }
+
+        return order;
+    }
+
+    private boolean insert(int key, Object value, boolean known) {
+        if (!known && find(key) >= 0) {
+            return false;
+        }
+
+        if (buckets == 0) {
+            resizeBuckets();
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        if (logSize == log.length) {
+            compactLog();
+        }
+
+        int slot = home(key);
+        while (used[slot]) {
+            slot = (slot + 1) & (keys.length - 1);
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        stamps[slot] = logSize;
+        log[logSize++] = key;
+        if (values != null) {
+            values[slot] = value;
+        }
+
+        order = null;
+
+        if (++size > threshold) {
+            resizeBuckets();
+        }
+
+        return true;
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = home(key);
+
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Backward-shift deletion, so no tombstones are left behind
+     */
+    private void delete(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+
+        while (used[next]) {
+            int home = home(keys[next]);
+
+            boolean movable = (hole <= next) ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                keys[hole] = keys[next];
+                stamps[hole] = stamps[next];
+                if (values != null) {
+                    values[hole] = values[next];
+                }
+                hole = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        used[hole] = false;
+        if (values != null) {
+            values[hole] = null;
+        }
+
+        size--;
+        order = null;
+    }
+
+    private int home(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (keys.length - 1);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldStamps = stamps;
+        boolean[] oldUsed = used;
+
+        keys = new int[capacity];
+        values = oldValues == null ? null : new Object[capacity];
+        stamps = new int[capacity];
+        used = new boolean[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) {
+                continue;
+            }
+
+            int slot = home(oldKeys[i]);
+            while (used[slot]) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+
+            used[slot] = true;
+            keys[slot] = oldKeys[i];
+            stamps[slot] = oldStamps[i];
+            if (values != null) {
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Mirrors java.util.HashMap.resize()
+     */
+    private void resizeBuckets() {
+        int oldCap = buckets;
+        int oldThr = threshold;
+        int newCap;
+        int newThr = 0;
+
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return;
+            }
+
+            newCap = oldCap << 1;
+            if (newCap < MAXIMUM_CAPACITY && oldCap >= 16) {
+                newThr = oldThr << 1;
+            }
+        } else if (oldThr > 0) {
+            newCap = oldThr;
+        } else {
+            newCap = 16;
+            newThr = (int) (16 * LOAD_FACTOR);
+        }
+
+        if (newThr == 0) {
+            float ft = (float) newCap * LOAD_FACTOR;
+            newThr = (newCap < MAXIMUM_CAPACITY && ft < (float) MAXIMUM_CAPACITY) ? (int) ft : Integer.MAX_VALUE;
+        }
+
+        buckets = newCap;
+        threshold = newThr;
+        order = null;
+    }
+
+    /**
+     * Drops the stale entries of the log, or makes room for more if there are
+     * few
+     */
+    private void compactLog() {
+        if (size > log.length / 2) {
+            log = Arrays.copyOf(log, log.length * 2);
+            return;
+        }
+
+        int n = 0;
+
+        // A key's live entry is its last, so renumbering it never makes a
+        // later, stale entry of the key look live
+        for (int i = 0; i < logSize; i++) {
+            int slot = find(log[i]);
+
+            if (slot >= 0 && stamps[slot] == i) {
+                stamps[slot] = n;
+                log[n++] = log[i];
+            }
+        }
+
+        logSize = n;
+    }
+
+    /**
+     * HashMap keeps each bucket's chain in insertion order, so its iteration
+     * order is a stable sort of the insertion order by bucket index, done here
+     * by counting keys per bucket.
+     */
+    private int[] orderByBucket() {
+        int[] byInsertion = new int[size];
+        int n = 0;
+
+        for (int i = 0; i < logSize; i++) {
+            int slot = find(log[i]);
+
+            if (slot >= 0 && stamps[slot] == i) {
+                byInsertion[n++] = log[i];
+            }
+        }
+
+        if (size == 0) {
+            return byInsertion;
+        }
+
+        int[] start = new int[buckets + 1];
+
+        for (int key : byInsertion) {
+            start[bucket(key) + 1]++;
+        }
+
+        for (int b = 0; b < buckets; b++) {
+            start[b + 1] += start[b];
+        }
+
+        int[] byBucket = new int[size];
+
+        for (int key : byInsertion) {
+            byBucket[start[bucket(key)]++] = key;
+        }
+
+        return byBucket;
+    }
+
+    /**
+     * Bucket of an Integer key in the emulated HashMap table
+     */
+    private int bucket(int key) {
+        return (key ^ (key >>> 16)) & (buckets - 1);
+    }
+}
@@ -0,0 +1,210 @@
+package wrappers;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Unboxed counterpart of {@link LJList} for reals, using the same ring
+ * buffer layout.
+ */
+public class LJDoubleList extends AbstractList<Double> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private double[] elements;
+    private int head;
+    private int size;
+
+    public LJDoubleList() {
+        this.elements = new double[DEFAULT_CAPACITY];
+    }
+
+    public LJDoubleList(double... elements) {
+        this.elements = Arrays.copyOf(elements, Math.max(elements.length, DEFAULT_CAPACITY));
+        this.size = elements.length;
+    }
+
+    public LJDoubleList(Collection<Double> collection) {
+        this();
+        addAll(collection);
+    }
+
+    public double getDouble(int index) {
+        checkIndex(index);
+        return elements[slot(index)];
+    }
+
+    @Override
+    public Double get(int index) {
+        return getDouble(index);
+    }
+
+    public double setDouble(int index, double element) {
+        checkIndex(index);
+        double previous = elements[slot(index)];
+        elements[slot(index)] = element;
+        return previous;
+    }
+
+    @Override
+    public Double set(int index, Double element) {
+        return setDouble(index, element.doubleValue());
+    }
+
+    public boolean add(double element) {
+        grow();
+        elements[slot(size)] = element;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean add(Double element) {
+        return add(element.doubleValue());
+    }
+
+    @Override
+    public void add(int index, Double element) {
+        insert(index, element.doubleValue());
+    }
+
+    public void push(double element) {
+        add(element);
+    }
+
+    public void enqueue(double element) {
+        add(element);
+    }
+
+    public double pop() {
+        return removeDouble(size - 1);
+    }
+
+    public double dequeue() {
+        return removeDouble(0);
+    }
+
+    public void insert(int index, double element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        grow();
+
+        if (index < size / 2) {
+            head = (head == 0) ? elements.length - 1 : head - 1;
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+
+        elements[slot(index)] = element;
+        size++;
+        modCount++;
+    }
+
+    public void removeAt(int index) {
+        removeDouble(index);
+    }
+
+    public double removeDouble(int index) {
+        checkIndex(index);
+        double previous = elements[slot(index)];
+
+        if (index < size / 2) {
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            head = (head == elements.length - 1) ? 0 : head + 1;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        }
+
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public Double remove(int index) {
+        return removeDouble(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+
+        if (index < 0) {
+            return false;
+        }
+
+        removeDouble(index);
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Double)) {
+            return -1;
+        }
+
+        double value = (Double) o;
+        for (int i = 0; i < size; i++) {
+            if (Double.doubleToLongBits(elements[slot(i)]) == Double.doubleToLongBits(value)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    private int slot(int index) {
+        int slot = head + index;
+        return (slot >= elements.length) ? slot - elements.length : slot;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void grow() {
+        if (size < elements.length) {
+            return;
+        }
+
+        double[] grown = new double[elements.length + (elements.length >> 1) + 1];
+        for (int i = 0; i < size; i++) {
+            grown[i] = elements[slot(i)];
+        }
+
+        elements = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,210 @@
+package wrappers;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * Unboxed counterpart of {@link LJList} for integers, using the same ring
+ * buffer layout.
+ */
+public class LJIntList extends AbstractList<Integer> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private int[] elements;
+    private int head;
+    private int size;
+
+    public LJIntList() {
+        this.elements = new int[DEFAULT_CAPACITY];
+    }
+
+    public LJIntList(int... elements) {
+        this.elements = Arrays.copyOf(elements, Math.max(elements.length, DEFAULT_CAPACITY));
+        this.size = elements.length;
+    }
+
+    public LJIntList(Collection<Integer> collection) {
+        this();
+        addAll(collection);
+    }
+
+    public int getInt(int index) {
+        checkIndex(index);
+        return elements[slot(index)];
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    public int setInt(int index, int element) {
+        checkIndex(index);
+        int previous = elements[slot(index)];
+        elements[slot(index)] = element;
+        return previous;
+    }
+
+    @Override
+    public Integer set(int index, Integer element) {
+        return setInt(index, element.intValue());
+    }
+
+    public boolean add(int element) {
+        grow();
+        elements[slot(size)] = element;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean add(Integer element) {
+        return add(element.intValue());
+    }
+
+    @Override
+    public void add(int index, Integer element) {
+        insert(index, element.intValue());
+    }
+
+    public void push(int element) {
+        add(element);
+    }
+
+    public void enqueue(int element) {
+        add(element);
+    }
+
+    public int pop() {
+        return removeInt(size - 1);
+    }
+
+    public int dequeue() {
+        return removeInt(0);
+    }
+
+    public void insert(int index, int element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        grow();
+
+        if (index < size / 2) {
+            head = (head == 0) ? elements.length - 1 : head - 1;
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+
+        elements[slot(index)] = element;
+        size++;
+        modCount++;
+    }
+
+    public void removeAt(int index) {
+        removeInt(index);
+    }
+
+    public int removeInt(int index) {
+        checkIndex(index);
+        int previous = elements[slot(index)];
+
+        if (index < size / 2) {
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            head = (head == elements.length - 1) ? 0 : head + 1;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        }
+
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        return removeInt(index);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+
+        if (index < 0) {
+            return false;
+        }
+
+        removeInt(index);
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Integer)) {
+            return -1;
+        }
+
+        int value = (Integer) o;
+        for (int i = 0; i < size; i++) {
+            if (elements[slot(i)] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    private int slot(int index) {
+        int slot = head + index;
+        return (slot >= elements.length) ? slot - elements.length : slot;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void grow() {
+        if (size < elements.length) {
+            return;
+        }
+
+        int[] grown = new int[elements.length + (elements.length >> 1) + 1];
+        for (int i = 0; i < size; i++) {
+            grown[i] = elements[slot(i)];
+        }
+
+        elements = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,165 @@
+package wrappers;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public class LJIntMap<V> extends AbstractMap<Integer, V> {
+    private IntHashTable table;
+
+    public LJIntMap() {
+        this.table = new IntHashTable(true, 0);
+    }
+
+    public LJIntMap(Map<Integer, V> map) {
+        this.table = new IntHashTable(true, IntHashTable.forMapCopy(map.size()));
+        putAll(map);
+    }
+
+    public boolean contains(int key) {
+        return table.contains(key);
+    }
+
+    public boolean containsKey(int key) {
+        return table.contains(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey(((Integer) key).intValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return (V) table.get(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V putInt(int key, V value) {
+        return (V) table.put(key, value);
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return putInt(key.intValue(), value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        return (V) table.removeValue(key);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, V>>() {
+            @Override
+            public Iterator<Map.Entry<Integer, V>> iterator() {
+                final int[] keys = table.keysInOrder();
+
+                return new Iterator<Map.Entry<Integer, V>>() {
+                    private int next = 0;
+                    private boolean removable = false;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    @Override
+                    public Map.Entry<Integer, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        removable = true;
+                        return new Entry(keys[next++]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (!removable) {
+                            throw new IllegalStateException();
+                        }
+
+                        removable = false;
+                        table.remove(keys[next - 1]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return table.size();
+            }
+        };
+    }
+
+    private class Entry implements Map.Entry<Integer, V> {
+        private final int key;
+
+        Entry(int key) {
+            this.key = key;
+        }
+
+        @Override
+        public Integer getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return get(key);
+        }
+
+        @Override
+        public V setValue(V value) {
+            return putInt(key, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            V value = getValue();
+
+            return getKey().equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            V value = getValue();
+            return Integer.hashCode(key) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
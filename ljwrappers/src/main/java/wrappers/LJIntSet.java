@@ -0,0 +1,104 @@
+package wrappers;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class LJIntSet extends AbstractSet<Integer> {
+    private IntHashTable table;
+
+    public LJIntSet() {
+        this.table = new IntHashTable(false, 0);
+    }
+
+    // Same sizing and insertion order as new HashSet<>(Arrays.asList(elements))
+    public LJIntSet(int... elements) {
+        this(new IntHashTable(false, IntHashTable.forCollectionCopy(elements.length)));
+
+        for (int e : elements) {
+            table.add(e);
+        }
+    }
+
+    public LJIntSet(Collection<Integer> collection) {
+        this.table = new IntHashTable(false, IntHashTable.forCollectionCopy(collection.size()));
+        addAll(collection);
+    }
+
+    private LJIntSet(IntHashTable table) {
+        this.table = table;
+    }
+
+    public boolean add(int element) {
+        return table.add(element);
+    }
+
+    @Override
+    public boolean add(Integer element) {
+        return add(element.intValue());
+    }
+
+    public boolean contains(int element) {
+        return table.contains(element);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    public boolean remove(int element) {
+        return table.remove(element);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Integer && remove(((Integer) o).intValue());
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        final int[] keys = table.keysInOrder();
+
+        return new Iterator<Integer>() {
+            private int next = 0;
+            private boolean removable = false;
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length;
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                removable = true;
+                return keys[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!removable) {
+                    throw new IllegalStateException();
+                }
+
+                removable = false;
+                table.remove(keys[next - 1]);
+            }
+        };
+    }
+}
@@ -1,17 +1,35 @@
 package wrappers;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.RandomAccess;
 
-public class LJList<T> extends ArrayList<T> {
+/**
+ * List backed by a growable ring buffer, so that enqueue/dequeue (and
+ * push/pop) are amortized O(1) while indexed access stays O(1). Apart from
+ * being a subtype, it offers everything ArrayList does: the List methods,
+ * ensureCapacity, trimToSize and clone.
+ */
+public class LJList<T> extends AbstractList<T> implements RandomAccess, Cloneable, Serializable {
     private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private Object[] elements;
+    private int head;
+    private int size;
 
     public LJList() {
         super();
+        this.elements = new Object[DEFAULT_CAPACITY];
     }
 
     public LJList(Collection<T> collection) {
-        super(collection);
+        Object[] contents = collection.toArray();
+
+        this.elements = Arrays.copyOf(contents, Math.max(contents.length, DEFAULT_CAPACITY), Object[].class);
+        this.size = contents.length;
     }
 
     public void push(T element) {
@@ -30,8 +48,20 @@ public class LJList<T> extends ArrayList<T> {
         return this.remove(0);
     }
 
+    @Override
+    public T get(int index) {
+        checkIndex(index);
+        return elementAt(index);
+    }
+
+    @Override
     public T set(int index, T element) {
-        return super.set(index, element);
+        checkIndex(index);
+
+        T previous = elementAt(index);
+        elements[slot(index)] = element;
+
+        return previous;
     }
 
     public void insert(int index, T element) {
@@ -41,4 +71,158 @@ public class LJList<T> extends ArrayList<T> {
     public void removeAt(int index) {
         this.remove(index);
     }
+
+    @Override
+    public boolean add(T element) {
+        grow();
+        elements[slot(size)] = element;
+        size++;
+        modCount++;
+
+        return true;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        grow();
+
+        // Shift whichever side of the index is shorter
+        if (index < size / 2) {
+            head = (head == 0) ? elements.length - 1 : head - 1;
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+
+        elements[slot(index)] = element;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        checkIndex(index);
+
+        T previous = elementAt(index);
+
+        if (index < size / 2) {
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            elements[head] = null;
+            head = (head == elements.length - 1) ? 0 : head + 1;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+
+        size--;
+        modCount++;
+
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Grows the buffer, if necessary, to hold at least minCapacity elements
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > elements.length) {
+            resize(Math.max(minCapacity, elements.length + (elements.length >> 1) + 1));
+            modCount++;
+        }
+    }
+
+    /**
+     * Shrinks the buffer to the current size
+     */
+    public void trimToSize() {
+        if (size < elements.length) {
+            resize(size);
+            modCount++;
+        }
+    }
+
+    /**
+     * Returns a shallow copy: the elements themselves are not copied
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public LJList<T> clone() {
+        try {
+            LJList<T> copy = (LJList<T>) super.clone();
+
+            copy.elements = Arrays.copyOf(toArray(), Math.max(size, DEFAULT_CAPACITY));
+            copy.head = 0;
+            copy.modCount = 0;
+
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementAt(int index) {
+        return (T) elements[slot(index)];
+    }
+
+    private int slot(int index) {
+        int slot = head + index;
+
+        return (slot >= elements.length) ? slot - elements.length : slot;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Makes room for one more element, unwrapping the buffer into a larger array
+     * when it is full
+     */
+    private void grow() {
+        if (size < elements.length) {
+            return;
+        }
+
+        resize(elements.length + (elements.length >> 1) + 1);
+    }
+
+    /**
+     * Unwraps the buffer into an array of the given length
+     */
+    private void resize(int length) {
+        Object[] resized = new Object[length];
+        for (int i = 0; i < size; i++) {
+            resized[i] = elements[slot(i)];
+        }
+
+        elements = resized;
+        head = 0;
+    }
 }
@@ -4,6 +4,10 @@ grammar LJ;
 
 program:        (class_ | function | global | test | EOL)*;
 
+// One of the program's top-level declarations, to parse them one at a time.
+// EOF is never parsed as one, but syntax errors expect it, as they do in program
+declaration:    class_ | function | global | test | EOL | EOF;
+
 class_:          classSignature classBlock;
 
 classSignature: name=ID (EXTENDS superName=ID)?;
@@ -11,7 +15,7 @@ classBlock:     (EOL)? LCB (EOL)? (attribute | EOL)* (method | EOL)* RCB (EOL)?;
 attribute:      scope=(PUBLIC|PRIVATE) assignment EOL;
 method:         (scope=(PUBLIC|PRIVATE))? function;
 
-function:       ID LP (paramList)? RP block;
+function:       ID LP (params=paramList)? RP block;
 paramList:      ID (','ID)*;
 block:          (EOL)? LCB (EOL)? statement* RCB (EOL)?;
 
@@ -31,7 +35,11 @@ statement:      IF LP expr RP block (ELSE block)?           #Conditional
                 | EOL                                       #Terminator
                 ;
 
-expr:           exprBin;
+// Assignment has the lowest precedence, and method calls are only base
+// expressions, so that every expression has a single parse
+expr:           assignment
+                | exprBin
+                ;
 
 exprBin:        left=exprBin op=PREC1 right=exprBin
                 | left=exprBin op=('+'|'-') right=exprBin
@@ -39,8 +47,6 @@ exprBin:        left=exprBin op=PREC1 right=exprBin
                 | left=exprBin op=PREC4 right=exprBin
                 | left=exprBin op=PREC5 right=exprBin
                 | left=exprBin op=PREC6 right=exprBin
-                | methodCall
-                | assignment
                 | exprUn
                 ;
 
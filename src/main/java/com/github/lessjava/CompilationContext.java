@@ -0,0 +1,122 @@
+package com.github.lessjava;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.lessjava.types.FunctionInstances;
+import com.github.lessjava.types.SymbolTable;
+import com.github.lessjava.types.ast.ASTAbstractFunction;
+import com.github.lessjava.types.ast.ASTAttribute;
+import com.github.lessjava.types.ast.ASTClass;
+import com.github.lessjava.types.ast.ASTFunction;
+import com.github.lessjava.types.ast.ASTNode;
+
+/**
+ * State of a single compilation, shared by the passes run over its program.
+ * Nothing about a program is kept in static fields, so compilations in the same
+ * JVM are independent of each other (and may run concurrently), and everything
+ * is released along with the context.
+ */
+public class CompilationContext {
+    // The compilation whose passes run on the current thread, for the types and
+    // AST nodes that have no reference back to it
+    private static final ThreadLocal<CompilationContext> current = new ThreadLocal<>();
+
+    /**
+     * Whether INT, DOUBLE and BOOL are emitted as Java primitives (--primitives).
+     * Values only get boxed where they cross into a collection.
+     */
+    public final boolean primitives;
+
+    // Library functions and classes are added to the program and their types
+    // are inferred along with it, so every compilation has its own
+    public final Set<ASTFunction> libraryFunctions = ASTAbstractFunction.createLibraryFunctions();
+    public final Set<ASTClass> libraryClasses = ASTClass.createLibraryClasses();
+
+    public final Map<String, ASTClass> nameClassMap = new HashMap<>();
+    public final Map<String, ASTAttribute> nameAttributeMap = new HashMap<>();
+
+    // Functions and methods by name and number of parameters
+    public final Map<String, List<ASTAbstractFunction>> idFunctionMap = new HashMap<>();
+
+    // Functions and methods by name and parameters, for instantiation and code
+    // generation
+    public final FunctionInstances functionInstances = new FunctionInstances();
+
+    public final Map<ASTNode, SymbolTable> nodeSymbolTableMap = new HashMap<>();
+
+    private final List<String> errors = new ArrayList<>();
+
+    public CompilationContext() {
+        this(false);
+    }
+
+    public CompilationContext(boolean primitives) {
+        this.primitives = primitives;
+
+        for (ASTClass c : libraryClasses) {
+            nameClassMap.put(c.signature.className, c);
+        }
+    }
+
+    /**
+     * Makes this the current compilation of the calling thread, until
+     * {@link #exit()}
+     */
+    public void enter() {
+        current.set(this);
+    }
+
+    public void exit() {
+        current.remove();
+    }
+
+    /**
+     * Whether the compilation running on the calling thread emits primitives
+     *
+     * @return False outside of a compilation
+     */
+    public static boolean emitsPrimitives() {
+        CompilationContext context = current.get();
+
+        return context != null && context.primitives;
+    }
+
+    /**
+     * Report an error message to be saved for later aggregation.
+     *
+     * @param msg
+     */
+    public void addError(String msg) {
+        errors.add(msg);
+    }
+
+    /**
+     * Retrieve a list of all errors encountered in this compilation thus far.
+     *
+     * @return List of error strings
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Retrieve a message including all errors encountered in this compilation
+     * thus far.
+     *
+     * @return String of all error messages
+     */
+    public String getErrorString() {
+        StringBuffer str = new StringBuffer();
+        for (String s : new ArrayList<>(new HashSet<>(errors))) {
+            str.append(s);
+            str.append("\n");
+        }
+
+        return str.toString();
+    }
+}
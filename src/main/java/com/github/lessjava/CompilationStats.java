@@ -0,0 +1,244 @@
+package com.github.lessjava;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.github.lessjava.types.ast.ASTNode;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.types.ast.ASTVisitor;
+import com.github.lessjava.visitor.LJDefaultASTVisitor;
+
+/**
+ * Measurements of each pass of a compilation, printed with --stats: wall and
+ * CPU time and bytes allocated by the compiling thread, and, where they apply,
+ * AST nodes visited and rounds of type inference. When disabled, passes are
+ * just run.
+ */
+public class CompilationStats {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Measurements of one pass; -1 where a measurement doesn't apply or isn't
+     * available
+     */
+    private static class Pass {
+        private final String name;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long nodesVisited = -1;
+        private long iterations = -1;
+
+        private Pass(String name) {
+            this.name = name;
+        }
+    }
+
+    private final boolean enabled;
+    private final List<Pass> passes = new ArrayList<>();
+
+    private long sourceBytes = -1;
+    private long generatedChars = -1;
+
+    public CompilationStats(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public <T> T pass(String name, Supplier<T> pass) {
+        if (!enabled) {
+            return pass.get();
+        }
+
+        Pass p = new Pass(name);
+        long cpu = cpuTime();
+        long allocated = allocatedBytes();
+        long wall = System.nanoTime();
+
+        T result = pass.get();
+
+        p.wallNanos = System.nanoTime() - wall;
+        p.cpuNanos = cpu < 0 ? -1 : cpuTime() - cpu;
+        p.allocatedBytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+        passes.add(p);
+
+        return result;
+    }
+
+    public void pass(String name, Runnable pass) {
+        pass(name, () -> {
+            pass.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs a visitor over the whole program, which visits every node once
+     */
+    public void traversal(String name, ASTProgram program, ASTVisitor visitor) {
+        pass(name, () -> program.traverse(visitor));
+
+        if (enabled) {
+            setNodesVisited(size(program));
+        }
+    }
+
+    /**
+     * Sets the number of AST nodes the last pass visited
+     */
+    public void setNodesVisited(long nodes) {
+        if (enabled) {
+            last().nodesVisited = nodes;
+        }
+    }
+
+    /**
+     * Sets the number of rounds the last pass ran
+     */
+    public void setIterations(long iterations) {
+        if (enabled) {
+            last().iterations = iterations;
+        }
+    }
+
+    public void setSourceBytes(long bytes) {
+        this.sourceBytes = bytes;
+    }
+
+    public void setGeneratedChars(long chars) {
+        this.generatedChars = chars;
+    }
+
+    /**
+     * @return A table with a row per pass and their total
+     */
+    public String format(String file) {
+        StringBuilder s = new StringBuilder();
+        Pass total = total();
+
+        s.append(String.format("Statistics for %s: %s of source, %s of generated Java%n", file,
+                optional(sourceBytes, " bytes"), optional(generatedChars, " characters")));
+        s.append(String.format("  %-20s %10s %10s %12s %10s %10s%n", "pass", "wall ms", "cpu ms", "alloc KB",
+                "nodes", "iterations"));
+
+        for (Pass p : passes) {
+            s.append(row(p));
+        }
+        s.append(row(total));
+
+        return s.toString();
+    }
+
+    /**
+     * @return The statistics as a single line of JSON
+     */
+    public String toJson(String file) {
+        StringBuilder s = new StringBuilder("{\"file\":").append(quote(file));
+
+        s.append(",\"sourceBytes\":").append(sourceBytes);
+        s.append(",\"generatedChars\":").append(generatedChars);
+        s.append(",\"passes\":[");
+
+        for (int i = 0; i < passes.size(); i++) {
+            s.append(i > 0 ? "," : "").append(json(passes.get(i)));
+        }
+
+        s.append("],\"total\":").append(json(total())).append("}");
+
+        return s.toString() + System.lineSeparator();
+    }
+
+    private Pass total() {
+        Pass total = new Pass("total");
+
+        for (Pass p : passes) {
+            total.wallNanos += p.wallNanos;
+            total.cpuNanos = sum(total.cpuNanos, p.cpuNanos);
+            total.allocatedBytes = sum(total.allocatedBytes, p.allocatedBytes);
+
+            if (p.nodesVisited >= 0) {
+                total.nodesVisited = Math.max(total.nodesVisited, 0) + p.nodesVisited;
+            }
+        }
+
+        return total;
+    }
+
+    private Pass last() {
+        return passes.get(passes.size() - 1);
+    }
+
+    private static String row(Pass p) {
+        return String.format("  %-20s %10.2f %10s %12s %10s %10s%n", p.name, p.wallNanos / 1e6,
+                p.cpuNanos < 0 ? "-" : String.format("%.2f", p.cpuNanos / 1e6),
+                p.allocatedBytes < 0 ? "-" : Long.toString(p.allocatedBytes / 1024), optional(p.nodesVisited, ""),
+                optional(p.iterations, ""));
+    }
+
+    private static String json(Pass p) {
+        StringBuilder s = new StringBuilder("{\"name\":").append(quote(p.name));
+
+        s.append(",\"wallNanos\":").append(p.wallNanos);
+        s.append(",\"cpuNanos\":").append(p.cpuNanos);
+        s.append(",\"allocatedBytes\":").append(p.allocatedBytes);
+
+        if (p.nodesVisited >= 0) {
+            s.append(",\"nodesVisited\":").append(p.nodesVisited);
+        }
+        if (p.iterations >= 0) {
+            s.append(",\"iterations\":").append(p.iterations);
+        }
+
+        return s.append("}").toString();
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String optional(long value, String unit) {
+        return value < 0 ? "-" : value + unit;
+    }
+
+    private static long sum(long total, long value) {
+        return total < 0 || value < 0 ? -1 : total + value;
+    }
+
+    private static long size(ASTNode node) {
+        long[] count = new long[1];
+
+        node.traverse(new LJDefaultASTVisitor() {
+            @Override
+            public void defaultPreVisit(ASTNode node) {
+                count[0]++;
+            }
+        });
+
+        return count[0];
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Only HotSpot's ThreadMXBean counts allocations
+     */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.lessjava;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles a generated Main.java without going through the file system: the
+ * source is handed to javac from memory and the class files it produces are
+ * kept in memory, to be loaded by a {@link ProgramClassLoader}.
+ */
+public class InMemoryCompiler {
+    private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+    /**
+     * @param sourceFile
+     *            Where the source would have been written, such as
+     *            generated/Main.java, by which javac's diagnostics name it
+     * @param wrappersDirectory
+     *            Directory holding the compiled wrappers, added to the class path
+     * @return Class files by binary class name, or null if javac reported errors
+     */
+    public static Map<String, byte[]> compile(String source, Path sourceFile, Path wrappersDirectory,
+            Writer out) {
+        Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+        List<String> options = Arrays.asList("-classpath",
+                System.getProperty("java.class.path") + ":" + wrappersDirectory);
+        List<JavaFileObject> sources = Collections.singletonList(new Source("Main", sourceFile, source));
+
+        try (ClassFileManager fm = new ClassFileManager(COMPILER.getStandardFileManager(null, null, null), classes)) {
+            if (!COMPILER.getTask(out, fm, null, options, null, sources).call()) {
+                return null;
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            return null;
+        }
+
+        return classes;
+    }
+
+    /**
+     * Source file whose content is a string
+     */
+    private static class Source extends SimpleJavaFileObject {
+        private final Path file;
+        private final String code;
+
+        private Source(String className, Path file, String code) {
+            super(URI.create("string:///" + className + Kind.SOURCE.extension), Kind.SOURCE);
+            this.file = file;
+            this.code = code;
+        }
+
+        @Override
+        public String getName() {
+            return file.toString();
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    /**
+     * Class file written to a byte array, which is stored under the class's name
+     * when javac closes it
+     */
+    private static class ClassFile extends SimpleJavaFileObject {
+        private final String className;
+        private final Map<String, byte[]> classes;
+
+        private ClassFile(String className, Map<String, byte[]> classes) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+            this.classes = classes;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+    }
+
+    /**
+     * Reads dependencies through the standard file manager, but keeps output in
+     * memory
+     */
+    private static class ClassFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+        private final Map<String, byte[]> classes;
+
+        private ClassFileManager(JavaFileManager fileManager, Map<String, byte[]> classes) {
+            super(fileManager);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+                FileObject sibling) {
+            return new ClassFile(className, classes);
+        }
+    }
+
+    /**
+     * Loads a program compiled in memory. The wrappers are loaded again by every
+     * such class loader rather than shared with the compiler, so that their
+     * static state (e.g. the standard input scanner) belongs to a single run of a
+     * single program; the class loader is thrown away along with the program.
+     */
+    public static class ProgramClassLoader extends URLClassLoader {
+        private final Map<String, byte[]> classes;
+
+        public ProgramClassLoader(Map<String, byte[]> classes, Path wrappersDirectory) {
+            super(toURLs(wrappersDirectory), InMemoryCompiler.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+
+                // Child first for the program and the wrappers
+                if (c == null && (classes.containsKey(name) || name.startsWith("wrappers."))) {
+                    try {
+                        c = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        // Wrappers only on the compiler's class path
+                    }
+                }
+
+                if (c == null) {
+                    return super.loadClass(name, resolve);
+                }
+
+                if (resolve) {
+                    resolveClass(c);
+                }
+
+                return c;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+
+            if (bytes != null) {
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+
+            return super.findClass(name);
+        }
+
+        private static URL[] toURLs(Path directory) {
+            try {
+                return new URL[] { directory.toUri().toURL() };
+            } catch (MalformedURLException e) {
+                return new URL[0];
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.lessjava;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a compiler JVM running, so that the JIT, the ANTLR parser caches and
+ * javac stay warm between compilations.
+ *
+ * Requests and responses are line based. A request is the client's working
+ * directory, followed by one compiler argument per line, terminated by an empty
+ * line. The response is the compiler's output, each line prefixed with
+ * {@code out} or {@code err} for the stream it belongs to, terminated by
+ * {@code exit <status>}. Several requests may be sent over one connection.
+ *
+ * With {@code --run}, a program's output is part of the response, but it reads
+ * no input.
+ */
+public class LJCompileServer {
+    // Programs run by the server don't get the client's standard input
+    private static final InputStream NO_INPUT = new ByteArrayInputStream(new byte[0]);
+
+    /**
+     * Serves clients connecting to the given port on the loopback interface, each
+     * on its own thread
+     */
+    public static void listen(int port) throws IOException {
+        ExecutorService connections = Executors.newCachedThreadPool();
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.printf("LJCompiler listening on port %d%n", server.getLocalPort());
+
+            while (true) {
+                Socket socket = server.accept();
+
+                connections.execute(() -> {
+                    try (Socket s = socket) {
+                        serve(s.getInputStream(), s.getOutputStream());
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Answers requests read from the given stream until it is closed
+     */
+    public static void serve(InputStream in, OutputStream out) throws IOException {
+        // Anything else printing to standard output would corrupt the responses
+        if (out == System.out) {
+            System.setOut(System.err);
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+        String workingDirectory;
+
+        while ((workingDirectory = reader.readLine()) != null) {
+            List<String> args = new ArrayList<>();
+            String line;
+
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                args.add(line);
+            }
+
+            int status;
+
+            try (PrintStream stdout = prefixed("out", writer); PrintStream stderr = prefixed("err", writer)) {
+                try {
+                    status = LJCompiler.run(args, Paths.get(workingDirectory), NO_INPUT, stdout, stderr);
+                } catch (RuntimeException e) {
+                    e.printStackTrace(stderr);
+                    status = 1;
+                }
+            }
+
+            synchronized (writer) {
+                writer.printf("exit %d%n", status);
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * Stream writing each line to the response, prefixed with the given tag
+     */
+    private static PrintStream prefixed(String tag, PrintWriter writer) throws UnsupportedEncodingException {
+        OutputStream lines = new OutputStream() {
+            private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    emit();
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+            }
+
+            @Override
+            public void close() {
+                if (line.size() > 0) {
+                    emit();
+                }
+            }
+
+            private void emit() {
+                synchronized (writer) {
+                    writer.printf("%s %s%n", tag, new String(line.toByteArray(), StandardCharsets.UTF_8));
+                }
+                line.reset();
+            }
+        };
+
+        return new PrintStream(lines, true, "UTF-8");
+    }
+}
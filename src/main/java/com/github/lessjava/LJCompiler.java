@@ -2,158 +2,635 @@ package com.github.lessjava;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
 
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
 
-import org.antlr.v4.runtime.ANTLRFileStream;
+import junit.runner.Version;
+
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.junit.internal.TextListener;
 import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
 import org.junit.runner.Result;
-import org.junit.runner.notification.Failure;
 
+import com.github.lessjava.InMemoryCompiler.ProgramClassLoader;
 import com.github.lessjava.generated.LJLexer;
 import com.github.lessjava.generated.LJParser;
+import com.github.lessjava.interpreter.LJInterpreter;
+import com.github.lessjava.types.ast.ASTNode;
 import com.github.lessjava.types.ast.ASTProgram;
 import com.github.lessjava.visitor.impl.BuildParentLinks;
-import com.github.lessjava.visitor.impl.BuildSymbolTables;
 import com.github.lessjava.visitor.impl.LJASTBuildClassLinks;
-import com.github.lessjava.visitor.impl.LJASTCheckTypesHaveChanged;
 import com.github.lessjava.visitor.impl.LJASTConverter;
 import com.github.lessjava.visitor.impl.LJASTInferConstructors;
-import com.github.lessjava.visitor.impl.LJASTInferTypes;
 import com.github.lessjava.visitor.impl.LJAssignTestVariables;
+import com.github.lessjava.visitor.impl.LJFoldConstants;
+import com.github.lessjava.visitor.impl.LJGenerateBytecode;
 import com.github.lessjava.visitor.impl.LJGenerateJava;
-import com.github.lessjava.visitor.impl.LJInstantiateFunctions;
+import com.github.lessjava.visitor.impl.LJInferenceWorklist;
 import com.github.lessjava.visitor.impl.LJStaticAnalysis;
-import com.github.lessjava.visitor.impl.StaticAnalysis;
 
 public class LJCompiler {
+    private static final Path OUTPUT_DIRECTORY = Paths.get("generated");
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    // Programs share System.in and System.out, so only one runs at a time
+    private static final Object PROGRAM_LOCK = new Object();
+
     public static void main(String[] args) throws IOException {
-        if (args.length == 0) {
-            System.err.println("usage: LJCompiler <Files>");
-            System.exit(0);
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+
+        int server = arguments.indexOf("--server");
+
+        if (server >= 0) {
+            String port = server + 1 < arguments.size() ? arguments.get(server + 1) : null;
+
+            if (port == null) {
+                LJCompileServer.serve(System.in, System.out);
+            } else {
+                LJCompileServer.listen(Integer.parseInt(port));
+            }
+            return;
         }
 
+        System.exit(run(arguments, Paths.get(""), System.in, System.out, System.err));
+    }
+
+    /**
+     * Compiles the files named by the arguments
+     *
+     * @param workingDirectory
+     *            Directory relative file names and the output directory are
+     *            resolved against
+     * @param in
+     *            Standard input of programs run with --run
+     * @return Exit status
+     */
+    public static int run(List<String> args, Path workingDirectory, InputStream in, PrintStream out,
+            PrintStream err) {
+        List<String> files = new ArrayList<>();
+        boolean primitives = false;
+        boolean printStats = false;
+        boolean jsonStats = false;
+        boolean runMain = false;
+        boolean runTests = false;
+        boolean bytecode = false;
+        boolean interpret = false;
+        boolean stream = false;
+
         for (String s : args) {
-            if (!s.endsWith("lj")) {
-                System.err.println("Only accepts .lj files");
-                System.exit(0);
+            if (s.equals("--primitives")) {
+                primitives = true;
+            } else if (s.equals("--stats")) {
+                printStats = true;
+            } else if (s.equals("--stats=json")) {
+                printStats = true;
+                jsonStats = true;
+            } else if (s.equals("--run")) {
+                runMain = true;
+            } else if (s.equals("--test")) {
+                runTests = true;
+            } else if (s.equals("--bytecode")) {
+                bytecode = true;
+            } else if (s.equals("--interpret")) {
+                interpret = true;
+            } else if (s.equals("--stream")) {
+                stream = true;
+            } else if (!s.endsWith("lj")) {
+                err.println("Only accepts .lj files");
+                return 0;
+            } else {
+                files.add(s);
             }
         }
 
-        // Lexing
+        if (files.isEmpty()) {
+            err.println("usage: LJCompiler [--primitives] [--stats[=json]] [--run] [--test] [--bytecode] [--interpret] [--stream] [--server [port]] <Files>");
+            return 0;
+        }
+
+        // Interpreted programs run main and the tests unless one is asked for
+        if (interpret && !runMain && !runTests) {
+            runMain = true;
+            runTests = true;
+        }
 
-        LJLexer lexer = null;
-        try {
-            for (String s : args) {
-                lexer = new LJLexer(new ANTLRFileStream(s));
+        // Each file is an independent program with its own output directory
+        List<Path> outputDirectories = getOutputDirectories(files);
+        boolean unboxed = primitives;
+        boolean stats = printStats;
+        boolean inMemory = runMain || runTests;
+        boolean directBytecode = bytecode;
+        boolean interpreted = interpret;
+        boolean streamed = stream;
+
+        List<ForkJoinTask<Compilation>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < files.size(); i++) {
+            String file = files.get(i);
+            Path outputDirectory = outputDirectories.get(i);
+
+            tasks.add(POOL.submit(() -> {
+                // Created here so what was logged before a failure is kept
+                Compilation compilation = new Compilation(file, outputDirectory, stats);
+                CompilationContext context = new CompilationContext(unboxed);
+
+                // Types and AST nodes look up the options of the compilation
+                // running on their thread
+                context.enter();
+
+                try {
+                    compile(compilation, context, workingDirectory, inMemory, directBytecode, interpreted, streamed);
+                } catch (RuntimeException | StackOverflowError e) {
+                    // Reported as this file's result, so the other files still are
+                    compilation.failure = e;
+                } finally {
+                    context.exit();
+                }
+
+                return compilation;
+            }));
+        }
+
+        // Report in the order the files were given
+        int status = 0;
+
+        for (ForkJoinTask<Compilation> task : tasks) {
+            Compilation compilation = task.join();
+
+            if (files.size() > 1) {
+                out.printf("%s -> %s%n", compilation.file, compilation.outputDirectory);
+            }
+
+            err.print(compilation.log);
+
+            if (printStats) {
+                err.print(jsonStats ? compilation.stats.toJson(compilation.file)
+                        : compilation.stats.format(compilation.file));
+            }
+
+            if (compilation.failure != null) {
+                err.print("Exception in thread \"main\" ");
+                compilation.failure.printStackTrace(err);
+                status = 1;
+            } else if (compilation.errors != null) {
+                out.printf("%n%s%n", compilation.errors);
+                status = 1;
+            } else if (compilation.interpreter != null) {
+                if (!interpret(compilation.interpreter, runMain, runTests, in, out, err)) {
+                    status = 1;
+                }
+            } else if (inMemory) {
+                // Without class files javac failed; its diagnostics are in the log
+                if (compilation.classes == null
+                        || !execute(compilation, workingDirectory, runMain, runTests, in, out, err)) {
+                    status = 1;
+                }
             }
+        }
+
+        out.flush();
+        err.flush();
+
+        return status;
+    }
+
+    /**
+     * Compiles one .lj file to Main.java (and its class files) in the
+     * compilation's output directory, or, if inMemory is set, to class files
+     * kept in the compilation. Syntax errors and other diagnostics are logged
+     * to the compilation as they are found. With bytecode set, Main.class is
+     * generated directly if the program allows it, and javac is only run
+     * otherwise. With interpret set, the program is prepared for the
+     * interpreter instead, if it allows it. With stream set, the parse tree and
+     * tokens of each top-level declaration are released once it has been
+     * converted to the AST.
+     */
+    private static void compile(Compilation compilation, CompilationContext context, Path workingDirectory,
+            boolean inMemory, boolean bytecode, boolean interpret, boolean stream) {
+        String file = compilation.file;
+        CompilationStats stats = compilation.stats;
+        Path outputDirectory = workingDirectory.resolve(compilation.outputDirectory);
+
+        // Lexing and parsing
+        CharStream input;
+
+        try {
+            input = new MappedCharStream(workingDirectory.resolve(file));
+            stats.setSourceBytes(Files.size(workingDirectory.resolve(file)));
         } catch (IOException ioe) {
-            ioe.printStackTrace();
-            System.exit(0);
+            compilation.errors = ioe.toString();
+            return;
         }
 
-        // Parsing
+        LJLexer lexer = new LJLexer(input);
+        // The input only keeps the text of the token being read
+        lexer.setTokenFactory(MappedCharStream.TOKEN_FACTORY);
+        LJParser parser = new LJParser(
+                stream ? new UnbufferedTokenStream<>(lexer) : new CommonTokenStream(lexer));
+
+        // Syntax errors are reported with the rest of this file's output
+        SyntaxErrorLog syntaxErrors = new SyntaxErrorLog(compilation.log);
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(syntaxErrors);
+        parser.removeErrorListeners();
+        parser.addErrorListener(syntaxErrors);
 
         // Initialize visitors
         ParseTreeWalker walker = new ParseTreeWalker();
 
-        LJParser parser = new LJParser(new CommonTokenStream(lexer));
-        LJASTConverter converter = new LJASTConverter();
+        LJASTConverter converter = new LJASTConverter(context);
 
         BuildParentLinks buildParentLinks = new BuildParentLinks();
         LJASTBuildClassLinks buildClassLinks = new LJASTBuildClassLinks();
-        LJStaticAnalysis staticAnalysis = new LJStaticAnalysis();
-        BuildSymbolTables buildSymbolTables = new BuildSymbolTables();
-        LJASTInferTypes inferTypes = new LJASTInferTypes();
+        LJStaticAnalysis staticAnalysis = new LJStaticAnalysis(context);
         // PrintDebugTree printTree = new PrintDebugTree();
-        LJGenerateJava generateJava = new LJGenerateJava();
-        LJASTCheckTypesHaveChanged checkTypesHaveChanged = new LJASTCheckTypesHaveChanged();
-        LJInstantiateFunctions instantiateFunctions = new LJInstantiateFunctions();
-        LJASTInferConstructors inferConstructors = new LJASTInferConstructors();
+        LJGenerateJava generateJava = new LJGenerateJava(context, inMemory ? null : outputDirectory);
+        LJASTInferConstructors inferConstructors = new LJASTInferConstructors(context);
+
+        // Parse and convert to AST
+        ASTProgram program;
 
-        // ANTLR Parsing
-        ParseTree parseTree = parser.program();
+        try {
+            if (stream) {
+                program = stats.pass("parseAndConvert", () -> ProgramParser.parseDeclarations(parser, converter));
+            } else {
+                ParseTree parseTree = stats.pass("parse", () -> ProgramParser.parse(parser));
+
+                program = stats.pass("convert", () -> {
+                    walker.walk(converter, parseTree);
+                    return converter.getAST();
+                });
+            }
+        } catch (RuntimeException e) {
+            // A tree recovered from syntax errors may be missing nodes the
+            // converter relies on; the errors have been reported already
+            if (parser.getNumberOfSyntaxErrors() == 0) {
+                throw e;
+            }
 
-        // Convert to AST
-        walker.walk(converter, parseTree);
-        ASTProgram program = converter.getAST();
+            compilation.errors = String.format("%d syntax error(s)", parser.getNumberOfSyntaxErrors());
+            return;
+        }
 
         // Apply visitors to AST
-        program.traverse(buildParentLinks);
-        program.traverse(buildClassLinks);
-        program.traverse(inferConstructors);
-        program.traverse(staticAnalysis);
-
-        do {
-            program.traverse(buildSymbolTables);
-            program.traverse(instantiateFunctions);
-            program.traverse(inferTypes);
-            program.traverse(checkTypesHaveChanged);
-        } while (LJASTCheckTypesHaveChanged.typesChanged);
+        stats.traversal("parentLinks", program, buildParentLinks);
+        stats.traversal("classLinks", program, buildClassLinks);
+        stats.traversal("inferConstructors", program, inferConstructors);
+        stats.traversal("staticAnalysis", program, staticAnalysis);
+
+        LJInferenceWorklist inference = new LJInferenceWorklist(context, program);
+        stats.pass("inference", inference::run);
+        stats.setNodesVisited(inference.getNodesVisited());
+        stats.setIterations(inference.getIterations());
 
         // TODO: Determine if necessary
-        // program.traverse(new LJUnifyVariables());
+        // program.traverse(new LJUnifyVariables(context));
 
         LJAssignTestVariables assignTestVariables = new LJAssignTestVariables();
 
-        program.traverse(assignTestVariables);
+        stats.traversal("assignTestVariables", program, assignTestVariables);
 
-        program.traverse(new LJStaticAnalysis());
+        stats.traversal("finalStaticAnalysis", program, new LJStaticAnalysis(context));
+        stats.traversal("foldConstants", program, new LJFoldConstants());
 
         // program.traverse(printTree);
-        program.traverse(generateJava);
+        stats.traversal("generateJava", program, generateJava);
 
-        if (!StaticAnalysis.getErrors().isEmpty()) {
-            System.out.printf("%n%s%n", StaticAnalysis.getErrorString());
-            System.exit(1);
+        if (stats.isEnabled()) {
+            stats.setGeneratedChars(generateJava.getSource().length());
+        }
+
+        if (!context.getErrors().isEmpty()) {
+            compilation.errors = context.getErrorString();
+            return;
+        }
+
+        if (interpret && prepareInterpreter(program, context, compilation)) {
+            return;
+        }
+
+        if (bytecode && generateBytecode(program, context, generateJava.getLineNumbers(), compilation,
+                outputDirectory, inMemory)) {
+            return;
         }
 
         // Compile the generated Java source
-        JCompiler.compile();
+        StringWriter javacLog = new StringWriter();
+
+        if (inMemory) {
+            compilation.classes = stats.pass("javac", () -> InMemoryCompiler.compile(generateJava.getSource(),
+                    compilation.outputDirectory.resolve("Main.java"), workingDirectory.resolve(OUTPUT_DIRECTORY),
+                    javacLog));
+        } else {
+            Path directory = outputDirectory;
+            stats.pass("javac", () -> JCompiler.compile(directory, workingDirectory.resolve(OUTPUT_DIRECTORY),
+                    javacLog));
+        }
 
-        // TODO: exec junit
+        compilation.log.append(javacLog);
     }
 
-    private static void runTests(Class test) {
-        Result result = JUnitCore.runClasses(test);
-        for (Failure failure : result.getFailures()) {
-            System.out.println(failure.toString());
+    /**
+     * Writes Main.class without going through javac
+     *
+     * @return False if the program uses something the bytecode backend doesn't
+     *         support
+     */
+    private static boolean generateBytecode(ASTProgram program, CompilationContext context,
+            Map<ASTNode, Integer> lineNumbers, Compilation compilation, Path outputDirectory, boolean inMemory) {
+        byte[] mainClass;
+
+        try {
+            LJGenerateBytecode generateBytecode = new LJGenerateBytecode(context, lineNumbers);
+            compilation.stats.traversal("generateBytecode", program, generateBytecode);
+            mainClass = generateBytecode.getClassFile();
+        } catch (UnsupportedOperationException e) {
+            compilation.log.append(String.format("Bytecode backend: unsupported %s, using javac%n", e.getMessage()));
+            return false;
+        }
+
+        if (inMemory) {
+            compilation.classes = Collections.singletonMap("Main", mainClass);
+            return true;
+        }
+
+        try {
+            Files.write(outputDirectory.resolve("Main.class"), mainClass);
+        } catch (IOException ioe) {
+            compilation.errors = ioe.toString();
         }
+
+        return true;
     }
 
-    private static class JCompiler {
-        private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
-        private static final StandardJavaFileManager FM = COMPILER.getStandardFileManager(null, null, null);
-        private static final List<String> OPTIONS = new ArrayList<>(
-                Arrays.asList("-classpath", System.getProperty("java.class.path") + ":generated"));
-        private static final Iterable<? extends JavaFileObject> SOURCE = FM
-                .getJavaFileObjectsFromFiles(JCompiler.getJavaFileObjects());
+    /**
+     * Compiles the program for the interpreter
+     *
+     * @return False if the program uses something the interpreter doesn't
+     *         support
+     */
+    private static boolean prepareInterpreter(ASTProgram program, CompilationContext context,
+            Compilation compilation) {
+        try {
+            compilation.interpreter = compilation.stats.pass("prepareInterpreter",
+                    () -> new LJInterpreter(context, program));
+            return true;
+        } catch (UnsupportedOperationException e) {
+            compilation.log.append(String.format("Interpreter: unsupported %s, compiling%n", e.getMessage()));
+            return false;
+        }
+    }
 
-        private static final String PATH_TO_SOURCE = "generated";
+    /**
+     * A single file is compiled to generated/, as the run and test scripts
+     * expect. Several files each get a subdirectory named after the file.
+     */
+    private static List<Path> getOutputDirectories(List<String> files) {
+        List<Path> directories = new ArrayList<>();
 
-        public static void compile() {
-            COMPILER.getTask(null, FM, null, OPTIONS, null, SOURCE).call();
+        if (files.size() == 1) {
+            directories.add(OUTPUT_DIRECTORY);
+            return directories;
         }
 
-        private static List<File> getJavaFileObjects() {
-            List<File> source = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+
+        for (String file : files) {
+            String name = Paths.get(file).getFileName().toString();
+            if (name.lastIndexOf(".") > 0) {
+                name = name.substring(0, name.lastIndexOf("."));
+            }
+
+            String unique = name;
+            for (int i = 2; !names.add(unique); i++) {
+                unique = name + "_" + i;
+            }
+
+            directories.add(OUTPUT_DIRECTORY.resolve(unique));
+        }
+
+        return directories;
+    }
+
+    /**
+     * Loads a program compiled in memory and runs its main function and/or its
+     * tests, as run.sh and test.sh would
+     *
+     * @return False if the program threw an exception or a test failed
+     */
+    private static boolean execute(Compilation compilation, Path workingDirectory, boolean runMain,
+            boolean runTests, InputStream in, PrintStream out, PrintStream err) {
+        try (ProgramClassLoader loader = new ProgramClassLoader(compilation.classes,
+                workingDirectory.resolve(OUTPUT_DIRECTORY).toAbsolutePath())) {
+            Class<?> main = loader.loadClass("Main");
+
+            return withStandardStreams(in, out, () -> {
+                boolean passed = true;
+
+                if (runMain) {
+                    passed = runMain(main, err);
+                }
+
+                if (runTests) {
+                    passed &= runTests(Request.aClass(main), out);
+                }
+
+                return passed;
+            });
+        } catch (ClassNotFoundException | IOException e) {
+            e.printStackTrace(err);
+            return false;
+        }
+    }
+
+    /**
+     * Runs an interpreted program's main function and/or its tests, with the
+     * same output as {@link #execute}
+     */
+    private static boolean interpret(LJInterpreter interpreter, boolean runMain, boolean runTests,
+            InputStream in, PrintStream out, PrintStream err) {
+        return withStandardStreams(in, out, () -> {
+            boolean passed = true;
+
+            if (runMain) {
+                try {
+                    interpreter.runMain();
+                } catch (RuntimeException | StackOverflowError e) {
+                    err.print("Exception in thread \"main\" ");
+                    e.printStackTrace(err);
+                    passed = false;
+                }
+            }
+
+            if (runTests) {
+                passed &= runTests(Request.runner(interpreter.getTestRunner()), out);
+            }
+
+            return passed;
+        });
+    }
+
+    /**
+     * Runs a program with the given standard input and output
+     */
+    private static boolean withStandardStreams(InputStream in, PrintStream out, BooleanSupplier program) {
+        synchronized (PROGRAM_LOCK) {
+            InputStream stdin = System.in;
+            PrintStream stdout = System.out;
+
+            System.setIn(in);
+            System.setOut(out);
 
             try {
-                Files.walk(Paths.get(PATH_TO_SOURCE)).filter(p -> Files.isRegularFile(p) && isJavaSource(p))
-                        .forEach(p -> source.add(p.toFile()));
+                return program.getAsBoolean();
+            } finally {
+                System.out.flush();
+                System.setIn(stdin);
+                System.setOut(stdout);
+            }
+        }
+    }
+
+    private static boolean runMain(Class<?> main, PrintStream err) {
+        Method method;
+
+        try {
+            method = main.getMethod("main", String[].class);
+        } catch (NoSuchMethodException e) {
+            // Programs without a main function only have tests
+            return true;
+        }
+
+        try {
+            method.invoke(null, (Object) new String[0]);
+            return true;
+        } catch (InvocationTargetException e) {
+            err.print("Exception in thread \"main\" ");
+            e.getCause().printStackTrace(err);
+        } catch (IllegalAccessException e) {
+            e.printStackTrace(err);
+        }
+
+        return false;
+    }
+
+    private static boolean runTests(Request tests, PrintStream out) {
+        JUnitCore junit = new JUnitCore();
+        junit.addListener(new TextListener(out));
+
+        out.println("JUnit version " + Version.id());
+
+        Result result = junit.run(tests);
+
+        return result.wasSuccessful();
+    }
+
+    /**
+     * Collects syntax errors in the format of ANTLR's console listener
+     */
+    private static class SyntaxErrorLog extends BaseErrorListener {
+        private final StringBuilder log;
+
+        private SyntaxErrorLog(StringBuilder log) {
+            this.log = log;
+        }
+
+        @Override
+        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                int charPositionInLine, String msg, RecognitionException e) {
+            log.append(String.format("line %d:%d %s%n", line, charPositionInLine, msg));
+        }
+    }
+
+    /**
+     * Outcome of compiling one file
+     */
+    private static class Compilation {
+        private final String file;
+        private final Path outputDirectory;
+
+        // Output for standard error (statistics, javac diagnostics)
+        private final StringBuilder log = new StringBuilder();
+
+        // Reason the program was rejected, if it was
+        private String errors;
+
+        // Class files of a program compiled in memory, by class name
+        private Map<String, byte[]> classes;
+
+        // Measurements of the passes, for --stats
+        private final CompilationStats stats;
+
+        // Program prepared for the interpreter, run instead of class files
+        private LJInterpreter interpreter;
+
+        // Exception the compiler itself threw on this file, if it did
+        private Throwable failure;
+
+        private Compilation(String file, Path outputDirectory, boolean printStats) {
+            this.file = file;
+            this.outputDirectory = outputDirectory;
+            this.stats = new CompilationStats(printStats);
+        }
+    }
+
+    private static class JCompiler {
+        private static final JavaCompiler COMPILER = ToolProvider.getSystemJavaCompiler();
+
+        /**
+         * Compiles the Java sources in directory, against the wrappers copied
+         * to wrappersDirectory (the shared generated/ root)
+         */
+        public static void compile(Path directory, Path wrappersDirectory, Writer out) {
+            try (StandardJavaFileManager fm = COMPILER.getStandardFileManager(null, null, null)) {
+                List<String> options = new ArrayList<>(Arrays.asList("-classpath",
+                        System.getProperty("java.class.path") + ":" + wrappersDirectory + ":" + directory));
+                Iterable<? extends JavaFileObject> source = fm.getJavaFileObjectsFromFiles(getJavaFileObjects(directory));
+
+                COMPILER.getTask(out, fm, null, options, null, source).call();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+
+        private static List<File> getJavaFileObjects(Path directory) {
+            List<File> source = new ArrayList<>();
 
+            // Only this program's sources; subdirectories belong to other programs
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(p -> Files.isRegularFile(p) && isJavaSource(p)).forEach(p -> source.add(p.toFile()));
             } catch (IOException ioe) {
                 ioe.printStackTrace();
             }
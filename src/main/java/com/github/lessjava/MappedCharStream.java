@@ -0,0 +1,231 @@
+package com.github.lessjava;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * A UTF-8 source file, memory-mapped and decoded as the lexer reads it. Only
+ * the characters from the start of the current token (or the earliest mark)
+ * on are kept, so, as with UnbufferedCharStream, tokens must copy their text:
+ * lexers reading it should use {@link #TOKEN_FACTORY}.
+ */
+public class MappedCharStream implements CharStream {
+    /**
+     * Copies the text of every token, except EOF, which gets the "<EOF>" text
+     * it has when read from a buffered stream, as in syntax errors
+     */
+    public static final CommonTokenFactory TOKEN_FACTORY = new CommonTokenFactory(true) {
+        @Override
+        public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+                int start, int stop, int line, int charPositionInLine) {
+            if (type == Token.EOF && text == null) {
+                text = "<EOF>";
+            }
+
+            return super.create(source, type, text, channel, start, stop, line, charPositionInLine);
+        }
+    };
+
+    private static final int CHUNK = 8192;
+
+    private final String sourceName;
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private boolean decoded;
+
+    // Decoded characters, the first of which is at index start of the stream
+    private char[] data = new char[CHUNK];
+    private int start;
+    private int n;
+
+    private int p;
+
+    private int markers;
+    private int markStart;
+
+    // Number of characters in the file, once counted
+    private int size = -1;
+
+    public MappedCharStream(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        this.sourceName = file.toString();
+    }
+
+    @Override
+    public void consume() {
+        if (LA(1) == IntStream.EOF) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+
+        p++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+
+        int index = i > 0 ? p + i - 1 : p + i;
+
+        if (index < start) {
+            throw new IndexOutOfBoundsException("LA(" + i + ") is before the buffered characters");
+        }
+
+        fill(index);
+
+        return index < start + n ? data[index - start] : IntStream.EOF;
+    }
+
+    @Override
+    public int mark() {
+        if (markers == 0) {
+            markStart = p;
+        }
+
+        return -++markers;
+    }
+
+    @Override
+    public void release(int marker) {
+        if (marker != -markers) {
+            throw new IllegalStateException("release() called with an invalid marker.");
+        }
+
+        markers--;
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        if (index < start) {
+            throw new IllegalArgumentException("cannot seek to " + index + ", before the buffered characters");
+        }
+
+        fill(index);
+        p = Math.min(index, start + n);
+    }
+
+    /**
+     * Counts the characters of the whole file the first time, by decoding the
+     * mapped bytes separately so that nothing more is kept in memory
+     */
+    @Override
+    public int size() {
+        if (size < 0) {
+            CharsetDecoder counter = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer in = bytes.duplicate();
+            CharBuffer out = CharBuffer.allocate(CHUNK);
+            int count = 0;
+
+            in.rewind();
+            while (counter.decode(in, out, true).isOverflow()) {
+                count += out.position();
+                out.clear();
+            }
+            while (counter.flush(out).isOverflow()) {
+                count += out.position();
+                out.clear();
+            }
+
+            size = count + out.position();
+        }
+
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        if (interval.b < interval.a) {
+            return "";
+        }
+
+        fill(interval.b);
+
+        if (interval.a < start || interval.b >= start + n) {
+            throw new UnsupportedOperationException("interval " + interval + " isn't in the buffered characters "
+                    + start + ".." + (start + n - 1));
+        }
+
+        return new String(data, interval.a - start, interval.b - interval.a + 1);
+    }
+
+    @Override
+    public String toString() {
+        return sourceName;
+    }
+
+    /**
+     * Decodes until the character at index, or the end of the file
+     */
+    private void fill(int index) {
+        while (index >= start + n && !decoded) {
+            decodeChunk();
+        }
+    }
+
+    private void decodeChunk() {
+        if (data.length - n < CHUNK) {
+            discard();
+
+            if (data.length - n < CHUNK) {
+                data = Arrays.copyOf(data, Math.max(2 * data.length, n + CHUNK));
+            }
+        }
+
+        CharBuffer out = CharBuffer.wrap(data, n, data.length - n);
+        CoderResult result = decoder.decode(bytes, out, true);
+
+        if (result.isUnderflow()) {
+            decoder.flush(out);
+            decoded = true;
+        }
+
+        n = out.position();
+    }
+
+    /**
+     * Discards the characters before the earliest mark and the one before the
+     * current character
+     */
+    private void discard() {
+        int keep = Math.max(start, Math.min(p - 1, markers > 0 ? markStart : p - 1));
+
+        System.arraycopy(data, keep - start, data, 0, start + n - keep);
+        n -= keep - start;
+        start = keep;
+    }
+}
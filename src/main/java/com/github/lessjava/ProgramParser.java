@@ -0,0 +1,145 @@
+package com.github.lessjava;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import com.github.lessjava.generated.LJParser;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.visitor.impl.LJASTConverter;
+
+/**
+ * Parses a program in two stages. SLL prediction is much faster than full LL
+ * and gives the same parse for every valid program of this grammar, but may
+ * report errors in valid programs. So the program is first parsed with SLL,
+ * giving up at the first error; only if that fails is it parsed again with
+ * full LL and normal error reporting and recovery.
+ */
+public class ProgramParser {
+    /**
+     * @param parser
+     *            Parser, with the error listeners to report syntax errors to
+     */
+    public static ParseTree parse(LJParser parser) {
+        List<? extends ANTLRErrorListener> listeners = new ArrayList<>(parser.getErrorListeners());
+
+        startSLL(parser);
+
+        try {
+            ParseTree tree = parser.program();
+
+            // The program rule doesn't end with EOF, and without error recovery
+            // nothing reports the tokens it stopped before
+            if (parser.getInputStream().LA(1) == Token.EOF) {
+                return tree;
+            }
+        } catch (ParseCancellationException e) {
+            // Parsed again below
+        }
+
+        // The tokens have been read already, so lexer errors aren't reported
+        // again
+        parser.reset();
+        startLL(parser, listeners);
+
+        return parser.program();
+    }
+
+    /**
+     * Parses one top-level declaration at a time, each in two stages, and
+     * converts it to the AST as it is parsed, without building a parse tree.
+     * With an UnbufferedTokenStream, only the tokens of the current
+     * declaration are kept. Error recovery doesn't go past the end of a
+     * declaration, so a syntax error may be reported differently than by
+     * parse.
+     *
+     * @param parser
+     *            Parser, with the error listeners to report syntax errors to
+     */
+    public static ASTProgram parseDeclarations(LJParser parser, LJASTConverter converter) {
+        List<? extends ANTLRErrorListener> listeners = new ArrayList<>(parser.getErrorListeners());
+        TokenStream tokens = parser.getInputStream();
+
+        parser.setBuildParseTree(false);
+
+        while (tokens.LA(1) != Token.EOF) {
+            // The tokens of the declaration are kept until it has been parsed
+            int marker = tokens.mark();
+            int start = tokens.index();
+
+            try {
+                startSLL(parser);
+                parser.addParseListener(converter);
+
+                try {
+                    parser.declaration();
+                } catch (ParseCancellationException e) {
+                    converter.abandonDeclaration();
+                    tokens.seek(start);
+                    startLL(parser, listeners);
+                    parser.addParseListener(converter);
+
+                    parser.declaration();
+
+                    // Recovery may not get past a token no declaration starts
+                    // with
+                    if (tokens.index() == start) {
+                        tokens.consume();
+                    }
+                }
+            } finally {
+                tokens.release(marker);
+            }
+        }
+
+        startLL(parser, listeners);
+
+        return converter.endDeclarations();
+    }
+
+    private static void startSLL(Parser parser) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy() {
+            // Errors of this stage aren't errors of the program
+            @Override
+            public void reportError(Parser recognizer, RecognitionException e) {
+            }
+
+            // The rules given up on aren't converted
+            @Override
+            public void recover(Parser recognizer, RecognitionException e) {
+                recognizer.removeParseListeners();
+                super.recover(recognizer, e);
+            }
+
+            @Override
+            public Token recoverInline(Parser recognizer) {
+                recognizer.removeParseListeners();
+                return super.recoverInline(recognizer);
+            }
+        });
+        parser.removeErrorListeners();
+        parser.removeParseListeners();
+    }
+
+    private static void startLL(Parser parser, List<? extends ANTLRErrorListener> listeners) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.setErrorHandler(new DefaultErrorStrategy());
+        parser.removeErrorListeners();
+        parser.removeParseListeners();
+
+        for (ANTLRErrorListener listener : listeners) {
+            parser.addErrorListener(listener);
+        }
+    }
+}
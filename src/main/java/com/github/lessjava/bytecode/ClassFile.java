@@ -0,0 +1,227 @@
+package com.github.lessjava.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer: a constant pool, fields, and methods whose code
+ * is assembled by {@link Code}. Only what the bytecode backend needs is
+ * supported.
+ */
+public class ClassFile {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    // Java 8; class files from 50 on are verified using StackMapTable frames
+    private static final int MAJOR_VERSION = 52;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    public final String name;
+
+    private final ByteArrayOutputStream constantBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(constantBytes);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    public ClassFile(String name) {
+        this.name = name;
+    }
+
+    public void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * @param annotation
+     *            Descriptor of a runtime visible annotation without elements, or
+     *            null
+     */
+    public void addMethod(int access, String name, String descriptor, Code code, String annotation) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(annotation == null ? 1 : 2);
+
+            byte[] codeAttribute = code.toByteArray();
+            out.writeShort(utf8("Code"));
+            out.writeInt(codeAttribute.length);
+            out.write(codeAttribute);
+
+            if (annotation != null) {
+                out.writeShort(utf8("RuntimeVisibleAnnotations"));
+                out.writeInt(6);
+                out.writeShort(1);
+                out.writeShort(utf8(annotation));
+                out.writeShort(0);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        methods.add(bytes.toByteArray());
+    }
+
+    public byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        int sourceFile = utf8("SourceFile");
+        int sourceFileName = utf8("Main.java");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(constantCount);
+            out.write(constantBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+
+            out.writeShort(1);
+            out.writeShort(sourceFile);
+            out.writeInt(2);
+            out.writeShort(sourceFileName);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, () -> {
+            constants.writeByte(CONSTANT_UTF8);
+            constants.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return constant("I" + value, 1, () -> {
+            constants.writeByte(CONSTANT_INTEGER);
+            constants.writeInt(value);
+        });
+    }
+
+    int doubleValue(double value) {
+        // Keyed by bits, so that 0.0 and -0.0 are different constants
+        return constant("D" + Double.doubleToRawLongBits(value), 2, () -> {
+            constants.writeByte(CONSTANT_DOUBLE);
+            constants.writeDouble(value);
+        });
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+
+        return constant("S" + value, 1, () -> {
+            constants.writeByte(CONSTANT_STRING);
+            constants.writeShort(utf8);
+        });
+    }
+
+    int classRef(String internalName) {
+        int utf8 = utf8(internalName);
+
+        return constant("C" + internalName, 1, () -> {
+            constants.writeByte(CONSTANT_CLASS);
+            constants.writeShort(utf8);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int classRef = classRef(owner);
+        int nameRef = utf8(name);
+        int typeRef = utf8(descriptor);
+        int nameAndType = constant("N" + name + " " + descriptor, 1, () -> {
+            constants.writeByte(CONSTANT_NAME_AND_TYPE);
+            constants.writeShort(nameRef);
+            constants.writeShort(typeRef);
+        });
+
+        return constant(tag + owner + "." + name + " " + descriptor, 1, () -> {
+            constants.writeByte(tag);
+            constants.writeShort(classRef);
+            constants.writeShort(nameAndType);
+        });
+    }
+
+    private int constant(String key, int size, ConstantWriter writer) {
+        Integer index = constantIndexes.get(key);
+
+        if (index == null) {
+            index = constantCount;
+
+            try {
+                writer.write();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+
+            constantCount += size;
+            constantIndexes.put(key, index);
+        }
+
+        return index;
+    }
+
+    private interface ConstantWriter {
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,606 @@
+package com.github.lessjava.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assembles the code of one method. The operand stack is simulated, so the
+ * maximum stack size and the StackMapTable frames at jump targets are computed
+ * along the way.
+ *
+ * Types on the simulated stack and in locals are field descriptors ({@code I}
+ * for ints and booleans, {@code D}, {@code Ljava/lang/Integer;}, ...). Every
+ * local is assigned before the first jump target and keeps its declared type,
+ * so the locals of every frame are simply all of the method's locals.
+ */
+public class Code {
+    public static final int ACONST_NULL = 0x01;
+    public static final int ICONST_0 = 0x03;
+    public static final int DCONST_0 = 0x0e;
+    public static final int POP = 0x57;
+    public static final int POP2 = 0x58;
+    public static final int DUP = 0x59;
+    public static final int DUP2 = 0x5c;
+    public static final int IADD = 0x60;
+    public static final int DADD = 0x63;
+    public static final int ISUB = 0x64;
+    public static final int DSUB = 0x67;
+    public static final int IMUL = 0x68;
+    public static final int DMUL = 0x6b;
+    public static final int IDIV = 0x6c;
+    public static final int DDIV = 0x6f;
+    public static final int IREM = 0x70;
+    public static final int DREM = 0x73;
+    public static final int INEG = 0x74;
+    public static final int DNEG = 0x77;
+    public static final int IXOR = 0x82;
+    public static final int I2D = 0x87;
+    public static final int DCMPL = 0x97;
+    public static final int DCMPG = 0x98;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9a;
+    public static final int IFLT = 0x9b;
+    public static final int IFGE = 0x9c;
+    public static final int IFGT = 0x9d;
+    public static final int IFLE = 0x9e;
+    public static final int IF_ICMPEQ = 0x9f;
+    public static final int IF_ICMPNE = 0xa0;
+    public static final int IF_ICMPLT = 0xa1;
+    public static final int IF_ICMPGE = 0xa2;
+    public static final int IF_ICMPGT = 0xa3;
+    public static final int IF_ICMPLE = 0xa4;
+    public static final int GOTO = 0xa7;
+    public static final int IRETURN = 0xac;
+    public static final int DRETURN = 0xaf;
+    public static final int ARETURN = 0xb0;
+    public static final int RETURN = 0xb1;
+
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ILOAD = 0x15;
+    private static final int DLOAD = 0x18;
+    private static final int ALOAD = 0x19;
+    private static final int ISTORE = 0x36;
+    private static final int DSTORE = 0x39;
+    private static final int ASTORE = 0x3a;
+    private static final int AASTORE = 0x53;
+    private static final int IINC = 0x84;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int ANEWARRAY = 0xbd;
+    private static final int WIDE = 0xc4;
+
+    private static final int FULL_FRAME = 255;
+
+    /**
+     * Position in the code. Jumps to a label are patched once it is placed.
+     */
+    public static class Label {
+        private int offset = -1;
+        private List<String> stack;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    private final ClassFile classFile;
+
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<String> locals = new ArrayList<>();
+    private int maxLocals;
+
+    private final List<String> stack = new ArrayList<>();
+    private int stackSize;
+    private int maxStack;
+
+    private boolean reachable = true;
+
+    private final List<Label> labels = new ArrayList<>();
+
+    // LineNumberTable entries: start of the code for a line, and the line
+    private final List<int[]> lineNumbers = new ArrayList<>();
+
+    public Code(ClassFile classFile) {
+        this.classFile = classFile;
+    }
+
+    /**
+     * Declares the next local (or parameter, in order)
+     *
+     * @return Its slot
+     */
+    public int newLocal(String descriptor) {
+        int slot = maxLocals;
+
+        locals.add(stackType(descriptor));
+        maxLocals += size(descriptor);
+
+        return slot;
+    }
+
+    public Label newLabel() {
+        Label label = new Label();
+        labels.add(label);
+
+        return label;
+    }
+
+    /**
+     * Places a label at the current position
+     */
+    public void mark(Label label) {
+        label.offset = code.size();
+
+        if (reachable && label.stack == null) {
+            label.stack = new ArrayList<>(stack);
+        }
+
+        reachable |= !label.jumps.isEmpty();
+
+        if (reachable) {
+            stack.clear();
+            stack.addAll(label.stack);
+            stackSize = slots(stack);
+        }
+    }
+
+    /**
+     * Attributes the code from the current position on to the given line of
+     * the source file
+     */
+    public void line(int line) {
+        int start = code.size();
+        int[] last = lineNumbers.isEmpty() ? null : lineNumbers.get(lineNumbers.size() - 1);
+
+        if (last != null && last[1] == line) {
+            return;
+        }
+
+        if (last != null && last[0] == start) {
+            last[1] = line;
+        } else {
+            lineNumbers.add(new int[] {start, line});
+        }
+    }
+
+    /**
+     * @return False after an unconditional jump or return, until a label that is
+     *         jumped to is placed
+     */
+    public boolean isReachable() {
+        return reachable;
+    }
+
+    /**
+     * @return Type on top of the simulated operand stack
+     */
+    public String peek() {
+        return stack.get(stack.size() - 1);
+    }
+
+    public void jump(int opcode, Label label) {
+        if (opcode >= IF_ICMPEQ && opcode <= IF_ICMPLE) {
+            pop(2);
+        } else if (opcode != GOTO) {
+            pop(1);
+        }
+
+        if (label.stack == null) {
+            label.stack = new ArrayList<>(stack);
+        }
+
+        label.jumps.add(code.size());
+        code.write(opcode);
+        writeShort(0);
+
+        if (opcode == GOTO) {
+            reachable = false;
+        }
+    }
+
+    /**
+     * Instruction without operands. Arithmetic instructions pop two values and
+     * push one of the same type.
+     */
+    public void op(int opcode) {
+        switch (opcode) {
+            case ACONST_NULL:
+                push("null");
+                break;
+            case ICONST_0:
+                push("I");
+                break;
+            case DCONST_0:
+                push("D");
+                break;
+            case POP:
+            case POP2:
+                pop(1);
+                break;
+            case DUP:
+            case DUP2:
+                push(peek());
+                break;
+            case IADD:
+            case ISUB:
+            case IMUL:
+            case IDIV:
+            case IREM:
+            case DADD:
+            case DSUB:
+            case DMUL:
+            case DDIV:
+            case DREM:
+            case IXOR:
+                pop(1);
+                break;
+            case INEG:
+            case DNEG:
+                break;
+            case I2D:
+                pop(1);
+                push("D");
+                break;
+            case DCMPL:
+            case DCMPG:
+                pop(2);
+                push("I");
+                break;
+            case IRETURN:
+            case DRETURN:
+            case ARETURN:
+                pop(1);
+                reachable = false;
+                break;
+            case RETURN:
+                reachable = false;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported opcode " + opcode);
+        }
+
+        code.write(opcode);
+    }
+
+    public void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.write(SIPUSH);
+            writeShort(value);
+        } else {
+            code.write(LDC_W);
+            writeShort(classFile.integer(value));
+        }
+
+        push("I");
+    }
+
+    public void pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            code.write(DCONST_0);
+        } else if (value == 1.0) {
+            code.write(DCONST_0 + 1);
+        } else {
+            code.write(LDC2_W);
+            writeShort(classFile.doubleValue(value));
+        }
+
+        push("D");
+    }
+
+    public void pushString(String value) {
+        code.write(LDC_W);
+        writeShort(classFile.string(value));
+
+        push("Ljava/lang/String;");
+    }
+
+    public void load(int slot) {
+        String type = localAt(slot);
+
+        localInstruction(type.equals("I") ? ILOAD : type.equals("D") ? DLOAD : ALOAD, slot);
+        push(type);
+    }
+
+    public void store(int slot) {
+        String type = localAt(slot);
+
+        pop(1);
+        localInstruction(type.equals("I") ? ISTORE : type.equals("D") ? DSTORE : ASTORE, slot);
+    }
+
+    public void iinc(int slot, int increment) {
+        if (slot > 0xff || increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE) {
+            code.write(WIDE);
+            code.write(IINC);
+            writeShort(slot);
+            writeShort(increment);
+        } else {
+            code.write(IINC);
+            code.write(slot);
+            code.write(increment);
+        }
+    }
+
+    public void getStatic(String owner, String name, String descriptor) {
+        code.write(GETSTATIC);
+        writeShort(classFile.fieldRef(owner, name, descriptor));
+
+        push(descriptor);
+    }
+
+    public void putStatic(String owner, String name, String descriptor) {
+        pop(1);
+
+        code.write(PUTSTATIC);
+        writeShort(classFile.fieldRef(owner, name, descriptor));
+    }
+
+    public void invokeStatic(String owner, String name, String descriptor) {
+        invoke(INVOKESTATIC, owner, name, descriptor, false);
+    }
+
+    public void invokeVirtual(String owner, String name, String descriptor) {
+        invoke(INVOKEVIRTUAL, owner, name, descriptor, true);
+    }
+
+    public void invokeSpecial(String owner, String name, String descriptor) {
+        invoke(INVOKESPECIAL, owner, name, descriptor, true);
+    }
+
+    /**
+     * Creates an array of the given length (on the stack) and element class
+     */
+    public void newArray(String elementClass) {
+        pop(1);
+
+        code.write(ANEWARRAY);
+        writeShort(classFile.classRef(elementClass));
+
+        push("[L" + elementClass + ";");
+    }
+
+    /**
+     * Stores a reference into an array: array, index, value
+     */
+    public void arrayStore() {
+        pop(3);
+
+        code.write(AASTORE);
+    }
+
+    /**
+     * @return The Code attribute, without its name and length
+     */
+    public byte[] toByteArray() {
+        byte[] instructions = code.toByteArray();
+
+        for (Label label : labels) {
+            for (int jump : label.jumps) {
+                int delta = label.offset - jump;
+
+                if (label.offset < 0 || delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+                    throw new UnsupportedOperationException("method too large");
+                }
+
+                instructions[jump + 1] = (byte) (delta >> 8);
+                instructions[jump + 2] = (byte) delta;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            byte[] frames = frames();
+
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(instructions.length);
+            out.write(instructions);
+            out.writeShort(0);
+
+            out.writeShort((frames == null ? 0 : 1) + (lineNumbers.isEmpty() ? 0 : 1));
+
+            if (frames != null) {
+                out.writeShort(classFile.utf8("StackMapTable"));
+                out.writeInt(frames.length);
+                out.write(frames);
+            }
+
+            if (!lineNumbers.isEmpty()) {
+                out.writeShort(classFile.utf8("LineNumberTable"));
+                out.writeInt(2 + 4 * lineNumbers.size());
+                out.writeShort(lineNumbers.size());
+                for (int[] entry : lineNumbers) {
+                    out.writeShort(entry[0]);
+                    out.writeShort(entry[1]);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return The StackMapTable attribute, with a full frame at every reachable
+     *         label, or null if there are none
+     */
+    private byte[] frames() throws IOException {
+        Map<Integer, List<String>> stacks = new TreeMap<>();
+
+        for (Label label : labels) {
+            if (label.offset >= 0 && label.stack != null && label.offset < code.size()) {
+                stacks.putIfAbsent(label.offset, label.stack);
+            }
+        }
+
+        if (stacks.isEmpty()) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeShort(stacks.size());
+
+        int previous = -1;
+
+        for (Map.Entry<Integer, List<String>> frame : stacks.entrySet()) {
+            out.writeByte(FULL_FRAME);
+            out.writeShort(frame.getKey() - previous - 1);
+            previous = frame.getKey();
+
+            out.writeShort(locals.size());
+            for (String type : locals) {
+                writeVerificationType(out, type);
+            }
+
+            out.writeShort(frame.getValue().size());
+            for (String type : frame.getValue()) {
+                writeVerificationType(out, type);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private void writeVerificationType(DataOutputStream out, String type) throws IOException {
+        switch (type) {
+            case "I":
+                out.writeByte(1);
+                break;
+            case "D":
+                out.writeByte(3);
+                break;
+            case "null":
+                out.writeByte(5);
+                break;
+            default:
+                out.writeByte(7);
+                out.writeShort(classFile.classRef(type.startsWith("[") ? type : type.substring(1, type.length() - 1)));
+        }
+    }
+
+    private void invoke(int opcode, String owner, String name, String descriptor, boolean hasReceiver) {
+        List<String> parameters = parameterTypes(descriptor);
+        String returnType = descriptor.substring(descriptor.indexOf(')') + 1);
+
+        pop(parameters.size() + (hasReceiver ? 1 : 0));
+
+        code.write(opcode);
+        writeShort(classFile.methodRef(owner, name, descriptor));
+
+        if (!returnType.equals("V")) {
+            push(returnType);
+        }
+    }
+
+    private void localInstruction(int opcode, int slot) {
+        if (slot > 0xff) {
+            code.write(WIDE);
+            code.write(opcode);
+            writeShort(slot);
+        } else if (slot <= 3) {
+            // xload_<n> and xstore_<n>
+            int base = opcode < ISTORE ? 0x1a + (opcode - ILOAD) * 4 : 0x3b + (opcode - ISTORE) * 4;
+            code.write(base + slot);
+        } else {
+            code.write(opcode);
+            code.write(slot);
+        }
+    }
+
+    private String localAt(int slot) {
+        int s = 0;
+
+        for (String type : locals) {
+            if (s == slot) {
+                return type;
+            }
+            s += size(type);
+        }
+
+        throw new IllegalArgumentException("No local in slot " + slot);
+    }
+
+    private void push(String type) {
+        type = stackType(type);
+
+        stack.add(type);
+        stackSize += size(type);
+        maxStack = Math.max(maxStack, stackSize);
+    }
+
+    private void pop(int count) {
+        for (int i = 0; i < count; i++) {
+            stackSize -= size(stack.remove(stack.size() - 1));
+        }
+    }
+
+    private void writeShort(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    /**
+     * @return Field descriptors of the parameters of a method descriptor
+     */
+    public static List<String> parameterTypes(String descriptor) {
+        List<String> types = new ArrayList<>();
+
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            int start = i;
+
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+
+            if (descriptor.charAt(i) == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+
+            i++;
+            types.add(descriptor.substring(start, i));
+        }
+
+        return types;
+    }
+
+    /**
+     * Booleans are ints to the verifier
+     */
+    private static String stackType(String descriptor) {
+        return descriptor.equals("Z") ? "I" : descriptor;
+    }
+
+    private static int size(String type) {
+        return type.equals("D") ? 2 : 1;
+    }
+
+    private static int slots(List<String> types) {
+        int slots = 0;
+
+        for (String type : types) {
+            slots += size(type);
+        }
+
+        return slots;
+    }
+}
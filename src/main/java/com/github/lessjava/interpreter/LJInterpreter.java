@@ -0,0 +1,1192 @@
+package com.github.lessjava.interpreter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Scanner;
+
+import org.junit.Assert;
+
+import com.github.lessjava.CompilationContext;
+import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
+import com.github.lessjava.types.ast.ASTAssignment;
+import com.github.lessjava.types.ast.ASTBinaryExpr;
+import com.github.lessjava.types.ast.ASTBinaryExpr.BinOp;
+import com.github.lessjava.types.ast.ASTBlock;
+import com.github.lessjava.types.ast.ASTBreak;
+import com.github.lessjava.types.ast.ASTClass;
+import com.github.lessjava.types.ast.ASTConditional;
+import com.github.lessjava.types.ast.ASTContinue;
+import com.github.lessjava.types.ast.ASTExpression;
+import com.github.lessjava.types.ast.ASTForLoop;
+import com.github.lessjava.types.ast.ASTFunction;
+import com.github.lessjava.types.ast.ASTFunctionCall;
+import com.github.lessjava.types.ast.ASTGlobalAssignment;
+import com.github.lessjava.types.ast.ASTLiteral;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.types.ast.ASTReturn;
+import com.github.lessjava.types.ast.ASTStatement;
+import com.github.lessjava.types.ast.ASTTest;
+import com.github.lessjava.types.ast.ASTUnaryExpr;
+import com.github.lessjava.types.ast.ASTUnaryExpr.UnaryOp;
+import com.github.lessjava.types.ast.ASTVariable;
+import com.github.lessjava.types.ast.ASTVoidAssignment;
+import com.github.lessjava.types.ast.ASTVoidFunctionCall;
+import com.github.lessjava.types.ast.ASTWhileLoop;
+import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.impl.HMTypeBase;
+import com.github.lessjava.visitor.LJDefaultASTVisitor;
+
+/**
+ * Runs a typed program without generating Java. Every function, global and
+ * test is compiled once into a tree of closures, which is then executed; the
+ * AST is not looked at again while the program runs.
+ *
+ * Values are the boxed Java values the generated program would compute: an
+ * expression that is an Integer (or int) in the generated source evaluates to
+ * an Integer here, so printing, equality and int/double promotion behave as
+ * after javac. Tests fail with the same assertion errors as the generated
+ * JUnit tests.
+ *
+ * The same programs as {@link com.github.lessjava.visitor.impl.LJGenerateBytecode}
+ * are supported: globals, functions and tests over numbers, booleans and
+ * strings. The constructor throws an {@link UnsupportedOperationException} for
+ * anything else.
+ */
+public class LJInterpreter {
+    // How a statement completes
+    private static final int NORMAL = 0;
+    private static final int BREAK = 1;
+    private static final int CONTINUE = 2;
+    private static final int RETURN = 3;
+
+    // Kinds of values: the Java type of an expression in the generated source,
+    // in lower case when boxed
+    private static final char INT = 'I';
+    private static final char DOUBLE = 'D';
+    private static final char BOOL = 'Z';
+    private static final char STRING = 'S';
+    private static final char VOID = 'V';
+    private static final char OBJECT = 'O';
+
+    interface Expr {
+        Object eval(Frame frame);
+    }
+
+    interface Stmt {
+        int exec(Frame frame);
+    }
+
+    static final class Frame {
+        final Object[] locals;
+        Object returnValue;
+
+        Frame(int size) {
+            this.locals = new Object[size];
+        }
+    }
+
+    /**
+     * A compiled function. The body is compiled after every function has been
+     * declared, so calls may refer to functions defined later.
+     */
+    static final class Function {
+        final ASTFunction node;
+        final char[] parameterKinds;
+        final char returnKind;
+        int frameSize;
+        Stmt body;
+
+        Function(ASTFunction node, char[] parameterKinds, char returnKind) {
+            this.node = node;
+            this.parameterKinds = parameterKinds;
+            this.returnKind = returnKind;
+        }
+    }
+
+    private final CompilationContext context;
+
+    private final Map<String, Integer> globalSlots = new HashMap<>();
+    private final List<Character> globalKinds = new ArrayList<>();
+    private final List<Expr> globalInitializers = new ArrayList<>();
+    private Object[] globals;
+
+    private final Map<String, List<Function>> functions = new LinkedHashMap<>();
+    private final List<Expr> tests = new ArrayList<>();
+
+    // Scope of the function being compiled
+    private Map<String, Integer> locals;
+    private Map<String, Character> localKinds;
+    private int frameSize;
+    private final Deque<ASTForLoop> loops = new ArrayDeque<>();
+    private final Map<ASTForLoop, Integer> loopSlots = new HashMap<>();
+    private int loopDepth;
+
+    // Standard input, as read by wrappers.LJIO
+    private Scanner inputScanner;
+    private Scanner lineScanner;
+
+    public LJInterpreter(CompilationContext context, ASTProgram program) {
+        this.context = context;
+
+        for (ASTClass c : program.classes) {
+            if (!context.libraryClasses.contains(c)) {
+                throw new UnsupportedOperationException("class " + c.signature.className);
+            }
+        }
+
+        declareFunctions(program);
+
+        for (ASTGlobalAssignment g : program.globals) {
+            String name = g.assignment.variable.name;
+
+            globalSlots.put(name, globalKinds.size());
+            globalKinds.add(kind(g.assignment.type));
+        }
+
+        startScope();
+        for (ASTGlobalAssignment g : program.globals) {
+            String name = g.assignment.variable.name;
+
+            globalInitializers.add(convert(expression(g.assignment.value), kind(g.assignment.value),
+                    globalKinds.get(globalSlots.get(name))));
+        }
+
+        for (List<Function> overloads : functions.values()) {
+            for (Function f : overloads) {
+                compileBody(f);
+            }
+        }
+
+        startScope();
+        for (ASTTest t : program.tests) {
+            tests.add(test(t));
+        }
+    }
+
+    /**
+     * Runs the main function, if there is one
+     */
+    public void runMain() {
+        initializeGlobals();
+
+        for (Function f : functions.getOrDefault("main", new ArrayList<>())) {
+            f.body.exec(new Frame(f.frameSize));
+        }
+    }
+
+    /**
+     * @return Runner reporting the program's tests to JUnit like those of the
+     *         generated Main class
+     */
+    public LJTestRunner getTestRunner() {
+        List<Runnable> cases = new ArrayList<>();
+
+        for (Expr test : tests) {
+            cases.add(() -> {
+                initializeGlobals();
+                test.eval(new Frame(0));
+            });
+        }
+
+        return new LJTestRunner("Main", cases);
+    }
+
+    /**
+     * Globals are initialized once, before anything else runs, like the static
+     * fields of Main
+     */
+    private void initializeGlobals() {
+        if (globals != null) {
+            return;
+        }
+
+        globals = new Object[globalKinds.size()];
+        Frame frame = new Frame(0);
+
+        for (int i = 0; i < globals.length; i++) {
+            globals[i] = globalInitializers.get(i).eval(frame);
+        }
+    }
+
+    // Functions
+
+    private void declareFunctions(ASTProgram program) {
+        context.functionInstances.index(program);
+
+        for (int i = 0; i < program.functions.size(); i++) {
+            if (!(program.functions.get(i) instanceof ASTFunction)) {
+                continue;
+            }
+
+            ASTFunction node = (ASTFunction) program.functions.get(i);
+
+            if (context.libraryFunctions.contains(node) || !node.concrete) {
+                continue;
+            }
+
+            if (node.name.equals("main") && !node.parameters.isEmpty()) {
+                throw new UnsupportedOperationException("main with parameters");
+            }
+
+            // Instances with the same parameters are only emitted once
+            if (context.functionInstances.get(node) != node) {
+                continue;
+            }
+
+            char[] parameterKinds = new char[node.parameters.size()];
+            for (int p = 0; p < parameterKinds.length; p++) {
+                parameterKinds[p] = kind(node.parameters.get(p).type);
+            }
+
+            functions.computeIfAbsent(node.name, k -> new ArrayList<>()).add(new Function(node, parameterKinds, kind(node.returnType)));
+        }
+    }
+
+    private void compileBody(Function f) {
+        startScope();
+
+        for (Parameter p : f.node.parameters) {
+            declareLocal(p.name, kind(p.type));
+        }
+
+        // Every variable assigned in the function is one of its locals
+        f.node.body.traverse(new LJDefaultASTVisitor() {
+            @Override
+            public void preVisit(ASTAssignment node) {
+                if (!locals.containsKey(node.variable.name)) {
+                    declareLocal(node.variable.name, kind(node.variable.type));
+                }
+            }
+
+            @Override
+            public void preVisit(ASTForLoop node) {
+                loopSlots.put(node, frameSize++);
+            }
+        });
+
+        char returnKind = f.returnKind;
+        Stmt body = block(f.node.body, returnKind);
+
+        if (completesNormally(f.node.body) && returnKind != VOID) {
+            throw new UnsupportedOperationException("missing return in " + f.node.name);
+        }
+
+        f.body = body;
+        f.frameSize = frameSize;
+    }
+
+    private void startScope() {
+        locals = new HashMap<>();
+        localKinds = new HashMap<>();
+        frameSize = 0;
+        loops.clear();
+        loopSlots.clear();
+        loopDepth = 0;
+    }
+
+    private void declareLocal(String name, char kind) {
+        if (kind == VOID) {
+            throw new UnsupportedOperationException("void variable " + name);
+        }
+
+        locals.put(name, frameSize++);
+        localKinds.put(name, kind);
+    }
+
+    /**
+     * Whether execution can reach the end of a block; statements after one that
+     * can't complete are rejected, as javac does
+     */
+    private boolean completesNormally(ASTBlock block) {
+        for (int i = 0; i < block.statements.size(); i++) {
+            if (!completesNormally(block.statements.get(i))) {
+                if (i < block.statements.size() - 1) {
+                    throw new UnsupportedOperationException("unreachable statement");
+                }
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean completesNormally(ASTStatement node) {
+        if (node instanceof ASTReturn || node instanceof ASTBreak || node instanceof ASTContinue) {
+            return false;
+        }
+
+        if (node instanceof ASTConditional) {
+            ASTConditional conditional = (ASTConditional) node;
+            boolean ifCompletes = completesNormally(conditional.ifBlock);
+
+            return !conditional.hasElseBlock() || completesNormally(conditional.elseBlock) || ifCompletes;
+        }
+
+        if (node instanceof ASTWhileLoop) {
+            completesNormally(((ASTWhileLoop) node).body);
+        } else if (node instanceof ASTForLoop) {
+            completesNormally(((ASTForLoop) node).block);
+        }
+
+        return true;
+    }
+
+    // Tests
+
+    /**
+     * assertEquals(expected, actual) for equality, assertTrue otherwise
+     */
+    private Expr test(ASTTest node) {
+        if (node.expr instanceof ASTBinaryExpr && !(node.expr instanceof ASTAssignment)
+                && ((ASTBinaryExpr) node.expr).operator == BinOp.EQ) {
+            ASTBinaryExpr expr = (ASTBinaryExpr) node.expr;
+            Expr expected = assertArgument(expr.rightChild);
+            Expr actual = assertArgument(expr.leftChild);
+
+            return frame -> {
+                Object e = expected.eval(frame);
+                Assert.assertEquals(e, actual.eval(frame));
+                return null;
+            };
+        }
+
+        Expr condition = convert(expression(node.expr), kind(node.expr), BOOL);
+
+        return frame -> {
+            Assert.assertTrue((Boolean) condition.eval(frame));
+            return null;
+        };
+    }
+
+    /**
+     * Unboxed operands are cast to Object by LJGenerateJava; anything else
+     * primitive would make the assertEquals call ambiguous
+     */
+    private Expr assertArgument(ASTExpression expr) {
+        char kind = kind(expr);
+
+        if (isPrimitive(kind) && !expr.isUnboxed()) {
+            throw new UnsupportedOperationException("ambiguous assertEquals");
+        }
+
+        return boxedOperand(expr);
+    }
+
+    // Statements
+
+    private Stmt block(ASTBlock block, char returnKind) {
+        Stmt[] statements = new Stmt[block.statements.size()];
+
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = statement(block.statements.get(i), returnKind);
+        }
+
+        if (statements.length == 1) {
+            return statements[0];
+        }
+
+        return frame -> {
+            for (Stmt s : statements) {
+                int completion = s.exec(frame);
+
+                if (completion != NORMAL) {
+                    return completion;
+                }
+            }
+
+            return NORMAL;
+        };
+    }
+
+    private Stmt statement(ASTStatement node, char returnKind) {
+        if (node instanceof ASTVoidAssignment) {
+            Expr assignment = assignment(((ASTVoidAssignment) node).assignment);
+
+            return frame -> {
+                assignment.eval(frame);
+                return NORMAL;
+            };
+        } else if (node instanceof ASTVoidFunctionCall) {
+            Expr call = expression(((ASTVoidFunctionCall) node).functionCall);
+
+            return frame -> {
+                call.eval(frame);
+                return NORMAL;
+            };
+        } else if (node instanceof ASTConditional) {
+            return conditional((ASTConditional) node, returnKind);
+        } else if (node instanceof ASTWhileLoop) {
+            return whileLoop((ASTWhileLoop) node, returnKind);
+        } else if (node instanceof ASTForLoop) {
+            return forLoop((ASTForLoop) node, returnKind);
+        } else if (node instanceof ASTReturn) {
+            return returnStatement((ASTReturn) node, returnKind);
+        } else if (node instanceof ASTBreak || node instanceof ASTContinue) {
+            if (loopDepth == 0) {
+                throw new UnsupportedOperationException("break or continue outside of a loop");
+            }
+
+            int completion = node instanceof ASTBreak ? BREAK : CONTINUE;
+            return frame -> completion;
+        }
+
+        throw new UnsupportedOperationException(node.getClass().getSimpleName());
+    }
+
+    private Stmt conditional(ASTConditional node, char returnKind) {
+        Expr condition = convert(expression(node.condition), kind(node.condition), BOOL);
+        Stmt ifBlock = block(node.ifBlock, returnKind);
+
+        if (!node.hasElseBlock()) {
+            return frame -> (Boolean) condition.eval(frame) ? ifBlock.exec(frame) : NORMAL;
+        }
+
+        Stmt elseBlock = block(node.elseBlock, returnKind);
+
+        return frame -> (Boolean) condition.eval(frame) ? ifBlock.exec(frame) : elseBlock.exec(frame);
+    }
+
+    private Stmt whileLoop(ASTWhileLoop node, char returnKind) {
+        Expr guard = convert(expression(node.guard), kind(node.guard), BOOL);
+
+        loopDepth++;
+        Stmt body = block(node.body, returnKind);
+        loopDepth--;
+
+        return frame -> {
+            while ((Boolean) guard.eval(frame)) {
+                int completion = body.exec(frame);
+
+                if (completion == BREAK) {
+                    break;
+                } else if (completion == RETURN) {
+                    return RETURN;
+                }
+            }
+
+            return NORMAL;
+        };
+    }
+
+    /**
+     * for (var = lower; var < upper; var++), with upper evaluated on every
+     * iteration
+     */
+    private Stmt forLoop(ASTForLoop node, char returnKind) {
+        if (node.lowerBound == null) {
+            throw new UnsupportedOperationException("for loop over a collection");
+        }
+
+        int slot = loopSlots.get(node);
+        char kind = kind(HMTypeBase.INT);
+        Expr lowerBound = convert(expression(node.lowerBound), kind(node.lowerBound), kind);
+
+        loops.push(node);
+        loopDepth++;
+
+        char comparison = numeric(kind, kind(node.upperBound));
+        Expr upperBound = operand(node.upperBound, comparison);
+        Stmt body = block(node.block, returnKind);
+
+        loopDepth--;
+        loops.pop();
+
+        boolean doubleBound = comparison == DOUBLE;
+
+        return frame -> {
+            Object[] locals = frame.locals;
+
+            for (locals[slot] = lowerBound.eval(frame); lessThan((Integer) locals[slot], upperBound.eval(frame),
+                    doubleBound); locals[slot] = (Integer) locals[slot] + 1) {
+                int completion = body.exec(frame);
+
+                if (completion == BREAK) {
+                    break;
+                } else if (completion == RETURN) {
+                    return RETURN;
+                }
+            }
+
+            return NORMAL;
+        };
+    }
+
+    private static boolean lessThan(int i, Object bound, boolean doubleBound) {
+        return doubleBound ? i < (Double) bound : i < (Integer) bound;
+    }
+
+    private Stmt returnStatement(ASTReturn node, char returnKind) {
+        if (!node.hasValue()) {
+            if (returnKind != VOID) {
+                throw new UnsupportedOperationException("return without a value");
+            }
+
+            return frame -> RETURN;
+        }
+
+        if (returnKind == VOID) {
+            throw new UnsupportedOperationException("return with a value");
+        }
+
+        Expr value = convert(expression(node.value), kind(node.value), returnKind);
+
+        return frame -> {
+            frame.returnValue = value.eval(frame);
+            return RETURN;
+        };
+    }
+
+    // Expressions
+
+    private Expr expression(ASTExpression node) {
+        if (node instanceof ASTLiteral) {
+            return literal((ASTLiteral) node);
+        } else if (node instanceof ASTVariable) {
+            return variable((ASTVariable) node);
+        } else if (node instanceof ASTAssignment) {
+            return assignment((ASTAssignment) node);
+        } else if (node instanceof ASTBinaryExpr) {
+            return binary((ASTBinaryExpr) node);
+        } else if (node instanceof ASTUnaryExpr) {
+            return unary((ASTUnaryExpr) node);
+        } else if (node instanceof ASTFunctionCall) {
+            return call((ASTFunctionCall) node);
+        }
+
+        throw new UnsupportedOperationException(node.getClass().getSimpleName());
+    }
+
+    /**
+     * Kind of an expression's value in the generated source
+     */
+    private char kind(ASTExpression node) {
+        if (node instanceof ASTLiteral) {
+            Object value = ((ASTLiteral) node).value;
+
+            // Unboxed literals have the primitive type of the expression; boxed
+            // ones that of their value
+            if (value instanceof String) {
+                return STRING;
+            } else if (node.isUnboxed()) {
+                return kind(node.type);
+            }
+
+            return box(value instanceof Boolean ? BOOL : value instanceof Integer ? INT : DOUBLE);
+        } else if (node instanceof ASTVariable) {
+            return variableKind((ASTVariable) node);
+        } else if (node instanceof ASTAssignment) {
+            return variableKind(((ASTAssignment) node).variable);
+        } else if (node instanceof ASTBinaryExpr || node instanceof ASTUnaryExpr) {
+            return kind(node.type);
+        } else if (node instanceof ASTFunctionCall) {
+            ASTFunctionCall call = (ASTFunctionCall) node;
+            Function f = resolve(call);
+
+            return f != null ? f.returnKind : libraryReturnKind(call);
+        }
+
+        throw new UnsupportedOperationException(node.getClass().getSimpleName());
+    }
+
+    private static char kind(HMType type) {
+        type = type == null ? null : type.prune();
+
+        if (type instanceof HMTypeBase) {
+            HMTypeBase base = (HMTypeBase) type;
+
+            switch (base.getBaseType()) {
+                case INT:
+                    return base.isPrimitive() ? INT : box(INT);
+                case DOUBLE:
+                    return base.isPrimitive() ? DOUBLE : box(DOUBLE);
+                case BOOL:
+                    return base.isPrimitive() ? BOOL : box(BOOL);
+                case STR:
+                    return STRING;
+                default:
+                    return VOID;
+            }
+        }
+
+        throw new UnsupportedOperationException("type " + type);
+    }
+
+    private Expr literal(ASTLiteral node) {
+        Object value = node.value;
+
+        if (value instanceof String) {
+            String s = unescape(ASTLiteral.addEscapeCodes((String) value));
+            return frame -> s;
+        }
+
+        if (value instanceof Integer && kind(node) == DOUBLE) {
+            value = ((Integer) value).doubleValue();
+        }
+
+        Object constant = value;
+        return frame -> constant;
+    }
+
+    private Expr variable(ASTVariable node) {
+        variableKind(node);
+        ASTForLoop loop = loopInScope(node.name);
+
+        if (loop != null || locals.containsKey(node.name)) {
+            int slot = loop != null ? loopSlots.get(loop) : locals.get(node.name);
+            return frame -> frame.locals[slot];
+        }
+
+        int slot = globalSlots.get(node.name);
+        return frame -> globals[slot];
+    }
+
+    private char variableKind(ASTVariable node) {
+        if (node.index != null) {
+            throw new UnsupportedOperationException("indexed variable " + node.name);
+        }
+
+        if (loopInScope(node.name) != null) {
+            return kind(HMTypeBase.INT);
+        } else if (localKinds.containsKey(node.name)) {
+            return localKinds.get(node.name);
+        } else if (globalSlots.containsKey(node.name)) {
+            return globalKinds.get(globalSlots.get(node.name));
+        }
+
+        throw new UnsupportedOperationException("variable " + node.name);
+    }
+
+    private ASTForLoop loopInScope(String name) {
+        for (ASTForLoop loop : loops) {
+            if (loop.var.name.equals(name)) {
+                return loop;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Assignments in functions are to the function's locals; the assigned value
+     * is the value of the expression
+     */
+    private Expr assignment(ASTAssignment node) {
+        if (node.memberAccess != null || node.variable.index != null) {
+            throw new UnsupportedOperationException("assignment to " + node);
+        }
+
+        if (!locals.containsKey(node.variable.name) || loopInScope(node.variable.name) != null) {
+            throw new UnsupportedOperationException("assignment to " + node.variable.name);
+        }
+
+        int slot = locals.get(node.variable.name);
+        Expr value = convert(expression(node.value), kind(node.value), localKinds.get(node.variable.name));
+
+        return frame -> frame.locals[slot] = value.eval(frame);
+    }
+
+    private Expr binary(ASTBinaryExpr node) {
+        char left = kind(node.leftChild);
+        char right = kind(node.rightChild);
+        char raw;
+        Expr e;
+
+        switch (node.operator) {
+            case ADD:
+                if (left == STRING || right == STRING) {
+                    Expr l = expression(node.leftChild);
+                    Expr r = expression(node.rightChild);
+
+                    raw = STRING;
+                    e = frame -> String.valueOf(l.eval(frame)).concat(String.valueOf(r.eval(frame)));
+                } else {
+                    raw = numeric(left, right);
+                    e = arithmetic(node.operator, raw, operand(node.leftChild, raw), operand(node.rightChild, raw));
+                }
+                break;
+            case SUB:
+            case MUL:
+            case DIV:
+            case MOD:
+                raw = numeric(left, right);
+                e = arithmetic(node.operator, raw, operand(node.leftChild, raw), operand(node.rightChild, raw));
+                break;
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+                char comparison = numeric(left, right);
+                raw = BOOL;
+                e = comparison(node.operator, comparison, operand(node.leftChild, comparison),
+                        operand(node.rightChild, comparison));
+                break;
+            case EQ:
+            case NE:
+                raw = BOOL;
+                e = equality(node, left, right);
+                break;
+            case AND:
+            case OR:
+                raw = BOOL;
+                e = logical(node);
+                break;
+            default:
+                throw new UnsupportedOperationException("operator " + ASTBinaryExpr.opToString(node.operator));
+        }
+
+        return wrap(e, raw, kind(node.type));
+    }
+
+    private Expr operand(ASTExpression node, char kind) {
+        return convert(expression(node), kind(node), kind);
+    }
+
+    private static Expr arithmetic(BinOp operator, char kind, Expr l, Expr r) {
+        if (kind == INT) {
+            switch (operator) {
+                case ADD:
+                    return frame -> (Integer) l.eval(frame) + (Integer) r.eval(frame);
+                case SUB:
+                    return frame -> (Integer) l.eval(frame) - (Integer) r.eval(frame);
+                case MUL:
+                    return frame -> (Integer) l.eval(frame) * (Integer) r.eval(frame);
+                case DIV:
+                    return frame -> (Integer) l.eval(frame) / (Integer) r.eval(frame);
+                default:
+                    return frame -> (Integer) l.eval(frame) % (Integer) r.eval(frame);
+            }
+        }
+
+        switch (operator) {
+            case ADD:
+                return frame -> (Double) l.eval(frame) + (Double) r.eval(frame);
+            case SUB:
+                return frame -> (Double) l.eval(frame) - (Double) r.eval(frame);
+            case MUL:
+                return frame -> (Double) l.eval(frame) * (Double) r.eval(frame);
+            case DIV:
+                return frame -> (Double) l.eval(frame) / (Double) r.eval(frame);
+            default:
+                return frame -> (Double) l.eval(frame) % (Double) r.eval(frame);
+        }
+    }
+
+    private static Expr comparison(BinOp operator, char kind, Expr l, Expr r) {
+        if (kind == INT) {
+            switch (operator) {
+                case LT:
+                    return frame -> (Integer) l.eval(frame) < (Integer) r.eval(frame);
+                case GT:
+                    return frame -> (Integer) l.eval(frame) > (Integer) r.eval(frame);
+                case LE:
+                    return frame -> (Integer) l.eval(frame) <= (Integer) r.eval(frame);
+                case GE:
+                    return frame -> (Integer) l.eval(frame) >= (Integer) r.eval(frame);
+                case EQ:
+                    return frame -> ((Integer) l.eval(frame)).intValue() == (Integer) r.eval(frame);
+                default:
+                    return frame -> ((Integer) l.eval(frame)).intValue() != (Integer) r.eval(frame);
+            }
+        }
+
+        if (kind == BOOL) {
+            if (operator == BinOp.EQ) {
+                return frame -> ((Boolean) l.eval(frame)).booleanValue() == (Boolean) r.eval(frame);
+            }
+            return frame -> ((Boolean) l.eval(frame)).booleanValue() != (Boolean) r.eval(frame);
+        }
+
+        switch (operator) {
+            case LT:
+                return frame -> (Double) l.eval(frame) < (Double) r.eval(frame);
+            case GT:
+                return frame -> (Double) l.eval(frame) > (Double) r.eval(frame);
+            case LE:
+                return frame -> (Double) l.eval(frame) <= (Double) r.eval(frame);
+            case GE:
+                return frame -> (Double) l.eval(frame) >= (Double) r.eval(frame);
+            case EQ:
+                return frame -> ((Double) l.eval(frame)).doubleValue() == (Double) r.eval(frame);
+            default:
+                return frame -> ((Double) l.eval(frame)).doubleValue() != (Double) r.eval(frame);
+        }
+    }
+
+    /**
+     * Boxed mode compares with left.equals(right), primitive mode with == when
+     * the equality is primitive, and with Objects.equals otherwise (see
+     * {@link ASTBinaryExpr#isPrimitiveEquality()})
+     */
+    private Expr equality(ASTBinaryExpr node, char left, char right) {
+        boolean equal = node.operator == BinOp.EQ;
+
+        if (context.primitives) {
+            if (node.isPrimitiveEquality()) {
+                char comparison = unbox(left) == BOOL && unbox(right) == BOOL ? BOOL : numeric(left, right);
+
+                return comparison(node.operator, comparison, operand(node.leftChild, comparison),
+                        operand(node.rightChild, comparison));
+            }
+        }
+
+        if (context.primitives) {
+            Expr l = boxedOperand(node.leftChild);
+            Expr r = boxedOperand(node.rightChild);
+
+            return frame -> Objects.equals(l.eval(frame), r.eval(frame)) == equal;
+        }
+
+        if (isPrimitive(left)) {
+            throw new UnsupportedOperationException("equals() on a primitive");
+        }
+
+        Expr l = operand(node.leftChild, OBJECT);
+        Expr r = operand(node.rightChild, OBJECT);
+
+        return frame -> l.eval(frame).equals(r.eval(frame)) == equal;
+    }
+
+    /**
+     * An operand boxed to an Object, a promoted literal to an Integer as in
+     * the default mode (see {@link ASTLiteral#isPromoted()})
+     */
+    private Expr boxedOperand(ASTExpression node) {
+        if (node.isUnboxed() && node instanceof ASTLiteral && ((ASTLiteral) node).isPromoted()) {
+            Object value = ((ASTLiteral) node).value;
+            return frame -> value;
+        }
+
+        return operand(node, OBJECT);
+    }
+
+    private Expr logical(ASTBinaryExpr node) {
+        Expr l = operand(node.leftChild, BOOL);
+        Expr r = operand(node.rightChild, BOOL);
+
+        if (node.operator == BinOp.AND) {
+            return frame -> (Boolean) l.eval(frame) && (Boolean) r.eval(frame);
+        }
+
+        return frame -> (Boolean) l.eval(frame) || (Boolean) r.eval(frame);
+    }
+
+    private Expr unary(ASTUnaryExpr node) {
+        char child = unbox(kind(node.child));
+        Expr e = operand(node.child, child);
+
+        if (node.operator == UnaryOp.NOT && child == BOOL) {
+            return wrap(frame -> !(Boolean) e.eval(frame), BOOL, kind(node.type));
+        } else if (node.operator == UnaryOp.NEG && child == INT) {
+            return wrap(frame -> -(Integer) e.eval(frame), INT, kind(node.type));
+        } else if (node.operator == UnaryOp.NEG && child == DOUBLE) {
+            return wrap(frame -> -(Double) e.eval(frame), DOUBLE, kind(node.type));
+        }
+
+        throw new UnsupportedOperationException("operator " + ASTUnaryExpr.opToString(node.operator));
+    }
+
+    private Expr call(ASTFunctionCall node) {
+        Function f = resolve(node);
+
+        if (f == null) {
+            return libraryCall(node);
+        }
+
+        Expr[] arguments = new Expr[node.arguments.size()];
+
+        for (int i = 0; i < arguments.length; i++) {
+            ASTExpression argument = node.arguments.get(i);
+            arguments[i] = convert(expression(argument), kind(argument), f.parameterKinds[i]);
+        }
+
+        return frame -> {
+            Frame callee = new Frame(f.frameSize);
+
+            for (int i = 0; i < arguments.length; i++) {
+                callee.locals[i] = arguments[i].eval(frame);
+            }
+
+            f.body.exec(callee);
+
+            return callee.returnValue;
+        };
+    }
+
+    /**
+     * Functions of the program hide the library functions of the same name.
+     * Among instances of a function, the one whose parameter kinds match the
+     * arguments is called.
+     *
+     * @return The called function, or null for a library function
+     */
+    private Function resolve(ASTFunctionCall node) {
+        if (node.isConstructor) {
+            throw new UnsupportedOperationException("constructor " + node.name);
+        }
+
+        List<Function> overloads = functions.get(node.name);
+
+        if (overloads == null) {
+            return null;
+        }
+
+        List<Function> candidates = new ArrayList<>();
+
+        for (Function f : overloads) {
+            if (f.parameterKinds.length == node.arguments.size() && !node.name.equals("main")) {
+                candidates.add(f);
+            }
+        }
+
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        for (Function f : candidates) {
+            boolean matches = true;
+
+            for (int i = 0; i < node.arguments.size(); i++) {
+                matches &= kind(node.arguments.get(i)) == f.parameterKinds[i];
+            }
+
+            if (matches) {
+                return f;
+            }
+        }
+
+        throw new UnsupportedOperationException("call to " + node.name);
+    }
+
+    private char libraryReturnKind(ASTFunctionCall node) {
+        switch (node.name) {
+            case "print":
+            case "println":
+            case "printf":
+                return VOID;
+            case "readInt":
+                return INT;
+            case "readDouble":
+                return DOUBLE;
+            case "format":
+            case "readChar":
+            case "readWord":
+            case "readLine":
+                return STRING;
+            default:
+                throw new UnsupportedOperationException("call to " + node.name);
+        }
+    }
+
+    /**
+     * The functions of wrappers.LJIO and wrappers.LJString
+     */
+    private Expr libraryCall(ASTFunctionCall node) {
+        int arity = node.arguments.size();
+        List<Expr> arguments = new ArrayList<>();
+
+        for (ASTExpression argument : node.arguments) {
+            if (kind(argument) == VOID) {
+                throw new UnsupportedOperationException("void value");
+            }
+            arguments.add(expression(argument));
+        }
+
+        switch (node.name) {
+            case "print":
+            case "println":
+                if (arity != 1) {
+                    break;
+                }
+
+                Expr value = arguments.get(0);
+
+                if (node.name.equals("print")) {
+                    return frame -> {
+                        System.out.print(value.eval(frame));
+                        return null;
+                    };
+                }
+                return frame -> {
+                    System.out.println(value.eval(frame));
+                    return null;
+                };
+            case "printf":
+            case "format":
+                if (arity == 0 || kind(node.arguments.get(0)) != STRING) {
+                    break;
+                }
+
+                Expr format = arguments.get(0);
+                Expr[] values = arguments.subList(1, arity).toArray(new Expr[0]);
+                boolean print = node.name.equals("printf");
+
+                return frame -> {
+                    String f = (String) format.eval(frame);
+                    Object[] args = new Object[values.length];
+
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = values[i].eval(frame);
+                    }
+
+                    if (print) {
+                        System.out.printf(f, args);
+                        return null;
+                    }
+
+                    return String.format(f, args);
+                };
+            case "readInt":
+                return arity == 0 ? frame -> buffer().nextInt() : null;
+            case "readDouble":
+                return arity == 0 ? frame -> buffer().nextDouble() : null;
+            case "readChar":
+                return arity == 0 ? frame -> buffer().useDelimiter("").next() : null;
+            case "readWord":
+                return arity == 0 ? frame -> buffer().useDelimiter("\\s+").next() : null;
+            case "readLine":
+                return arity == 0 ? frame -> buffer().nextLine() : null;
+            default:
+        }
+
+        throw new UnsupportedOperationException("call to " + node.name);
+    }
+
+    private Scanner buffer() {
+        if (inputScanner == null) {
+            inputScanner = new Scanner(System.in);
+        }
+
+        if (lineScanner == null || !lineScanner.hasNext()) {
+            lineScanner = new Scanner(inputScanner.nextLine());
+        }
+
+        return lineScanner;
+    }
+
+    // Conversions
+
+    /**
+     * Converts a value like an assignment or method argument in the generated
+     * source would; only int to double changes the value
+     */
+    private static Expr convert(Expr e, char from, char to) {
+        if (from == to) {
+            return e;
+        }
+
+        if (to == OBJECT) {
+            if (from == VOID) {
+                throw new UnsupportedOperationException("void value");
+            }
+            return e;
+        }
+
+        // Unboxing, then widening
+        if (isPrimitive(to)) {
+            from = unbox(from);
+
+            if (from == INT && to == DOUBLE) {
+                return frame -> ((Integer) e.eval(frame)).doubleValue();
+            } else if (from == to) {
+                return e;
+            }
+        }
+
+        // Boxing
+        if (isPrimitive(from) && box(from) == to) {
+            return e;
+        }
+
+        throw new UnsupportedOperationException("conversion from " + from + " to " + to);
+    }
+
+    /**
+     * Converts an operator's result to the type of its expression, like the
+     * valueOf() or (double) that {@link ASTBinaryExpr#wrapPrimitive} adds
+     */
+    private static Expr wrap(Expr e, char raw, char kind) {
+        if (isPrimitive(kind) || kind == STRING) {
+            return convert(e, raw, kind);
+        }
+
+        return convert(e, raw, unbox(kind));
+    }
+
+    /**
+     * Binary numeric promotion
+     */
+    private static char numeric(char left, char right) {
+        left = unbox(left);
+        right = unbox(right);
+
+        if ((left != INT && left != DOUBLE) || (right != INT && right != DOUBLE)) {
+            throw new UnsupportedOperationException("arithmetic on " + left + " and " + right);
+        }
+
+        return left == DOUBLE || right == DOUBLE ? DOUBLE : INT;
+    }
+
+    private static char box(char primitive) {
+        return isPrimitive(primitive) ? Character.toLowerCase(primitive) : primitive;
+    }
+
+    private static char unbox(char kind) {
+        return kind == 'i' || kind == 'd' || kind == 'z' ? Character.toUpperCase(kind) : kind;
+    }
+
+    private static boolean isPrimitive(char kind) {
+        return kind == INT || kind == DOUBLE || kind == BOOL;
+    }
+
+    /**
+     * Interprets the escape sequences javac would find in a string literal of
+     * the generated source
+     */
+    private static String unescape(String literal) {
+        StringBuilder s = new StringBuilder();
+
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+
+            char escaped = ++i < literal.length() ? literal.charAt(i) : 'u';
+
+            switch (escaped) {
+                case 'n':
+                    s.append('\n');
+                    break;
+                case 't':
+                    s.append('\t');
+                    break;
+                case 'r':
+                    s.append('\r');
+                    break;
+                case 'b':
+                    s.append('\b');
+                    break;
+                case 'f':
+                    s.append('\f');
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                    s.append(escaped);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("escape sequence \\" + escaped);
+            }
+        }
+
+        return s.toString();
+    }
+}
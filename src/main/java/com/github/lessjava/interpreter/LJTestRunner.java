@@ -0,0 +1,85 @@
+package com.github.lessjava.interpreter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+
+/**
+ * Reports interpreted tests to JUnit as if they were the test methods of the
+ * generated class: the n-th test is "testN", tests run in the order JUnit
+ * would run the methods, and a class without tests is an initialization error.
+ */
+public class LJTestRunner extends Runner {
+    // JUnit's default method order (see org.junit.internal.MethodSorter)
+    private static final Comparator<String> METHOD_ORDER = Comparator.<String> comparingInt(String::hashCode)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final String className;
+    private final List<String> names = new ArrayList<>();
+    private final List<Runnable> tests;
+
+    public LJTestRunner(String className, List<Runnable> tests) {
+        this.className = className;
+        this.tests = tests;
+
+        for (int i = 0; i < tests.size(); i++) {
+            names.add("test" + i);
+        }
+    }
+
+    @Override
+    public Description getDescription() {
+        Description suite = Description.createSuiteDescription(className);
+
+        if (tests.isEmpty()) {
+            suite.addChild(Description.createTestDescription(className, "initializationError"));
+        }
+
+        for (String name : ordered()) {
+            suite.addChild(Description.createTestDescription(className, name));
+        }
+
+        return suite;
+    }
+
+    @Override
+    public void run(RunNotifier notifier) {
+        if (tests.isEmpty()) {
+            run(notifier, "initializationError", () -> {
+                throw new RuntimeException(new Exception("No runnable methods"));
+            });
+            return;
+        }
+
+        for (String name : ordered()) {
+            run(notifier, name, tests.get(names.indexOf(name)));
+        }
+    }
+
+    private void run(RunNotifier notifier, String name, Runnable test) {
+        Description description = Description.createTestDescription(className, name);
+
+        notifier.fireTestStarted(description);
+
+        try {
+            test.run();
+        } catch (Throwable t) {
+            // Checked exceptions can only get here wrapped
+            Throwable failure = t.getClass() == RuntimeException.class && t.getCause() != null ? t.getCause() : t;
+            notifier.fireTestFailure(new Failure(description, failure));
+        } finally {
+            notifier.fireTestFinished(description);
+        }
+    }
+
+    private List<String> ordered() {
+        List<String> ordered = new ArrayList<>(names);
+        ordered.sort(METHOD_ORDER);
+        return ordered;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.lessjava.types;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.lessjava.types.ast.ASTAbstractFunction;
+import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
+import com.github.lessjava.types.ast.ASTClass;
+import com.github.lessjava.types.ast.ASTExpression;
+import com.github.lessjava.types.ast.ASTFunctionCall;
+import com.github.lessjava.types.ast.ASTMethod;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.types.inference.HMType;
+
+/**
+ * The functions and methods of a program by name and parameter types, so that
+ * each instance of a generic function is created, and emitted, only once, and
+ * calls find the instance for their argument types. Methods are indexed by
+ * their function.
+ *
+ * Parameter types are hashed structurally, and binding a type variable changes
+ * the hash of every type containing it, so the program is indexed again
+ * whenever types may have changed: before each traversal that instantiates
+ * functions, and before code generation.
+ */
+public class FunctionInstances {
+    private final Map<String, ASTAbstractFunction> prototypes = new HashMap<>();
+    private final Map<Key, ASTAbstractFunction> functions = new HashMap<>();
+
+    /**
+     * Indexes the program's methods and functions in the order they are
+     * traversed in, so the first of several with the same parameters is the
+     * one found. Library functions and methods, which have no body, aren't
+     * indexed, so a function of the program may shadow them.
+     */
+    public void index(ASTProgram program) {
+        prototypes.clear();
+        functions.clear();
+
+        for (ASTClass c : program.classes) {
+            for (ASTMethod m : c.block.methods) {
+                if (m.function.body == null) {
+                    continue;
+                }
+
+                functions.putIfAbsent(new Key(m.getIdentifyingString(), types(m.parameters)), m.function);
+            }
+        }
+
+        for (ASTAbstractFunction f : program.functions) {
+            if (f.body == null) {
+                continue;
+            }
+
+            if (!f.concrete) {
+                prototypes.putIfAbsent(f.name, f);
+            }
+
+            functions.putIfAbsent(key(f), f);
+        }
+    }
+
+    /**
+     * @return The first function of the given name that isn't concrete, or null
+     */
+    public ASTAbstractFunction getPrototype(String name) {
+        return prototypes.get(name);
+    }
+
+    /**
+     * @return The first indexed function with the same name and parameter
+     *         types, or null
+     */
+    public ASTAbstractFunction get(ASTAbstractFunction function) {
+        return functions.get(key(function));
+    }
+
+    /**
+     * @return The first indexed function with the call's name and parameters of
+     *         its argument types, or null
+     */
+    public ASTAbstractFunction get(ASTFunctionCall call) {
+        List<HMType> types = new ArrayList<>();
+
+        for (ASTExpression argument : call.arguments) {
+            types.add(argument.type);
+        }
+
+        return functions.get(new Key(call.getIdentifyingString(), types));
+    }
+
+    /**
+     * Adds an instance; a method's function must already have the method as
+     * its parent
+     *
+     * @return False if a function with the same name and parameter types was
+     *         already indexed, and the instance isn't added
+     */
+    public boolean add(ASTAbstractFunction function) {
+        return functions.putIfAbsent(key(function), function) == null;
+    }
+
+    private static Key key(ASTAbstractFunction function) {
+        String id = function.getParent() instanceof ASTMethod
+                ? ((ASTMethod) function.getParent()).getIdentifyingString()
+                : function.getIdentifyingString();
+
+        return new Key(id, types(function.parameters));
+    }
+
+    private static List<HMType> types(List<Parameter> parameters) {
+        List<HMType> types = new ArrayList<>();
+
+        for (Parameter p : parameters) {
+            types.add(p.type);
+        }
+
+        return types;
+    }
+
+    private static class Key {
+        private final String id;
+        private final List<HMType> types;
+        private final int hash;
+
+        Key(String id, List<HMType> types) {
+            this.id = id;
+            this.types = types;
+            this.hash = 31 * id.hashCode() + types.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return id.equals(other.id) && types.equals(other.types);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.github.lessjava.types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.github.lessjava.types.ast.ASTAbstractFunction;
+import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
+import com.github.lessjava.types.ast.ASTAssignment;
+import com.github.lessjava.types.ast.ASTBinaryExpr;
+import com.github.lessjava.types.ast.ASTBinaryExpr.BinOp;
+import com.github.lessjava.types.ast.ASTExpression;
+import com.github.lessjava.types.ast.ASTForLoop;
+import com.github.lessjava.types.ast.ASTFunction;
+import com.github.lessjava.types.ast.ASTFunctionCall;
+import com.github.lessjava.types.ast.ASTMethodCall;
+import com.github.lessjava.types.ast.ASTNode;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.types.ast.ASTReturn;
+import com.github.lessjava.types.ast.ASTVariable;
+import com.github.lessjava.types.ast.ASTVoidAssignment;
+import com.github.lessjava.types.ast.ASTVoidFunctionCall;
+import com.github.lessjava.types.ast.ASTVoidMethodCall;
+import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.impl.HMTypeCollection;
+import com.github.lessjava.types.inference.impl.HMTypeTuple;
+import com.github.lessjava.types.inference.impl.HMTypeVar;
+import com.github.lessjava.visitor.LJDefaultASTVisitor;
+import com.github.lessjava.visitor.impl.BuildParentLinks;
+
+/**
+ * Generic Java methods standing in for the instances of a function whose body
+ * only moves its arguments around: assigns, returns, compares or prints them,
+ * or puts them in and takes them out of collections. Such instances differ
+ * only in their declared types, so one erased method replaces them all, and
+ * only functions that do arithmetic or otherwise depend on the types of their
+ * arguments are emitted once per instance.
+ *
+ * A generic method is a copy of the body of one instance, typed with the most
+ * specific types that cover all instances: types every instance agrees on are
+ * kept, and types that differ become type parameters, except that collections
+ * of the same kind keep their kind. The program itself isn't changed, since the
+ * other backends still run every instance.
+ */
+public class GenericFunctions {
+    // Library functions taking any object
+    private static final Set<String> objectFunctions = new HashSet<>(Arrays.asList("print", "println"));
+
+    private final Map<ASTAbstractFunction, ASTFunction> generics = new HashMap<>();
+    private final Map<ASTAbstractFunction, List<HMTypeVar>> typeParameters = new HashMap<>();
+
+    /**
+     * Finds the functions whose instances can be emitted as one generic method.
+     * The instances must be indexed already.
+     */
+    public void index(ASTProgram program, FunctionInstances instances) {
+        generics.clear();
+        typeParameters.clear();
+
+        Map<String, List<ASTFunction>> groups = new LinkedHashMap<>();
+
+        for (ASTAbstractFunction f : program.functions) {
+            if (!(f instanceof ASTFunction) || !f.concrete || f.body == null || f.name.equals("main")
+                    || instances.get(f) != f) {
+                continue;
+            }
+
+            groups.computeIfAbsent(f.name, name -> new ArrayList<>()).add((ASTFunction) f);
+        }
+
+        for (List<ASTFunction> group : groups.values()) {
+            if (group.size() < 2) {
+                continue;
+            }
+
+            Generalization generalization = new Generalization(program, group);
+            ASTFunction generic = generalization.generalize();
+
+            if (generic == null) {
+                continue;
+            }
+
+            for (ASTFunction f : group) {
+                generics.put(f, generic);
+            }
+
+            typeParameters.put(generic, new ArrayList<>(generalization.variables.values()));
+        }
+    }
+
+    /**
+     * @return The generic method emitted instead of the given instance, or null
+     */
+    public ASTFunction get(ASTAbstractFunction function) {
+        return generics.get(function);
+    }
+
+    /**
+     * @return Whether the function is a generic method
+     */
+    public boolean isGeneric(ASTAbstractFunction function) {
+        return typeParameters.containsKey(function);
+    }
+
+    /**
+     * @return The type parameter declarations of a generic method, such as
+     *         {@code <T1, T2> }, or an empty string for any other function
+     */
+    public String getTypeParameters(ASTAbstractFunction function) {
+        List<HMTypeVar> variables = typeParameters.get(function);
+
+        if (variables == null) {
+            return "";
+        }
+
+        return variables.stream().map(v -> v.name).collect(Collectors.joining(", ", "<", "> "));
+    }
+
+    /**
+     * The generic method of one group of instances
+     */
+    private static class Generalization {
+        private final ASTProgram program;
+        private final List<ASTFunction> group;
+        private final String name;
+
+        // Types that differ between instances, by the type of each instance
+        private final Map<List<HMType>, HMTypeVar> variables = new LinkedHashMap<>();
+
+        Generalization(ASTProgram program, List<ASTFunction> group) {
+            this.program = program;
+            this.group = group;
+            this.name = group.get(0).name;
+        }
+
+        /**
+         * @return The generic method, or null if the instances can't share one
+         */
+        ASTFunction generalize() {
+            // Only parameters introduce type parameters, so that every type
+            // parameter can be inferred at the call site
+            List<Parameter> parameters = new ArrayList<>();
+
+            for (int i = 0; i < group.get(0).parameters.size(); i++) {
+                int index = i;
+                HMType type = generalize(types(f -> f.parameters.get(index).type), true);
+
+                parameters.add(new Parameter(group.get(0).parameters.get(i).name, type));
+            }
+
+            // The return type may only use the type parameters the parameters
+            // introduced, as they are the ones the method declares
+            HMType returnType = generalize(types(f -> f.returnType), false);
+
+            if (returnType == null || !isDeclared(returnType)) {
+                return null;
+            }
+
+            ASTFunction generic = new ASTFunction(name, returnType, group.get(0).body.clone());
+
+            generic.concrete = true;
+            generic.parameters = parameters;
+            generic.setParent(program);
+            generic.setDepth(2);
+            generic.traverse(new BuildParentLinks());
+
+            List<ASTNode> genericNodes = nodes(generic);
+            List<List<ASTNode>> instanceNodes = new ArrayList<>();
+
+            for (ASTFunction f : group) {
+                List<ASTNode> nodes = nodes(f);
+
+                if (nodes.size() != genericNodes.size()) {
+                    return null;
+                }
+
+                instanceNodes.add(nodes);
+            }
+
+            for (int i = 0; i < genericNodes.size(); i++) {
+                ASTNode node = genericNodes.get(i);
+
+                for (List<ASTNode> nodes : instanceNodes) {
+                    if (nodes.get(i).getClass() != node.getClass()) {
+                        return null;
+                    }
+                }
+
+                if (!(node instanceof ASTExpression)) {
+                    continue;
+                }
+
+                List<HMType> types = new ArrayList<>();
+
+                for (List<ASTNode> nodes : instanceNodes) {
+                    types.add(((ASTExpression) nodes.get(i)).type);
+                }
+
+                HMType type = generalize(types, false);
+
+                if (type == null) {
+                    return null;
+                }
+
+                ((ASTExpression) node).type = type;
+            }
+
+            // Checked once every node has its type, since whether a node may
+            // differ between instances depends on its parent's type
+            for (int i = 0; i < genericNodes.size(); i++) {
+                ASTNode node = genericNodes.get(i);
+
+                if (node instanceof ASTExpression && !sameInEveryInstance(instanceNodes, i) && !isMoved(node)) {
+                    return null;
+                }
+            }
+
+            return generic;
+        }
+
+        /**
+         * Whether every type variable in the type is a type parameter of the
+         * generic method
+         */
+        private boolean isDeclared(HMType type) {
+            type = type.prune();
+
+            if (type instanceof HMTypeVar) {
+                return variables.containsValue(type);
+            } else if (type instanceof HMTypeCollection) {
+                return isDeclared(((HMTypeCollection) type).elementType);
+            } else if (type instanceof HMTypeTuple) {
+                return ((HMTypeTuple) type).types.stream().allMatch(this::isDeclared);
+            }
+
+            return true;
+        }
+
+        private List<HMType> types(Function<ASTFunction, HMType> type) {
+            return group.stream().map(type).collect(Collectors.toList());
+        }
+
+        private boolean sameInEveryInstance(List<List<ASTNode>> instanceNodes, int i) {
+            HMType first = ((ASTExpression) instanceNodes.get(0).get(i)).type.prune();
+
+            return instanceNodes.stream().allMatch(nodes -> first.equals(((ASTExpression) nodes.get(i)).type));
+        }
+
+        /**
+         * The least general type covering the type of each instance
+         *
+         * @param create
+         *            Whether types that differ may become new type parameters
+         * @return The type, or null if it would need a new type parameter
+         */
+        private HMType generalize(List<HMType> types, boolean create) {
+            List<HMType> pruned = types.stream().map(HMType::prune).collect(Collectors.toList());
+            HMType first = pruned.get(0);
+
+            if (pruned.stream().allMatch(first::equals)) {
+                return first;
+            }
+
+            if (first instanceof HMTypeCollection && pruned.stream().allMatch(t -> t.getClass() == first.getClass()
+                    && !((HMTypeCollection) t).isPrimitiveBacked())) {
+                HMType elementType = generalize(pruned.stream().map(t -> ((HMTypeCollection) t).elementType)
+                        .collect(Collectors.toList()), create);
+
+                if (elementType != null) {
+                    HMTypeCollection collection = ((HMTypeCollection) first).clone();
+                    collection.elementType = elementType;
+
+                    return collection;
+                }
+            }
+
+            if (first instanceof HMTypeTuple && pruned.stream().allMatch(t -> t instanceof HMTypeTuple
+                    && ((HMTypeTuple) t).types.size() == ((HMTypeTuple) first).types.size())) {
+                List<HMType> elementTypes = new ArrayList<>();
+
+                for (int i = 0; i < ((HMTypeTuple) first).types.size(); i++) {
+                    int index = i;
+                    HMType elementType = generalize(pruned.stream().map(t -> ((HMTypeTuple) t).types.get(index))
+                            .collect(Collectors.toList()), create);
+
+                    if (elementType == null) {
+                        return null;
+                    }
+
+                    elementTypes.add(elementType);
+                }
+
+                return new HMTypeTuple(elementTypes);
+            }
+
+            if (!create) {
+                return variables.get(pruned);
+            }
+
+            return variables.computeIfAbsent(pruned, key -> new HMTypeVar("T" + (variables.size() + 1)));
+        }
+
+        /**
+         * Whether a node whose type differs between instances only moves its
+         * value, so that the generic method does the same for every instance
+         */
+        private boolean isMoved(ASTNode node) {
+            ASTNode parent = node.getParent();
+
+            if (node instanceof ASTVariable) {
+                if (((ASTVariable) node).index != null) {
+                    return false;
+                }
+            } else if (node instanceof ASTAssignment) {
+                if (((ASTAssignment) node).memberAccess != null) {
+                    return false;
+                }
+            } else if (node instanceof ASTMethodCall) {
+                if (!isCollection(((ASTMethodCall) node).invoker)) {
+                    return false;
+                }
+            } else if (node instanceof ASTFunctionCall) {
+                if (!(parent instanceof ASTMethodCall) && !((ASTFunctionCall) node).name.equals(name)) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+
+            if (parent instanceof ASTAssignment || parent instanceof ASTReturn || parent instanceof ASTVoidAssignment
+                    || parent instanceof ASTVoidFunctionCall || parent instanceof ASTVoidMethodCall) {
+                return true;
+            }
+
+            if (parent instanceof ASTMethodCall) {
+                ASTMethodCall call = (ASTMethodCall) parent;
+
+                return node == call.funcCall || isCollection(call.invoker);
+            }
+
+            if (parent instanceof ASTBinaryExpr) {
+                BinOp operator = ((ASTBinaryExpr) parent).operator;
+
+                return operator == BinOp.EQ || operator == BinOp.NE;
+            }
+
+            if (parent instanceof ASTFunctionCall) {
+                ASTFunctionCall call = (ASTFunctionCall) parent;
+
+                if (call.getParent() instanceof ASTMethodCall) {
+                    return isCollection(((ASTMethodCall) call.getParent()).invoker);
+                }
+
+                return call.name.equals(name) || objectFunctions.contains(call.name);
+            }
+
+            if (parent instanceof ASTForLoop) {
+                ASTForLoop loop = (ASTForLoop) parent;
+
+                return node == loop.var || (loop.lowerBound == null && isCollection(loop.upperBound));
+            }
+
+            return false;
+        }
+
+        private static boolean isCollection(ASTExpression expression) {
+            return expression.type instanceof HMTypeCollection
+                    && !((HMTypeCollection) expression.type).isPrimitiveBacked();
+        }
+
+        /**
+         * @return The nodes of the function's body in the order they are
+         *         traversed in, with the indices of variables
+         */
+        private static List<ASTNode> nodes(ASTFunction function) {
+            List<ASTNode> nodes = new ArrayList<>();
+
+            function.body.traverse(new LJDefaultASTVisitor() {
+                @Override
+                public void defaultPreVisit(ASTNode node) {
+                    nodes.add(node);
+                }
+
+                @Override
+                public void preVisit(ASTVariable node) {
+                    super.preVisit(node);
+
+                    if (node.index != null) {
+                        node.index.traverse(this);
+                    }
+                }
+            });
+
+            return nodes;
+        }
+    }
+}
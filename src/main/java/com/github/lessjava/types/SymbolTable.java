@@ -62,13 +62,34 @@ public class SymbolTable {
      *             Thrown if the symbol is not found
      */
     public List<Symbol> lookup(String name) throws InvalidProgramException {
-        if (localTable.containsKey(name)) {
-            return localTable.get(name);
-        } else if (parent != null) {
-            return parent.lookup(name);
+        List<Symbol> symbols = find(name);
+
+        if (symbols == null) {
+            throw new InvalidProgramException("Symbol not found: \"" + name + "\"");
+        }
+
+        return symbols;
+    }
+
+    /**
+     * Retrieves symbol information for a given symbol name, like lookup, but
+     * without throwing when the name isn't defined.
+     *
+     * @param name
+     *            Decaf symbol name
+     * @return Symbol information from either this table or a parent table, or
+     *         null if the symbol is not found
+     */
+    public List<Symbol> find(String name) {
+        for (SymbolTable table = this; table != null; table = table.parent) {
+            List<Symbol> symbols = table.localTable.get(name);
+
+            if (symbols != null) {
+                return symbols;
+            }
         }
 
-        throw new InvalidProgramException("Symbol not found: \"" + name + "\"");
+        return null;
     }
 
     /**
@@ -100,12 +121,8 @@ public class SymbolTable {
         List<Symbol> allSymbols = new ArrayList<Symbol>();
         if (parent != null) {
             for (Symbol s : parent.getAllSymbols()) {
-                try {
-                    if (lookup(s.name) == s) {
-                        allSymbols.add(s);
-                    }
-                } catch (InvalidProgramException ex) {
-                    // ignore
+                if (find(s.name) == s) {
+                    allSymbols.add(s);
                 }
             }
         }
@@ -6,9 +6,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import com.github.lessjava.types.inference.HMType;
-import com.github.lessjava.types.inference.HMType.BaseDataType;
 import com.github.lessjava.types.inference.impl.HMTypeBase;
 import com.github.lessjava.types.inference.impl.HMTypeList;
 import com.github.lessjava.types.inference.impl.HMTypeMap;
@@ -18,7 +19,6 @@ import com.github.lessjava.types.inference.impl.HMTypeVar;
 
 public abstract class ASTAbstractFunction extends ASTNode {
     public static Map<String, String> libraryFunctionStrings = new HashMap<>();
-    public static HashSet<ASTFunction> libraryFunctions = new HashSet<>();
     public static Map<String, ASTFunction> specialCases = new HashMap<>();
 
     static {
@@ -29,19 +29,33 @@ public abstract class ASTAbstractFunction extends ASTNode {
     }
 
     static {
+        // TODO: definitely better way to do this............................
+        ASTFunction format = new ASTFunction("format", HMTypeBase.STR, null);
+        specialCases.put(format.name, format);
+    }
+
+    /**
+     * Library functions are added to every program, and inference may change
+     * their types, so each compilation creates its own
+     *
+     * @return New instances of the library functions
+     */
+    public static Set<ASTFunction> createLibraryFunctions() {
+        Set<ASTFunction> libraryFunctions = new HashSet<>();
+
         // Input
-        libraryFunctions.add(new ASTFunction("readInt", new HMTypeBase(BaseDataType.INT), null));
-        libraryFunctions.add(new ASTFunction("readDouble", new HMTypeBase(BaseDataType.DOUBLE), null));
-        libraryFunctions.add(new ASTFunction("readChar", new HMTypeBase(BaseDataType.STR), null));
-        libraryFunctions.add(new ASTFunction("readWord", new HMTypeBase(BaseDataType.STR), null));
-        libraryFunctions.add(new ASTFunction("readLine", new HMTypeBase(BaseDataType.STR), null));
+        libraryFunctions.add(new ASTFunction("readInt", HMTypeBase.INT, null));
+        libraryFunctions.add(new ASTFunction("readDouble", HMTypeBase.REAL, null));
+        libraryFunctions.add(new ASTFunction("readChar", HMTypeBase.STR, null));
+        libraryFunctions.add(new ASTFunction("readWord", HMTypeBase.STR, null));
+        libraryFunctions.add(new ASTFunction("readLine", HMTypeBase.STR, null));
 
         // Output
-        ASTFunction print = new ASTFunction("print", new HMTypeBase(BaseDataType.VOID), null);
-        ASTFunction println = new ASTFunction("println", new HMTypeBase(BaseDataType.VOID), null);
+        ASTFunction print = new ASTFunction("print", HMTypeBase.VOID, null);
+        ASTFunction println = new ASTFunction("println", HMTypeBase.VOID, null);
 
-        print.parameters.add(new ASTFunction.Parameter("args", new HMTypeBase(BaseDataType.STR)));
-        println.parameters.add(new ASTFunction.Parameter("args", new HMTypeBase(BaseDataType.STR)));
+        print.parameters.add(new ASTFunction.Parameter("args", HMTypeBase.STR));
+        println.parameters.add(new ASTFunction.Parameter("args", HMTypeBase.STR));
 
         libraryFunctions.add(print);
         libraryFunctions.add(println);
@@ -63,10 +77,9 @@ public abstract class ASTAbstractFunction extends ASTNode {
         List<HMType> tuple = Arrays.asList(new HMType[] { new HMTypeVar(), new HMTypeVar() });
         libraryFunctions.add(new ASTFunction("Map", new HMTypeMap(new HMTypeTuple(tuple)), null));
 
-        // TODO: definitely better way to do this............................
-        ASTFunction format = new ASTFunction("format", new HMTypeBase(BaseDataType.STR), null);
-        libraryFunctions.add(format);
-        specialCases.put(format.name, format);
+        libraryFunctions.add(new ASTFunction("format", HMTypeBase.STR, null));
+
+        return libraryFunctions;
     }
 
     public static class Parameter {
@@ -113,13 +126,18 @@ public abstract class ASTAbstractFunction extends ASTNode {
             return true;
         }
 
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(name) + Objects.hashCode(type);
+        }
+
         public Parameter clone() {
             return new Parameter(this.name, this.type.clone());
         }
 
         @Override
         public String toString() {
-            return String.format("%s %s", (type != null) ? type.toString() : "unused", name);
+            return String.format("%s %s", (type != null) ? type.toDeclarationString() : "unused", name);
         }
     }
 
@@ -139,7 +157,7 @@ public abstract class ASTAbstractFunction extends ASTNode {
     }
 
     public ASTAbstractFunction(String name, ASTBlock body) {
-        this(name, new HMTypeVar(), body);
+        this(name, new HMTypeVar(true), body);
     }
 
     public ASTAbstractFunction(ASTAbstractFunction function) {
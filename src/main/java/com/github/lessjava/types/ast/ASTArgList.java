@@ -1,5 +1,6 @@
 package com.github.lessjava.types.ast;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.github.lessjava.types.inference.impl.HMTypeVar;
@@ -14,6 +15,20 @@ public class ASTArgList extends ASTExpression {
         this.isCollection = true;
     }
 
+    @Override
+    public ASTArgList clone() {
+        List<ASTExpression> copies = new ArrayList<>();
+
+        for (ASTExpression e : arguments) {
+            copies.add(e.clone());
+        }
+
+        ASTArgList copy = new ASTArgList(copies);
+        copy.isConcrete = isConcrete;
+
+        return copied(copy);
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -25,15 +40,17 @@ public class ASTArgList extends ASTExpression {
 
     @Override
     public String toString() {
-        StringBuilder argString = new StringBuilder();
+        return appendTo(new StringBuilder()).toString();
+    }
 
-        argString.append("{ ");
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        sb.append("{ ");
         for (ASTExpression e : arguments) {
-            argString.append(e.toString() + ",");
+            e.appendTo(sb).append(',');
         }
-        argString.append(" }");
 
-        return argString.toString();
+        return sb.append(" }");
     }
 
 }
@@ -22,6 +22,17 @@ public class ASTAssignment extends ASTBinaryExpr {
         this.value = value;
     }
 
+    @Override
+    public ASTAssignment clone() {
+        ASTAssignment copy = memberAccess != null ? new ASTAssignment(op, memberAccess.clone(), value.clone())
+                : new ASTAssignment(op, variable.clone(), value.clone());
+
+        copy.op = op;
+        copy.operator = operator;
+
+        return copied(copy);
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -32,10 +43,17 @@ public class ASTAssignment extends ASTBinaryExpr {
 
     @Override
     public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
         if (memberAccess != null) {
-            return String.format("%s = %s", memberAccess, value);
+            memberAccess.appendTo(sb);
         } else {
-            return String.format("%s = %s", variable, value);
+            variable.appendTo(sb);
         }
+
+        return value.appendTo(sb.append(" = "));
     }
 }
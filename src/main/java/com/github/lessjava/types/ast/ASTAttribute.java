@@ -13,7 +13,7 @@ public class ASTAttribute extends ASTNode {
     public String toString() {
         StringBuilder sb = new StringBuilder();
 
-        sb.append(String.format("%s %s %s;", scope, assignment.type, assignment));
+        sb.append(String.format("%s %s %s;", scope, assignment.type.toDeclarationString(), assignment));
 
         return sb.toString();
     }
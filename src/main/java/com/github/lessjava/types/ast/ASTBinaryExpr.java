@@ -1,5 +1,6 @@
 package com.github.lessjava.types.ast;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.inference.HMType.BaseDataType;
 import com.github.lessjava.types.inference.impl.HMTypeBase;
 
@@ -167,6 +168,11 @@ public class ASTBinaryExpr extends ASTExpression {
         this.rightChild = rightChild;
     }
 
+    @Override
+    public ASTBinaryExpr clone() {
+        return copied(new ASTBinaryExpr(operator, leftChild.clone(), rightChild.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -176,38 +182,127 @@ public class ASTBinaryExpr extends ASTExpression {
         visitor.postVisit(this);
     }
 
+    @Override
+    public boolean hasInferredType() {
+        // Assignments are of the variable's declared type, method calls of
+        // what the method returns
+        return getClass() == ASTBinaryExpr.class;
+    }
+
     @Override
     public String toString() {
-        StringBuilder s = new StringBuilder();
-        StringBuilder op = new StringBuilder(opToString(operator));
-        String right = rightChild.toString();
-        String left = leftChild.toString();
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        if ((operator.equals(BinOp.EQ) || operator.equals(BinOp.NE)) && CompilationContext.emitsPrimitives()) {
+            return appendUnboxedEqualityTo(sb);
+        }
+
+        String boxing = this.type instanceof HMTypeBase ? boxingMethod((HMTypeBase) this.type) : null;
+
+        // Keep DOUBLE results double even if both operands are ints
+        boolean toDouble = isUnboxed() && this.type.equals(HMTypeBase.REAL) && !leftChild.type.equals(HMTypeBase.REAL)
+                && !rightChild.type.equals(HMTypeBase.REAL);
+
+        if (boxing != null) {
+            sb.append(boxing).append('(');
+        }
+
+        if (toDouble) {
+            sb.append("((double) ");
+        }
+
+        sb.append('(');
 
         if (operator.equals(BinOp.EQ)) {
-            right = String.format(".equals(%s)", rightChild);
-            op = new StringBuilder("");
-        } else if(operator.equals(BinOp.NE)) {
-            left = String.format("!%s", leftChild);
-            right = String.format(".equals(%s)", rightChild);
-            op = new StringBuilder("");
+            leftChild.appendTo(sb).append(".equals(");
+            rightChild.appendTo(sb).append(')');
+        } else if (operator.equals(BinOp.NE)) {
+            leftChild.appendTo(sb.append('!')).append(".equals(");
+            rightChild.appendTo(sb).append(')');
+        } else {
+            leftChild.appendTo(sb).append(opToString(operator));
+            rightChild.appendTo(sb);
         }
 
-        s = new StringBuilder(String.format("(%s%s%s)", left, op, right));
+        sb.append(')');
 
-        HMTypeBase t = this.type instanceof HMTypeBase ? (HMTypeBase) this.type : null;
+        if (toDouble) {
+            sb.append(')');
+        }
 
-        return t == null ? s.toString() : wrapPrimitive(t, s.toString());
+        if (boxing != null) {
+            sb.append(')');
+        }
+
+        return sb;
+    }
+
+    /**
+     * Whether an equality is emitted as {@code ==} in primitive mode: both
+     * sides are numbers or booleans, at least one of them unboxed, and both are
+     * ints or booleans, or both doubles, in the generated source. An int and a
+     * double are never equal in the default mode, where both are boxed, so
+     * they are compared as boxed values instead.
+     */
+    public boolean isPrimitiveEquality() {
+        boolean leftIsPrimitive = leftChild.type instanceof HMTypeBase && ((HMTypeBase) leftChild.type).isPrimitive();
+        boolean rightIsPrimitive = rightChild.type instanceof HMTypeBase
+                && ((HMTypeBase) rightChild.type).isPrimitive();
+
+        if (!leftIsPrimitive || !rightIsPrimitive || !(leftChild.isUnboxed() || rightChild.isUnboxed())) {
+            return false;
+        }
+
+        // Only DOUBLE sides may have been made so by the other side
+        return !leftChild.type.equals(HMTypeBase.REAL) && !rightChild.type.equals(HMTypeBase.REAL)
+                || leftChild.hasInferredType() && rightChild.hasInferredType();
+    }
+
+    /**
+     * Equalities that are primitive (see {@link #isPrimitiveEquality()}) are
+     * emitted as {@code ==}, which never boxes. Anything else goes through
+     * {@link java.util.Objects#equals}, since a primitive receiver has no
+     * {@code equals} method and two boxed values must not be compared by
+     * reference.
+     */
+    private StringBuilder appendUnboxedEqualityTo(StringBuilder sb) {
+        if (isPrimitiveEquality()) {
+            leftChild.appendTo(sb.append('(')).append(opToString(operator));
+            return rightChild.appendTo(sb).append(')');
+        }
+
+        if (operator.equals(BinOp.NE)) {
+            sb.append("(!");
+        }
+
+        leftChild.appendBoxedTo(sb.append("Objects.equals(")).append(", ");
+        rightChild.appendBoxedTo(sb).append(')');
+
+        return operator.equals(BinOp.EQ) ? sb : sb.append(')');
     }
 
     public String wrapPrimitive(HMTypeBase t, String s) {
-        if (t.getBaseType() == BaseDataType.BOOL) {
-            return String.format("Boolean.valueOf(%s)", s);
+        String boxing = boxingMethod(t);
+
+        return boxing == null ? s : String.format("%s(%s)", boxing, s);
+    }
+
+    /**
+     * @return The method boxing a value of the given type, or null if values of
+     *         the type are emitted as they are
+     */
+    protected static String boxingMethod(HMTypeBase t) {
+        if (t.isPrimitive()) {
+            return null;
+        } else if (t.getBaseType() == BaseDataType.BOOL) {
+            return "Boolean.valueOf";
         } else if (t.getBaseType() == BaseDataType.INT) {
-            return String.format("Integer.valueOf(%s)", s);
+            return "Integer.valueOf";
         } else if (t.getBaseType() == BaseDataType.DOUBLE) {
-            return String.format("Double.valueOf(%s)", s);
-        } else if (t.getBaseType() == BaseDataType.STR) {
-            return String.format("%s", s);
+            return "Double.valueOf";
         } else {
             return null;
         }
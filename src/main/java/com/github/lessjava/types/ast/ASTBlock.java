@@ -17,6 +17,27 @@ public class ASTBlock extends ASTNode {
         this.statements = new ArrayList<ASTStatement>();
     }
 
+    /**
+     * Copies the block for an instance of the function it is in; see
+     * {@link ASTStatement#clone()}
+     *
+     * @return Copy of this block and everything in it
+     */
+    @Override
+    public ASTBlock clone() {
+        ASTBlock copy = new ASTBlock();
+
+        for (ASTVariable v : variables) {
+            copy.variables.add(v.clone());
+        }
+
+        for (ASTStatement s : statements) {
+            copy.statements.add(s.clone());
+        }
+
+        return copied(copy);
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
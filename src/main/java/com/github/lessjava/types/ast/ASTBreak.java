@@ -8,6 +8,11 @@ public class ASTBreak extends ASTStatement {
     public ASTBreak() {
     }
 
+    @Override
+    public ASTBreak clone() {
+        return copied(new ASTBreak());
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -1,5 +1,6 @@
 package com.github.lessjava.types.ast;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -12,8 +13,6 @@ import com.github.lessjava.types.inference.impl.HMTypeBase;
 import com.github.lessjava.types.inference.impl.HMTypeVar;
 
 public class ASTClass extends ASTNode {
-    public static Map<String, ASTClass> nameClassMap = new HashMap<>();
-    public static Set<ASTClass> libraryClasses = new HashSet<>();
     public static Map<String, String> methodTranslations = new HashMap<>();
 
     public static String PUBLIC = "public";
@@ -28,11 +27,11 @@ public class ASTClass extends ASTNode {
                 add("push", HMTypeBase.VOID);
                 add("enqueue", HMTypeBase.VOID);
                 add("remove", HMTypeBase.BOOL);
-                add("pop", new HMTypeVar());
-                add("dequeue", new HMTypeVar());
+                add("pop", new HMTypeVar(true));
+                add("dequeue", new HMTypeVar(true));
                 add("insert", HMTypeBase.VOID);
-                add("removeAt", new HMTypeVar());
-                add("get", new HMTypeVar());
+                add("removeAt", new HMTypeVar(true));
+                add("get", new HMTypeVar(true));
                 add("set", HMTypeBase.VOID);
                 add("size", HMTypeBase.INT);
             }
@@ -70,7 +69,7 @@ public class ASTClass extends ASTNode {
 
             {
                 add("put", HMTypeBase.VOID);
-                add("get", new HMTypeVar());
+                add("get", new HMTypeVar(true));
                 add("contains", HMTypeBase.BOOL);
                 add("size", HMTypeBase.INT);
             }
@@ -84,6 +83,24 @@ public class ASTClass extends ASTNode {
     }
 
     static {
+        // Unboxed accessors of the primitive-backed collections, keyed by runtime
+        // class name and method name
+        methodTranslations.put("LJIntListget", "getInt");
+        methodTranslations.put("LJIntListset", "setInt");
+        methodTranslations.put("LJDoubleListget", "getDouble");
+        methodTranslations.put("LJDoubleListset", "setDouble");
+        methodTranslations.put("LJIntMapput", "putInt");
+    }
+
+    /**
+     * Library classes are added to every program, and functions may be
+     * instantiated as their methods, so each compilation creates its own
+     *
+     * @return New instances of the library classes
+     */
+    public static Set<ASTClass> createLibraryClasses() {
+        Set<ASTClass> libraryClasses = new HashSet<>();
+
         ASTClassBlock listBlock = new ASTClassBlock(null, createListMethods());
         ASTClassBlock setBlock = new ASTClassBlock(null, createSetMethods());
         ASTClassBlock mapBlock = new ASTClassBlock(null, createMapMethods());
@@ -95,23 +112,26 @@ public class ASTClass extends ASTNode {
         libraryClasses.add(list);
         libraryClasses.add(set);
         libraryClasses.add(map);
+
+        return libraryClasses;
     }
 
     public ASTClassSignature signature;
     public ASTClassBlock block;
     public ASTClass parent;
 
-    private Set<ASTVariable> members;
-    private Set<ASTMethod> methods;
+    // Methods and attributes by name, including the inherited ones, each built
+    // on the first lookup and again once the table of the superclass it was
+    // built from is rebuilt
+    private Map<String, ASTMethod> methodTable;
+    private Map<String, ASTMethod> superMethodTable;
+    private Map<String, ASTVariable> attributeTable;
+    private Map<String, ASTVariable> superAttributeTable;
 
     public ASTClass(ASTClassSignature signature, ASTClassBlock block) {
         this.signature = signature;
         this.block = block;
         this.parent = null;
-
-        if (!libraryClasses.contains(this)) {
-            nameClassMap.put(signature.className, this);
-        }
     }
 
     public boolean hasExplicitConstructor() {
@@ -122,24 +142,20 @@ public class ASTClass extends ASTNode {
         return methodNames.contains(signature.className);
     }
 
+    /**
+     * Adds a method, such as an instance of a generic method, to the class
+     */
+    public void addMethod(ASTMethod method) {
+        block.methods.add(method);
+        methodTable = null;
+    }
+
     public boolean hasMethod(String name) {
         return getMethod(name) != null;
     }
 
     public ASTMethod getMethod(String name) {
-        if (methods == null) {
-            methods = this.block.methods;
-        }
-        ASTMethod method = methods.stream()
-                                  .filter(m -> m.name.equals(name))
-                                  .findAny()
-                                  .orElse(null);
-
-        if (method == null && this.parent != null) {
-            method = this.parent.getMethod(name);
-        }
-
-        return method;
+        return getMethodTable().get(name);
     }
 
     public boolean hasAttribute(String name) {
@@ -147,17 +163,45 @@ public class ASTClass extends ASTNode {
     }
 
     public ASTVariable getAttribute(String name) {
-        if (members == null) {
-            members = this.block.classAttributes.stream().map(a -> a.assignment.variable).collect(Collectors.toSet());
+        return getAttributeTable().get(name);
+    }
+
+    private Map<String, ASTMethod> getMethodTable() {
+        Map<String, ASTMethod> inherited = parent != null ? parent.getMethodTable() : Collections.emptyMap();
+
+        if (methodTable == null || superMethodTable != inherited) {
+            Map<String, ASTMethod> table = new HashMap<>();
+
+            for (ASTMethod m : block.methods) {
+                table.putIfAbsent(m.name, m);
+            }
+
+            inherited.forEach(table::putIfAbsent);
+
+            methodTable = table;
+            superMethodTable = inherited;
         }
 
-        ASTVariable attribute = members.stream().filter(v -> v.name.equals(name)).findAny().orElse(null);
+        return methodTable;
+    }
+
+    private Map<String, ASTVariable> getAttributeTable() {
+        Map<String, ASTVariable> inherited = parent != null ? parent.getAttributeTable() : Collections.emptyMap();
+
+        if (attributeTable == null || superAttributeTable != inherited) {
+            Map<String, ASTVariable> table = new HashMap<>();
+
+            for (ASTAttribute a : block.classAttributes) {
+                table.putIfAbsent(a.assignment.variable.name, a.assignment.variable);
+            }
+
+            inherited.forEach(table::putIfAbsent);
 
-        if (attribute == null && this.parent != null) {
-            attribute = this.parent.getAttribute(name);
+            attributeTable = table;
+            superAttributeTable = inherited;
         }
 
-        return attribute;
+        return attributeTable;
     }
 
     @Override
@@ -1,13 +1,10 @@
 package com.github.lessjava.types.ast;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class ASTClassBlock extends ASTNode {
-    public static Map<String, ASTAttribute> nameAttributeMap = new HashMap<>();
-
+    // Kept in source order so classes are generated the same way every run
     public Set<ASTAttribute> classAttributes;
     public Set<ASTMethod> methods;
     public ASTMethod constructor;
@@ -21,18 +18,13 @@ public class ASTClassBlock extends ASTNode {
     }
 
     public ASTClassBlock(Set<ASTAttribute> attributes, Set<ASTMethod> methods, ASTMethod constructor) {
-        this.classAttributes = attributes != null ? attributes : new HashSet<>();
-        this.methods = methods != null ? methods : new HashSet<>();
+        this.classAttributes = attributes != null ? attributes : new LinkedHashSet<>();
+        this.methods = methods != null ? methods : new LinkedHashSet<>();
         this.constructor = constructor;
-
-        for (ASTAttribute a: classAttributes) {
-            nameAttributeMap.put(a.assignment.variable.name, a);
-        }
     }
 
     public void addAttribute(ASTAttribute attribute) {
         this.classAttributes.add(attribute);
-        nameAttributeMap.put(attribute.assignment.variable.name, attribute);
     }
 
     @Override
@@ -29,6 +29,11 @@ public class ASTConditional extends ASTStatement {
         return (elseBlock != null);
     }
 
+    @Override
+    public ASTConditional clone() {
+        return copied(new ASTConditional(condition.clone(), ifBlock.clone(), hasElseBlock() ? elseBlock.clone() : null));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
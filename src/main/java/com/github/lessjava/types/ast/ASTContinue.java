@@ -8,6 +8,11 @@ public class ASTContinue extends ASTStatement {
     public ASTContinue() {
     }
 
+    @Override
+    public ASTContinue clone() {
+        return copied(new ASTContinue());
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
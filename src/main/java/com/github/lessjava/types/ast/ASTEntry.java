@@ -15,7 +15,17 @@ public class ASTEntry extends ASTExpression {
 
     @Override
     public String toString() {
-        return String.format("%s : %s", this.key, this.value);
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        return value.appendTo(key.appendTo(sb).append(" : "));
+    }
+
+    @Override
+    public ASTEntry clone() {
+        return copied(new ASTEntry(key.clone(), value.clone()));
     }
 
     @Override
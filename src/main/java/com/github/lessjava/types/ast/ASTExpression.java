@@ -1,6 +1,7 @@
 package com.github.lessjava.types.ast;
 
 import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.impl.HMTypeBase;
 import com.github.lessjava.types.inference.impl.HMTypeVar;
 
 /**
@@ -20,4 +21,64 @@ import com.github.lessjava.types.inference.impl.HMTypeVar;
 public abstract class ASTExpression extends ASTNode {
     public HMType type = new HMTypeVar();
     public boolean isCollection;
+
+    /**
+     * Whether the generated Java for this expression evaluates to a primitive
+     * instead of a boxed value (see {@link HMTypeBase#isPrimitive()})
+     *
+     * @return True if the expression is unboxed
+     */
+    public boolean isUnboxed() {
+        return type instanceof HMTypeBase && ((HMTypeBase) type).isPrimitive();
+    }
+
+    /**
+     * Whether the generated Java for this expression is of the type inferred
+     * for it. Inference gives both sides of an equality the same type, making
+     * an INT side DOUBLE, but only expressions converting their value to their
+     * type follow suit; calls, for one, stay of the type they return.
+     *
+     * @return True if the expression is known to be of its type
+     */
+    public boolean hasInferredType() {
+        return false;
+    }
+
+    /**
+     * Appends the generated Java for this expression where it is boxed to an
+     * Object, so that it boxes to a value of the class it has in the default
+     * mode
+     *
+     * @return The buffer
+     */
+    public StringBuilder appendBoxedTo(StringBuilder sb) {
+        return appendTo(sb);
+    }
+
+    /**
+     * Copies the expression for an instance of the function it is in, with a
+     * fresh type, as the expression had before type inference
+     *
+     * @return Copy of this expression and its subexpressions
+     */
+    @Override
+    public abstract ASTExpression clone();
+
+    /**
+     * Appends the generated Java for this expression. Subexpressions append
+     * themselves to the same buffer, so each is written once, however deeply
+     * it is nested.
+     *
+     * @return The buffer
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append(toString());
+    }
+
+    @Override
+    protected <T extends ASTNode> T copied(T copy) {
+        ((ASTExpression) copy).isCollection = isCollection;
+
+        return super.copied(copy);
+    }
 }
@@ -18,6 +18,12 @@ public class ASTForLoop extends ASTStatement {
         this(var, null, upperBound, block);
     }
 
+    @Override
+    public ASTForLoop clone() {
+        return copied(new ASTForLoop(var.clone(), lowerBound == null ? null : lowerBound.clone(), upperBound.clone(),
+                block.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
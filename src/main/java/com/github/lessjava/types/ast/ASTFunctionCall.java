@@ -3,10 +3,15 @@ package com.github.lessjava.types.ast;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.github.lessjava.types.inference.impl.HMTypeCollection;
+
 public class ASTFunctionCall extends ASTExpression {
     public String name;
     public List<ASTExpression> arguments;
 
+    // Whether this calls a class constructor; set during type inference
+    public boolean isConstructor;
+
     public ASTFunctionCall(String name) {
         this.name = name;
         this.arguments = new ArrayList<ASTExpression>();
@@ -32,6 +37,19 @@ public class ASTFunctionCall extends ASTExpression {
         return sb.toString();
     }
 
+    @Override
+    public ASTFunctionCall clone() {
+        ASTFunctionCall copy = new ASTFunctionCall(name);
+
+        for (ASTExpression e : arguments) {
+            copy.arguments.add(e.clone());
+        }
+
+        copy.isConstructor = isConstructor;
+
+        return copied(copy);
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -43,30 +61,44 @@ public class ASTFunctionCall extends ASTExpression {
 
     @Override
     public String toString() {
-        StringBuilder argString = new StringBuilder();
-        argString.append("(");
-        for (ASTExpression e : arguments) {
-            String exprString = e.toString();
-            if (argString.length() > 1) {
-                argString.append(", ");
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        // Primitive-backed collections are not generic over their elements
+        if (ASTFunction.libraryFunctionStrings.containsKey(name) && type instanceof HMTypeCollection
+                && ((HMTypeCollection) type).isPrimitiveBacked()) {
+            sb.append("new ").append(type);
+        } else if (ASTFunction.libraryFunctionStrings.containsKey(name)) {
+            sb.append(ASTFunction.libraryFunctionStrings.get(name));
+        } else {
+            if (isConstructor) {
+                sb.append("new ");
             }
-            argString.append(exprString);
-        }
-        argString.append(")");
 
-        if (ASTFunction.libraryFunctionStrings.containsKey(name)) {
-            return String.format("%s%s", ASTFunction.libraryFunctionStrings.get(name), argString);
+            sb.append(name);
         }
 
-        StringBuilder sb = new StringBuilder();
+        return appendArgumentsTo(sb);
+    }
 
-        // Must be a constructor
-        if (ASTClass.nameClassMap.containsKey(name)) {
-            sb.append("new ");
-        }
+    /**
+     * Appends the parenthesized, comma-separated arguments
+     *
+     * @return The buffer
+     */
+    public StringBuilder appendArgumentsTo(StringBuilder sb) {
+        sb.append('(');
+
+        for (int i = 0; i < arguments.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
 
-        sb.append(String.format("%s%s", name, argString));
+            arguments.get(i).appendTo(sb);
+        }
 
-        return sb.toString();
+        return sb.append(')');
     }
 }
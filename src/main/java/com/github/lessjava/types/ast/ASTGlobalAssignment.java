@@ -7,6 +7,11 @@ public class ASTGlobalAssignment extends ASTStatement {
         this.assignment = assignment;
     }
 
+    @Override
+    public ASTGlobalAssignment clone() {
+        return copied(new ASTGlobalAssignment(assignment.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -9,14 +9,26 @@ public class ASTList extends ASTCollection {
 
     @Override
     public String toString() {
-        StringBuilder initialization = new StringBuilder();
-        String argString = initialElements.toString();
+        return appendTo(new StringBuilder()).toString();
+    }
 
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
         HMTypeList t = (HMTypeList) type;
 
-        initialization.append(String.format("new LJList<%s>(Arrays.asList(new %s[] %s))", t.elementType, t.elementType, argString));
+        if (t.isPrimitiveBacked()) {
+            sb.append("new ").append(t).append("(new ").append(t.elementType.toDeclarationString()).append("[] ");
+            return initialElements.appendTo(sb).append(')');
+        }
 
-        return initialization.toString();
+        sb.append("new LJList<").append(t.elementType).append(">(Arrays.asList(new ").append(t.elementType)
+                .append("[] ");
+        return initialElements.appendTo(sb).append("))");
+    }
+
+    @Override
+    public ASTList clone() {
+        return copied(new ASTList(initialElements.clone()));
     }
 
     @Override
@@ -58,9 +58,53 @@ public class ASTLiteral extends ASTExpression {
     public Object value;
     public HMType hmType;
 
+    // Type of the literal as written; inference may promote an INT to DOUBLE
+    private final BaseDataType dataType;
+
     public ASTLiteral(BaseDataType type, Object value) {
-        super.type = new HMTypeBase(type);
+        super.type = HMTypeBase.valueOf(type);
         this.value = value;
+        this.dataType = type;
+    }
+
+    @Override
+    public ASTLiteral clone() {
+        return copied(new ASTLiteral(dataType, value));
+    }
+
+    /**
+     * Whether this is an INT literal inferred to be a DOUBLE. The default mode
+     * emits it as an Integer all the same, so it never equals a Double, and
+     * primitive mode compares it as the default mode does.
+     */
+    public boolean isPromoted() {
+        return value instanceof Integer && type.equals(HMTypeBase.REAL);
+    }
+
+    @Override
+    public boolean hasInferredType() {
+        return !isPromoted();
+    }
+
+    /**
+     * Only numbers and booleans are emitted unboxed. A string literal inferred
+     * to be of another type is still a String.
+     */
+    @Override
+    public boolean isUnboxed() {
+        return (value instanceof Integer || value instanceof Double || value instanceof Boolean) && super.isUnboxed();
+    }
+
+    @Override
+    public StringBuilder appendBoxedTo(StringBuilder sb) {
+        if (isUnboxed() && isPromoted()) {
+            // Boxed to an Integer, as in the default mode
+            String s = value.toString();
+
+            return sb.append(s.startsWith("-") ? "(" + s + ")" : s);
+        }
+
+        return appendTo(sb);
     }
 
     @Override
@@ -71,6 +115,19 @@ public class ASTLiteral extends ASTExpression {
 
     @Override
     public String toString() {
+        if (isUnboxed()) {
+            String s = this.value.toString();
+
+            // Integer literals promoted to DOUBLE must not be emitted as int
+            if (isPromoted()) {
+                s = String.format("%s.0", this.value);
+            }
+
+            // Folded literals may be negative, and must not run into a minus
+            // before them
+            return s.startsWith("-") ? "(" + s + ")" : s;
+        }
+
         String s = String.format("%%s.valueOf(%s)", this.value.toString());
 
         if (this.value instanceof String) {
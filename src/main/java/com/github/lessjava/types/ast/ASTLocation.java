@@ -12,6 +12,11 @@ public class ASTLocation extends ASTExpression {
         this.name = name;
     }
 
+    @Override
+    public ASTLocation clone() {
+        return copied(new ASTLocation(name));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
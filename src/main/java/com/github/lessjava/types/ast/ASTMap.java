@@ -10,23 +10,38 @@ public class ASTMap extends ASTCollection {
 
     @Override
     public String toString() {
-        StringBuilder initialization = new StringBuilder();
-        StringBuilder entries = new StringBuilder();
+        return appendTo(new StringBuilder()).toString();
+    }
 
-        HMTypeTuple t = (HMTypeTuple)((HMTypeMap) type).elementType;
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        HMTypeMap m = (HMTypeMap) type;
+        HMTypeTuple t = (HMTypeTuple) m.elementType;
 
         String keyType = t.types.get(0).toString();
         String valueType = t.types.get(1).toString();
 
+        String put = m.isPrimitiveBacked() ? "putInt" : "put";
+
+        if (m.isPrimitiveBacked()) {
+            sb.append("new ").append(m).append("(new ").append(m).append("() {{");
+        } else {
+            sb.append("new LJMap<").append(keyType).append(", ").append(valueType).append(">(new HashMap<")
+                    .append(keyType).append(", ").append(valueType).append(">() {{");
+        }
+
         for (ASTExpression e : initialElements.arguments) {
             ASTEntry entry = (ASTEntry) e;
-            entries.append(String.format("put(%s, %s);", entry.key, entry.value));
+            entry.key.appendTo(sb.append(put).append('(')).append(", ");
+            entry.value.appendTo(sb).append(");");
         }
 
-        initialization.append(String.format("new LJMap<%s, %s>(new HashMap<%s, %s>() {{%s}})", keyType, valueType, keyType,
-                valueType, entries));
+        return sb.append("}})");
+    }
 
-        return initialization.toString();
+    @Override
+    public ASTMap clone() {
+        return copied(new ASTMap(initialElements.clone()));
     }
 
     @Override
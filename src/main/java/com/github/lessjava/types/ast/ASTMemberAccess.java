@@ -13,11 +13,17 @@ public class ASTMemberAccess extends ASTExpression {
 
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
+        return appendTo(new StringBuilder()).toString();
+    }
 
-        sb.append(String.format("%s.%s", className, var));
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        return var.appendTo(sb.append(className).append('.'));
+    }
 
-        return sb.toString();
+    @Override
+    public ASTMemberAccess clone() {
+        return copied(new ASTMemberAccess(className, referencedClassName, var.clone()));
     }
 
     @Override
@@ -1,10 +1,23 @@
 package com.github.lessjava.types.ast;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.inference.impl.HMTypeBase;
 import com.github.lessjava.types.inference.impl.HMTypeClass;
 import com.github.lessjava.types.inference.impl.HMTypeCollection;
+import com.github.lessjava.types.inference.impl.HMTypeList;
 
 public class ASTMethodCall extends ASTBinaryExpr {
+    /**
+     * Collection methods that hand back an element, boxed unless the collection
+     * is primitive-backed
+     */
+    private static final Set<String> elementMethods = new HashSet<>(
+            Arrays.asList("get", "pop", "dequeue", "removeAt"));
+
     public ASTExpression invoker;
     public ASTFunctionCall funcCall;
 
@@ -40,35 +53,84 @@ public class ASTMethodCall extends ASTBinaryExpr {
     }
 
     @Override
-    public String toString() {
-        String translation;
-        StringBuilder argString;
+    public boolean isUnboxed() {
+        if (invoker.type instanceof HMTypeCollection && elementMethods.contains(funcCall.name)) {
+            HMTypeCollection c = (HMTypeCollection) invoker.type;
 
-        String collectionName = null;
+            // LJIntList and LJDoubleList hand back primitives
+            return c instanceof HMTypeList && c.isPrimitiveBacked();
+        }
+
+        return super.isUnboxed();
+    }
 
+    private String getTranslation() {
         if (invoker.type instanceof HMTypeCollection) {
-            collectionName = ((HMTypeCollection) invoker.type).collectionName;
-
-            translation = ASTClass.methodTranslations.get(String.format("%s%s", collectionName, funcCall.name));
-
-            if (translation != null) {
-                argString = new StringBuilder();
-                argString.append("(");
-                for (ASTExpression e : funcCall.arguments) {
-                    String exprString = e.toString();
-                    if (argString.length() > 1) {
-                        argString.append(", ");
-                    }
-                    argString.append(exprString);
+            HMTypeCollection c = (HMTypeCollection) invoker.type;
+
+            return ASTClass.methodTranslations.get(String.format("%s%s", c.getRuntimeClassName(), funcCall.name));
+        }
+
+        return null;
+    }
+
+    /**
+     * Renders the call without boxing its result, as used for call statements
+     */
+    public String toCallString() {
+        return appendCallTo(new StringBuilder()).toString();
+    }
+
+    /**
+     * Appends the call without boxing its result
+     *
+     * @return The buffer
+     */
+    public StringBuilder appendCallTo(StringBuilder sb) {
+        String translation = getTranslation();
+
+        invoker.appendTo(sb).append('.');
+
+        if (translation != null) {
+            return funcCall.appendArgumentsTo(sb.append(translation));
+        }
+
+        // List.remove(int) would treat an unboxed element as an index
+        if (invoker.type instanceof HMTypeList && funcCall.name.equals("remove") && CompilationContext.emitsPrimitives()) {
+            sb.append(funcCall.name).append('(');
+            for (int i = 0; i < funcCall.arguments.size(); i++) {
+                ASTExpression e = funcCall.arguments.get(i);
+                if (i > 0) {
+                    sb.append(", ");
                 }
-                argString.append(")");
-                return String.format("%s.%s%s", invoker, translation, argString);
+                e.appendTo(e.isUnboxed() ? sb.append("(Object) ") : sb);
             }
+            return sb.append(')');
         }
 
-        String s = String.format("%s.%s", invoker, funcCall);
+        return funcCall.appendTo(sb);
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
 
-        return type instanceof HMTypeBase ? wrapPrimitive((HMTypeBase)type, s) : s;
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        String boxing = getTranslation() == null && type instanceof HMTypeBase ? boxingMethod((HMTypeBase) type)
+                : null;
+
+        if (boxing == null) {
+            return appendCallTo(sb);
+        }
+
+        return appendCallTo(sb.append(boxing).append('(')).append(')');
+    }
+
+    @Override
+    public ASTMethodCall clone() {
+        return copied(new ASTMethodCall(invoker.clone(), funcCall.clone()));
     }
 
     @Override
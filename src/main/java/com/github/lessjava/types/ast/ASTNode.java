@@ -8,61 +8,22 @@ import com.github.lessjava.types.SymbolTable;
 /**
  * Abstract base class for abstract syntax tree (AST) nodes. Provides some basic
  * definitions used across many nodes, such as {@link DataType} definitions and
- * {@link attributes} management. AST nodes are designed to be semi-mutable by
- * means of the {@link attributes} map that is stored in every node. Several of
- * the more important attributes (e.g., parent links and tree depth) are widely
- * used and thus have special handlers implemented in this class. However, this
- * class is not intended to be instantiated directly, and thus is declared
- * {@code abstract}.
- *
- * List of potential attributes (not exhaustive):
- *
- * <table border="1">
- * <tr>
- * <th>Key</th>
- * <th>Description</th>
- * </tr>
- * <tr>
- * <td>{@code parent}</td>
- * <td>Uptree parent {@link ASTNode} reference</td>
- * </tr>
- * <tr>
- * <td>{@code depth}</td>
- * <td>Tree depth ({@code int})</td>
- * </tr>
- * <tr>
- * <td>{@code source}</td>
- * <td>{@link SourceInfo} reference</td>
- * </tr>
- * <tr>
- * <td>{@code symbolTable}</td>
- * <td>{@link SymbolTable} reference (only in {@link ASTProgram},
- * {@link ASTFunction}, and {@link ASTBlock})</td>
- * </tr>
- * <tr>
- * <td>{@code type}</td>
- * <td>{@link ASTNode.DataType} of node (only in {@link ASTExpression}
- * subclasses)</td>
- * </tr>
- * <tr>
- * <td>{@code staticSize}</td>
- * <td>Size (in bytes) of global variables (only in {@link ASTProgram})</td>
- * </tr>
- * <tr>
- * <td>{@code localSize}</td>
- * <td>Size (in bytes) of local variables (only in {@link ASTFunction})</td>
- * </tr>
- * <caption>Potential attributes</caption>
- * </table>
+ * attribute management. The attributes every pass relies on (the parent link,
+ * tree depth, parent scope and {@link SymbolTable}) are fields of the node;
+ * any other attribute is kept in a map that is only allocated when the first
+ * one is set. However, this class is not intended to be instantiated directly,
+ * and thus is declared {@code abstract}.
  */
 public abstract class ASTNode {
-    public Map<String, Object> attributes;
-
+    private ASTNode parent;
+    private int depth = -1;
     private ASTNode parentScope;
 
-    public ASTNode() {
-        attributes = new HashMap<String, Object>();
-    }
+    // Only in ASTProgram, ASTClass, ASTFunction, ASTBlock and ASTForLoop
+    private SymbolTable symbolTable;
+
+    // Other attributes, by name; null until one is set
+    private Map<String, Object> attributes;
 
     /**
      * Returns a string with the AST class type (mainly used for debugging)
@@ -79,21 +40,17 @@ public abstract class ASTNode {
      * @param parent
      */
     public void setParent(ASTNode parent) {
-        attributes.put("parent", parent);
+        this.parent = parent;
     }
 
     /**
      * Retrieve the uptree parent pointer
      * 
-     * @return Parent {@link ASTNode} reference or {@code null} if the corresponding
-     *         attribute is not present
+     * @return Parent {@link ASTNode} reference or {@code null} if it hasn't
+     *         been set
      */
     public ASTNode getParent() {
-        ASTNode parent = null;
-        if (attributes.containsKey("parent")) {
-            parent = (ASTNode) attributes.get("parent");
-        }
-        return parent;
+        return this.parent;
     }
 
     public void setParentScope(ASTNode parentScope) {
@@ -110,21 +67,54 @@ public abstract class ASTNode {
      * @param depth
      */
     public void setDepth(int depth) {
-        attributes.put("depth", Integer.valueOf(depth));
+        this.depth = depth;
     }
 
     /**
      * Retrieve the tree depth marker
      * 
-     * @return Depth (as an integer) or -1 if the corresponding attribute is not
-     *         present.
+     * @return Depth or -1 if it hasn't been set
      */
     public int getDepth() {
-        int depth = -1;
-        if (attributes.containsKey("depth")) {
-            depth = ((Integer) attributes.get("depth")).intValue();
+        return this.depth;
+    }
+
+    public void setSymbolTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * @return The symbol table of the scope this node opens, or {@code null}
+     *         if it doesn't open one
+     */
+    public SymbolTable getSymbolTable() {
+        return this.symbolTable;
+    }
+
+    public void setNodeAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new HashMap<String, Object>(4);
         }
-        return depth;
+
+        attributes.put(name, value);
+    }
+
+    /**
+     * @return The value of the attribute or {@code null} if it hasn't been set
+     */
+    public Object getNodeAttribute(String name) {
+        return attributes == null ? null : attributes.get(name);
+    }
+
+    /**
+     * Gives a copy of this node the same depth
+     *
+     * @return The copy
+     */
+    protected <T extends ASTNode> T copied(T copy) {
+        copy.setDepth(depth);
+
+        return copy;
     }
 
     public void traverse(ASTVisitor visitor) {
@@ -22,6 +22,11 @@ public class ASTReturn extends ASTStatement {
         return (value != null);
     }
 
+    @Override
+    public ASTReturn clone() {
+        return copied(new ASTReturn(hasValue() ? value.clone() : null));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -1,5 +1,7 @@
 package com.github.lessjava.types.ast;
 
+import com.github.lessjava.types.inference.impl.HMTypeCollection;
+
 public class ASTSet extends ASTCollection {
     public ASTSet(ASTArgList initialElements) {
         super(initialElements);
@@ -7,13 +9,25 @@ public class ASTSet extends ASTCollection {
 
     @Override
     public String toString() {
-        StringBuilder initialization = new StringBuilder();
-        String argString = initialElements.toString();
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        if (type instanceof HMTypeCollection && ((HMTypeCollection) type).isPrimitiveBacked()) {
+            sb.append("new ").append(type).append("(new ").append(initialElements.type.toDeclarationString())
+                    .append("[] ");
+            return initialElements.appendTo(sb).append(')');
+        }
 
-        initialization.append(String.format("new LJSet<%s>(new HashSet<%s>(Arrays.asList(new %s[] %s)))",
-                initialElements.type, initialElements.type, initialElements.type, argString));
+        sb.append("new LJSet<").append(initialElements.type).append(">(new HashSet<").append(initialElements.type)
+                .append(">(Arrays.asList(new ").append(initialElements.type).append("[] ");
+        return initialElements.appendTo(sb).append(")))");
+    }
 
-        return initialization.toString();
+    @Override
+    public ASTSet clone() {
+        return copied(new ASTSet(initialElements.clone()));
     }
 
     @Override
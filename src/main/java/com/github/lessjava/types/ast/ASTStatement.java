@@ -17,4 +17,12 @@ package com.github.lessjava.types.ast;
  *
  */
 public abstract class ASTStatement extends ASTNode {
+    /**
+     * Copies the statement for an instance of the function it is in. Every
+     * expression in the copy has a fresh type, and parent links aren't set.
+     *
+     * @return Copy of this statement and everything in it
+     */
+    @Override
+    public abstract ASTStatement clone();
 }
@@ -12,6 +12,11 @@ public class ASTTest extends ASTStatement {
         this.expr = expr;
     }
 
+    @Override
+    public ASTTest clone() {
+        return copied(new ASTTest(expr.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -40,6 +40,11 @@ public class ASTUnaryExpr extends ASTExpression {
         this.child = child;
     }
 
+    @Override
+    public ASTUnaryExpr clone() {
+        return copied(new ASTUnaryExpr(operator, child.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
@@ -47,21 +52,39 @@ public class ASTUnaryExpr extends ASTExpression {
         visitor.postVisit(this);
     }
 
+    @Override
+    public boolean hasInferredType() {
+        return true;
+    }
+
     @Override
     public String toString() {
-        String s = String.format("(%s%s)", opToString(operator), child.toString());
+        return appendTo(new StringBuilder()).toString();
+    }
 
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        // Opening of the conversion the expression is wrapped in, if any
         String t;
-        if (this.type.equals(HMTypeBase.BOOL)) {
-            t = "Boolean.valueOf(%s)";
+        if (isUnboxed()) {
+            // Keep DOUBLE results double even if the operand is an int
+            t = this.type.equals(HMTypeBase.REAL) && !child.type.equals(HMTypeBase.REAL) ? "((double) " : null;
+        } else if (this.type.equals(HMTypeBase.BOOL)) {
+            t = "Boolean.valueOf(";
         } else if (this.type.equals(HMTypeBase.INT)) {
-            t = "Integer.valueOf(%s)";
+            t = "Integer.valueOf(";
         } else if (this.type.equals(HMTypeBase.REAL)) {
-            t = "Double.valueOf(%s)";
+            t = "Double.valueOf(";
         } else {
-            t = "%s";
+            t = null;
         }
 
-        return String.format(t,s);
+        if (t != null) {
+            sb.append(t);
+        }
+
+        child.appendTo(sb.append('(').append(opToString(operator))).append(')');
+
+        return t == null ? sb : sb.append(')');
     }
 }
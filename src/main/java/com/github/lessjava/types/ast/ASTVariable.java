@@ -1,5 +1,9 @@
 package com.github.lessjava.types.ast;
 
+import java.util.List;
+
+import com.github.lessjava.types.Symbol;
+import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
 import com.github.lessjava.types.inference.impl.HMTypeCollection;
 import com.github.lessjava.types.inference.impl.HMTypeList;
 
@@ -11,6 +15,12 @@ public class ASTVariable extends ASTExpression {
     public String name;
     public ASTExpression index;
 
+    /**
+     * Symbols the name refers to, bound by BuildSymbolTables each time it
+     * builds the scopes around the variable, or null before then
+     */
+    public List<Symbol> symbols;
+
     public ASTVariable(String name) {
         this(name, null);
     }
@@ -24,16 +34,71 @@ public class ASTVariable extends ASTExpression {
         }
     }
 
+    @Override
+    public boolean isUnboxed() {
+        if (index != null && type instanceof HMTypeCollection) {
+            return type instanceof HMTypeList && ((HMTypeList) type).isPrimitiveBacked();
+        }
+
+        return super.isUnboxed();
+    }
+
+    @Override
+    public boolean hasInferredType() {
+        if (index != null) {
+            return false;
+        }
+
+        // Parameters are declared with the type of the instance's parameter
+        for (ASTNode n = getParent(); n != null; n = n.getParent()) {
+            if (n instanceof ASTFunction) {
+                for (Parameter p : ((ASTFunction) n).parameters) {
+                    if (p.name.equals(name)) {
+                        return type.equals(p.type);
+                    }
+                }
+
+                break;
+            }
+        }
+
+        // Anything else with the type of the variable first assigned to
+        boolean declared = false;
+
+        if (symbols != null) {
+            for (Symbol s : symbols) {
+                if (s.variable != null) {
+                    if (!type.equals(s.variable.type)) {
+                        return false;
+                    }
+
+                    declared = true;
+                }
+            }
+        }
+
+        return declared;
+    }
+
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
+        return appendTo(new StringBuilder()).toString();
+    }
 
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
         sb.append(name);
         if (type instanceof HMTypeList && index != null) {
-            sb.append(String.format(".get(%s)", index.toString()));
+            String get = ASTClass.methodTranslations.getOrDefault(((HMTypeList) type).getRuntimeClassName() + "get", "get");
+            index.appendTo(sb.append('.').append(get).append('(')).append(')');
         }
 
-        return sb.toString();
+        return sb;
+    }
+
+    @Override
+    public ASTVariable clone() {
+        return copied(new ASTVariable(name, index == null ? null : index.clone()));
     }
 
     @Override
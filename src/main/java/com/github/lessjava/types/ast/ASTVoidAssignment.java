@@ -7,6 +7,11 @@ public class ASTVoidAssignment extends ASTStatement {
         this.assignment = assignment;
     }
 
+    @Override
+    public ASTVoidAssignment clone() {
+        return copied(new ASTVoidAssignment(assignment.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
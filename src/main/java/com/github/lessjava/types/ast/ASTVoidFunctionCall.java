@@ -7,6 +7,11 @@ public class ASTVoidFunctionCall extends ASTStatement {
         this.functionCall = functionCall;
     }
 
+    @Override
+    public ASTVoidFunctionCall clone() {
+        return copied(new ASTVoidFunctionCall(functionCall.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
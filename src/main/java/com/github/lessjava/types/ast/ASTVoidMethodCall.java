@@ -9,7 +9,12 @@ public class ASTVoidMethodCall extends ASTStatement {
 
     @Override
     public String toString() {
-        return String.format("%s.%s", methodCall.invoker, methodCall.funcCall);
+        return methodCall.toCallString();
+    }
+
+    @Override
+    public ASTVoidMethodCall clone() {
+        return copied(new ASTVoidMethodCall(methodCall.clone()));
     }
 
     @Override
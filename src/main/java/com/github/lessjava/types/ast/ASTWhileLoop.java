@@ -14,6 +14,11 @@ public class ASTWhileLoop extends ASTStatement {
         this.body = body;
     }
 
+    @Override
+    public ASTWhileLoop clone() {
+        return copied(new ASTWhileLoop(guard.clone(), body.clone()));
+    }
+
     @Override
     public void traverse(ASTVisitor visitor) {
         visitor.preVisit(this);
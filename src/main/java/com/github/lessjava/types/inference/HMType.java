@@ -7,9 +7,48 @@ public abstract class HMType {
         INT, DOUBLE, BOOL, VOID, STR
     }
 
+    /**
+     * Structural equality. Bound type variables compare as the type they are
+     * bound to; an unbound variable is only equal to itself.
+     */
     @Override
-    public boolean equals(Object other) {
-        return other != null && other instanceof HMType && (this.toString()).equals(((HMType) other).toString());
+    public abstract boolean equals(Object other);
+
+    /**
+     * Consistent with {@link #equals(Object)}. Binding a variable changes the
+     * hash of every type containing it, so only resolved types should be kept
+     * as hash keys.
+     */
+    @Override
+    public abstract int hashCode();
+
+    /**
+     * Java type used when declaring a local, parameter, return value, loop
+     * counter, global or attribute of this type. Collections and type arguments
+     * always use {@link #toString()} so their elements stay boxed.
+     *
+     * @return Java type name for declarations
+     */
+    public String toDeclarationString() {
+        return toString();
+    }
+
+    /**
+     * Resolves bound type variables
+     *
+     * @return Representative of this type's equivalence class
+     */
+    public HMType prune() {
+        return this;
+    }
+
+    /**
+     * Resolves bound type variables here and in every contained type
+     *
+     * @return This type with all bound variables replaced
+     */
+    public HMType resolve() {
+        return prune();
     }
 
     public abstract HMType clone();
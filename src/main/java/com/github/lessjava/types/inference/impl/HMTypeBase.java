@@ -1,5 +1,6 @@
 package com.github.lessjava.types.inference.impl;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.inference.HMType;
 
 public class HMTypeBase extends HMType {
@@ -9,19 +10,73 @@ public class HMTypeBase extends HMType {
     public static final HMTypeBase STR = new HMTypeBase(BaseDataType.STR);
     public static final HMTypeBase VOID = new HMTypeBase(BaseDataType.VOID);
 
-    private BaseDataType baseType;
+    private final BaseDataType baseType;
 
-    public HMTypeBase(BaseDataType baseType) {
+    private HMTypeBase(BaseDataType baseType) {
         this.baseType = baseType;
         this.isConcrete = true;
     }
 
+    /**
+     * Base types are immutable, so there is a single instance of each
+     *
+     * @return The canonical instance for the given base type
+     */
+    public static HMTypeBase valueOf(BaseDataType baseType) {
+        switch (baseType) {
+            case INT:
+                return INT;
+            case DOUBLE:
+                return REAL;
+            case BOOL:
+                return BOOL;
+            case STR:
+                return STR;
+            default:
+                return VOID;
+        }
+    }
+
     public BaseDataType getBaseType() {
         return baseType;
     }
 
-    public void setBaseType(BaseDataType baseType) {
-        this.baseType = baseType;
+    /**
+     * Whether values of this type are emitted as Java primitives
+     *
+     * @return True if the current compilation emits primitives (see
+     *         {@link CompilationContext#primitives}) and this is a numeric or
+     *         boolean type
+     */
+    public boolean isPrimitive() {
+        if (!CompilationContext.emitsPrimitives()) {
+            return false;
+        }
+
+        switch (this.baseType) {
+            case INT:
+            case DOUBLE:
+            case BOOL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toDeclarationString() {
+        if (!isPrimitive()) {
+            return toString();
+        }
+
+        switch (this.baseType) {
+            case INT:
+                return "int";
+            case DOUBLE:
+                return "double";
+            default:
+                return "boolean";
+        }
     }
 
     @Override
@@ -42,8 +97,18 @@ public class HMTypeBase extends HMType {
         }
     }
 
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof HMType && ((HMType) other).prune() == this;
+    }
+
+    @Override
+    public int hashCode() {
+        return baseType.ordinal();
+    }
+
     @Override
     public HMTypeBase clone() {
-        return new HMTypeBase(this.baseType);
+        return this;
     }
 }
@@ -25,6 +25,22 @@ public class HMTypeClass extends HMType {
         methods.add(method.getIdentifyingString());
     }
 
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof HMType)) {
+            return false;
+        }
+
+        HMType o = ((HMType) other).prune();
+
+        return o instanceof HMTypeClass && name.equals(((HMTypeClass) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
     @Override
     public String toString() {
         return name;
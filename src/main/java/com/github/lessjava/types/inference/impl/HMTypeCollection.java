@@ -1,28 +1,112 @@
 package com.github.lessjava.types.inference.impl;
 
+import java.util.Objects;
+
 import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.HMType.BaseDataType;
 
 public abstract class HMTypeCollection extends HMTypeObject {
+    /**
+     * A type variable until types are resolved, bound to the element type.
+     * Unifying two collections merges their variables, so unification refines
+     * the element type through the binding (see {@link HMTypeVar#rebind(HMType)})
+     * rather than by replacing it here.
+     */
     public HMType elementType;
     public String collectionName;
     public String toString;
 
     public HMTypeCollection(String className, HMType elementType) {
         super(className);
-        this.elementType = elementType;
+
+        // The collection's own variable: a variable given here may still be
+        // bound to one that can't be, such as a function prototype's return type
+        HMType type = elementType == null ? null : elementType.prune();
+        HMTypeVar variable = new HMTypeVar();
+        if (type != null && !(type instanceof HMTypeVar)) {
+            variable.bind(type);
+        }
+        this.elementType = variable;
+    }
+
+    /**
+     * Name of the wrappers class this collection is emitted as
+     *
+     * @return LJList, LJSet or LJMap, or one of their primitive-backed variants
+     */
+    public String getRuntimeClassName() {
+        return "LJ" + collectionName;
+    }
+
+    /**
+     * Whether this collection stores its elements (or keys) unboxed. Only happens
+     * when primitives are emitted (see {@link HMTypeBase#isPrimitive()}).
+     *
+     * @return True if the runtime class is LJIntList, LJDoubleList, LJIntSet or
+     *         LJIntMap
+     */
+    public boolean isPrimitiveBacked() {
+        return !getRuntimeClassName().equals("LJ" + collectionName);
+    }
+
+    protected static boolean isPrimitive(HMType type, BaseDataType baseType) {
+        type = type.prune();
+
+        return type instanceof HMTypeBase && ((HMTypeBase) type).isPrimitive()
+                && ((HMTypeBase) type).getBaseType() == baseType;
     }
 
+    @Override
+    public HMType resolve() {
+        if (elementType != null) {
+            elementType = elementType.resolve();
+        }
+
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof HMType)) {
+            return false;
+        }
+
+        HMType o = ((HMType) other).prune();
+
+        return o == this || (o.getClass() == getClass() && Objects.equals(elementType, ((HMTypeCollection) o).elementType));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * collectionName.hashCode() + Objects.hashCode(elementType);
+    }
+
+    /**
+     * Copies the collection type. A bound element type gets a new variable, so
+     * rebinding the copy's leaves this one alone; an unbound one is shared, so
+     * that copies of a type stand for the same elements until they are known.
+     */
     @Override
     public HMTypeCollection clone() {
+        HMType elementType = this.elementType.prune();
+        HMTypeCollection copy = null;
+
         switch (collectionName) {
             case "List":
-                return new HMTypeList(this.elementType);
+                copy = new HMTypeList(elementType);
+                break;
             case "Set":
-                return new HMTypeSet(this.elementType);
+                copy = new HMTypeSet(elementType);
+                break;
             case "Map":
-                return new HMTypeMap((HMTypeTuple)this.elementType);
+                copy = new HMTypeMap((HMTypeTuple) elementType);
+                break;
+        }
+
+        if (copy != null && elementType instanceof HMTypeVar) {
+            copy.elementType = this.elementType;
         }
 
-        return null;
+        return copy;
     }
 }
@@ -1,6 +1,7 @@
 package com.github.lessjava.types.inference.impl;
 
 import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.HMType.BaseDataType;
 
 public class HMTypeList extends HMTypeCollection {
     public static final String LIST = "List";
@@ -11,8 +12,25 @@ public class HMTypeList extends HMTypeCollection {
         super.isConcrete = true;
     }
 
+    @Override
+    public String getRuntimeClassName() {
+        if (isPrimitive(elementType, BaseDataType.INT)) {
+            return "LJIntList";
+        }
+
+        if (isPrimitive(elementType, BaseDataType.DOUBLE)) {
+            return "LJDoubleList";
+        }
+
+        return super.getRuntimeClassName();
+    }
+
     @Override
     public String toString() {
+        if (isPrimitiveBacked()) {
+            return getRuntimeClassName();
+        }
+
         return String.format("LJList<%s>", elementType);
     }
 
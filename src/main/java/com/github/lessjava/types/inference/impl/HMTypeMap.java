@@ -1,5 +1,7 @@
 package com.github.lessjava.types.inference.impl;
 
+import com.github.lessjava.types.inference.HMType.BaseDataType;
+
 public class HMTypeMap extends HMTypeCollection {
     public static final String MAP = "Map";
 
@@ -9,9 +11,25 @@ public class HMTypeMap extends HMTypeCollection {
         super.isConcrete = true;
     }
 
+    @Override
+    public String getRuntimeClassName() {
+        HMTypeTuple t = (HMTypeTuple) elementType.prune();
+
+        if (isPrimitive(t.types.get(0), BaseDataType.INT)) {
+            return "LJIntMap";
+        }
+
+        return super.getRuntimeClassName();
+    }
+
     @Override
     public String toString() {
-        HMTypeTuple t = (HMTypeTuple) elementType;
+        HMTypeTuple t = (HMTypeTuple) elementType.prune();
+
+        if (isPrimitiveBacked()) {
+            return String.format("%s<%s>", getRuntimeClassName(), t.types.get(1));
+        }
+
         return String.format("LJMap<%s, %s>", t.types.get(0), t.types.get(1));
     }
 }
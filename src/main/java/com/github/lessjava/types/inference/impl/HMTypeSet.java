@@ -1,6 +1,7 @@
 package com.github.lessjava.types.inference.impl;
 
 import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.HMType.BaseDataType;
 
 public class HMTypeSet extends HMTypeCollection {
     public static final String SET = "Set";
@@ -11,8 +12,21 @@ public class HMTypeSet extends HMTypeCollection {
         super.isConcrete = true;
     }
 
+    @Override
+    public String getRuntimeClassName() {
+        if (isPrimitive(elementType, BaseDataType.INT)) {
+            return "LJIntSet";
+        }
+
+        return super.getRuntimeClassName();
+    }
+
     @Override
     public String toString() {
+        if (isPrimitiveBacked()) {
+            return getRuntimeClassName();
+        }
+
         return String.format("LJSet<%s>", elementType);
     }
 }
@@ -2,6 +2,7 @@ package com.github.lessjava.types.inference.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import com.github.lessjava.types.inference.HMType;
 
@@ -17,6 +18,53 @@ public class HMTypeTuple extends HMType {
         return new HMTypeTuple(new ArrayList<>(this.types));
     }
 
+    @Override
+    public HMType resolve() {
+        for (int i = 0; i < types.size(); i++) {
+            if (types.get(i) != null) {
+                types.set(i, types.get(i).resolve());
+            }
+        }
+
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof HMType)) {
+            return false;
+        }
+
+        HMType o = ((HMType) other).prune();
+
+        if (o == this) {
+            return true;
+        }
+
+        if (!(o instanceof HMTypeTuple) || ((HMTypeTuple) o).types.size() != types.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < types.size(); i++) {
+            if (!Objects.equals(types.get(i), ((HMTypeTuple) o).types.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+
+        for (int i = 0; i < types.size(); i++) {
+            hash = 31 * hash + Objects.hashCode(types.get(i));
+        }
+
+        return hash;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
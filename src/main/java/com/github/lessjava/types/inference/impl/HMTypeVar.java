@@ -1,20 +1,212 @@
 package com.github.lessjava.types.inference.impl;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.github.lessjava.types.inference.HMType;
 
+/**
+ * Type variable. Unification binds variables to each other or to a type,
+ * forming union-find equivalence classes; {@link #find()} returns what the
+ * class stands for and compresses the path to the variable representing it.
+ * Only that variable holds the type the class is bound to, so
+ * {@link #rebind(HMType)} changes it for every variable of the class.
+ *
+ * Generic variables stand for the parameter and return types of a function
+ * prototype. They are never bound, so that every instantiation of the
+ * prototype can choose its own types.
+ *
+ * A named variable is a type parameter of a generic Java method, and is
+ * emitted as its name.
+ */
 public class HMTypeVar extends HMType {
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    public final int id;
+    public final boolean generic;
+    public final String name;
+
+    private HMType instance;
+
     public HMTypeVar() {
+        this(false);
+    }
+
+    public HMTypeVar(boolean generic) {
+        this(generic, "T");
+    }
+
+    /**
+     * @param name
+     *            Name of the generic Java type parameter this variable stands
+     *            for
+     */
+    public HMTypeVar(String name) {
+        this(true, name);
+    }
+
+    private HMTypeVar(boolean generic, String name) {
         this.isConcrete = false;
+        this.generic = generic;
+        this.name = name;
+        this.id = nextId.getAndIncrement();
+    }
+
+    /**
+     * Finds the representative of this variable's equivalence class
+     *
+     * @return An unbound variable, or the type the class is bound to
+     */
+    public HMType find() {
+        HMTypeVar root = representative();
+
+        return root.instance == null ? root : root.instance;
+    }
+
+    /**
+     * Finds the variable representing this variable's equivalence class
+     *
+     * @return The variable of the class that isn't bound to another variable
+     */
+    private HMTypeVar representative() {
+        HMTypeVar root = this;
+        while (root.instance instanceof HMTypeVar) {
+            root = (HMTypeVar) root.instance;
+        }
+
+        // Path compression
+        HMTypeVar v = this;
+        while (v != root) {
+            HMTypeVar next = (HMTypeVar) v.instance;
+            v.instance = root;
+            v = next;
+        }
+
+        return root;
+    }
+
+    /**
+     * Binds this (unbound) variable to the given type, unless this variable is
+     * generic or the type contains it
+     *
+     * @return True if the variable was bound
+     */
+    public boolean bind(HMType type) {
+        if (generic || instance != null || type == this || occursIn(type)) {
+            return false;
+        }
+
+        instance = type;
+        return true;
+    }
+
+    /**
+     * Binds this variable's equivalence class to the given type instead of the
+     * one it is bound to, such as a DOUBLE element type in place of INT once a
+     * double is added to a list. Every variable of the class, and every type
+     * containing one, then stands for the new type.
+     *
+     * @return True if the class was bound to the type
+     */
+    public boolean rebind(HMType type) {
+        HMTypeVar root = representative();
+
+        if (root.generic || type == null || type instanceof HMTypeVar || root.occursIn(type)) {
+            return false;
+        }
+
+        root.instance = type;
+        return true;
+    }
+
+    /**
+     * Merges the equivalence classes of this variable and the given one, and
+     * binds the merged class to the given type unless it is a variable
+     *
+     * @return True if the classes were merged
+     */
+    public boolean union(HMTypeVar other, HMType type) {
+        HMTypeVar root = representative();
+        HMTypeVar otherRoot = other.representative();
+
+        if (root != otherRoot) {
+            if (root.generic || otherRoot.generic) {
+                return false;
+            }
+
+            root.instance = otherRoot;
+        }
+
+        return type instanceof HMTypeVar || otherRoot.rebind(type);
+    }
+
+    /**
+     * Occurs check
+     *
+     * @return True if this variable appears in the given type
+     */
+    public boolean occursIn(HMType type) {
+        type = type.prune();
+
+        if (type == this) {
+            return true;
+        }
+
+        if (type instanceof HMTypeCollection) {
+            HMType elementType = ((HMTypeCollection) type).elementType;
+
+            return elementType != null && occursIn(elementType);
+        }
+
+        if (type instanceof HMTypeTuple) {
+            for (HMType t : ((HMTypeTuple) type).types) {
+                if (t != null && occursIn(t)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public HMType prune() {
+        return find();
+    }
+
+    @Override
+    public HMType resolve() {
+        HMType root = find();
+
+        return root == this ? this : root.resolve();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        HMType root = find();
+
+        if (root != this) {
+            return root.equals(other);
+        }
+
+        return other instanceof HMType && ((HMType) other).prune() == this;
+    }
+
+    @Override
+    public int hashCode() {
+        HMType root = find();
+
+        return root == this ? id : root.hashCode();
     }
 
     @Override
     public String toString() {
-        return String.format("T");
+        HMType root = find();
 
+        return root == this ? name : root.toString();
     }
 
     @Override
     public HMTypeVar clone() {
-        return new HMTypeVar();
+        return new HMTypeVar(generic, name);
     }
 }
@@ -2,25 +2,33 @@ package com.github.lessjava.visitor;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.ast.ASTAbstractFunction;
 import com.github.lessjava.types.ast.ASTBinaryExpr.BinOp;
 import com.github.lessjava.types.ast.ASTClass;
+import com.github.lessjava.types.ast.ASTExpression;
 import com.github.lessjava.types.ast.ASTMethod;
+import com.github.lessjava.types.ast.ASTNode;
 import com.github.lessjava.types.ast.ASTProgram;
 import com.github.lessjava.types.inference.HMType;
 import com.github.lessjava.types.inference.HMType.BaseDataType;
 import com.github.lessjava.types.inference.impl.HMTypeBase;
 import com.github.lessjava.types.inference.impl.HMTypeCollection;
+import com.github.lessjava.types.inference.impl.HMTypeTuple;
 import com.github.lessjava.types.inference.impl.HMTypeVar;
 import com.github.lessjava.visitor.impl.StaticAnalysis;
 
 public abstract class LJAbstractAssignTypes extends StaticAnalysis implements LJAssignTypes {
-    protected static Map<String, List<ASTAbstractFunction>> idFunctionMap = new HashMap<>();
+    protected final Map<String, List<ASTAbstractFunction>> idFunctionMap;
+
+    public LJAbstractAssignTypes(CompilationContext context) {
+        super(context);
+        this.idFunctionMap = context.idFunctionMap;
+    }
 
     @Override
     public void preVisit(ASTProgram node) {
@@ -34,12 +42,30 @@ public abstract class LJAbstractAssignTypes extends StaticAnalysis implements LJ
             }
         }
 
-        for (ASTAbstractFunction function: ASTAbstractFunction.libraryFunctions) {
+        for (ASTAbstractFunction function: context.libraryFunctions) {
             idFunctionMap.computeIfAbsent(function.getIdentifyingString(), k -> new ArrayList<>()).add(function);
         }
     }
 
+    /**
+     * Replaces bound type variables on expressions before they are visited, so
+     * checks on the kind of type see what the variable stands for
+     */
+    @Override
+    public void defaultPreVisit(ASTNode node) {
+        if (node instanceof ASTExpression) {
+            ASTExpression expression = (ASTExpression) node;
+
+            if (expression.type != null) {
+                expression.type = expression.type.prune();
+            }
+        }
+    }
+
     protected HMType unify(HMType left, HMType right) {
+        left = left == null ? null : left.prune();
+        right = right == null ? null : right.prune();
+
         boolean leftIsBase = left instanceof HMTypeBase;
         boolean leftIsVar = left instanceof HMTypeVar;
         boolean leftIsCollection = left instanceof HMTypeCollection;
@@ -48,12 +74,22 @@ public abstract class LJAbstractAssignTypes extends StaticAnalysis implements LJ
         boolean rightIsVar = right instanceof HMTypeVar;
         boolean rightIsCollection = right instanceof HMTypeCollection;
 
+        // Record what the variable stands for; the occurs check keeps it from
+        // being bound to a type containing itself
+        if (leftIsVar && !rightIsVar && right != null) {
+            ((HMTypeVar) left).bind(right);
+        } else if (rightIsVar && !leftIsVar && left != null) {
+            ((HMTypeVar) right).bind(left);
+        }
+
         if (leftIsBase && rightIsBase) {
             return unify((HMTypeBase) left, (HMTypeBase) right);
         } else if (leftIsVar && rightIsVar) {
             return unify((HMTypeVar) left, (HMTypeVar) right);
         } else if (leftIsCollection && rightIsCollection) {
             return unify((HMTypeCollection) left, (HMTypeCollection) right);
+        } else if (left instanceof HMTypeTuple && right instanceof HMTypeTuple) {
+            return unify((HMTypeTuple) left, (HMTypeTuple) right);
         }
 
         // TODO: This can't be right...
@@ -73,18 +109,55 @@ public abstract class LJAbstractAssignTypes extends StaticAnalysis implements LJ
         return left;
     }
 
+    /**
+     * Merges the element type variables of two collections of the same kind,
+     * bound to their unified element type
+     */
     protected HMType unify(HMTypeCollection left, HMTypeCollection right) {
-        HMType unifiedType = left;
-
         if (left.collectionName.equals(right.collectionName)) {
-            left.elementType = right.elementType = unify(left.elementType, right.elementType);
+            HMType elementType = unify(left.elementType, right.elementType);
+
+            if (left.elementType instanceof HMTypeVar && right.elementType instanceof HMTypeVar) {
+                ((HMTypeVar) left.elementType).union((HMTypeVar) right.elementType, elementType);
+            }
         }
 
-        return unifiedType;
+        return left;
+    }
+
+    /**
+     * Unifies a collection's element type with that of an element, rebinding
+     * its variable if the element widens it, such as a double added to a list
+     * of ints
+     */
+    protected void unifyElementType(HMTypeCollection collection, HMType type) {
+        HMType elementType = unify(collection.elementType, type);
+
+        if (collection.elementType instanceof HMTypeVar) {
+            ((HMTypeVar) collection.elementType).rebind(elementType);
+        }
+    }
+
+    protected HMType unify(HMTypeTuple left, HMTypeTuple right) {
+        if (left.types.size() != right.types.size()) {
+            return left;
+        }
+
+        List<HMType> types = new ArrayList<>();
+
+        for (int i = 0; i < left.types.size(); i++) {
+            types.add(unify(left.types.get(i), right.types.get(i)));
+        }
+
+        return types.equals(left.types) ? left : new HMTypeTuple(types);
     }
 
     protected HMType unify(HMTypeVar left, HMTypeVar right) {
-        return left;
+        if (left != right && !right.bind(left)) {
+            left.bind(right);
+        }
+
+        return left.prune();
     }
 
     protected HMTypeBase unify(HMTypeBase left, HMTypeBase right) {
@@ -121,7 +194,7 @@ public abstract class LJAbstractAssignTypes extends StaticAnalysis implements LJ
                     break;
                 case AND:
                 case OR:
-                    unifiedType = new HMTypeBase(BaseDataType.BOOL);
+                    unifiedType = HMTypeBase.BOOL;
                     break;
                 default:
                     return null;
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.exceptions.InvalidProgramException;
 import com.github.lessjava.types.Symbol;
 import com.github.lessjava.types.SymbolTable;
@@ -27,10 +28,6 @@ import com.github.lessjava.types.inference.impl.HMTypeVar;
  * appropriate symbol tables.
  */
 public class BuildSymbolTables extends StaticAnalysis {
-    public static final String SYMBOL_TABLE = "symbolTable";
-
-    public static Map<ASTNode, SymbolTable> nodeSymbolTableMap = new HashMap<>();
-
     /**
      * Stack of symbol tables, representing all active nested scopes.
      */
@@ -44,22 +41,20 @@ public class BuildSymbolTables extends StaticAnalysis {
      *
      */
     public static List<Symbol> searchScopesForSymbol(ASTNode node, String name) {
-        List<Symbol> symbols = null;
-        try {
-            if (node.attributes.containsKey(SYMBOL_TABLE)) {
-                SymbolTable table = (SymbolTable) node.attributes.get(SYMBOL_TABLE);
-                symbols = table.lookup(name);
-            }
+        for (ASTNode scope = node; scope != null; scope = scope.getParent()) {
+            SymbolTable table = scope.getSymbolTable();
+            List<Symbol> symbols = table == null ? null : table.find(name);
 
-            if ((symbols == null || symbols.isEmpty()) && node.getParent() != null) {
-                symbols = searchScopesForSymbol(node.getParent(), name);
+            if (symbols != null && !symbols.isEmpty()) {
+                return symbols;
             }
-        } catch (InvalidProgramException ex) {
         }
-        return symbols;
+
+        return null;
     }
 
-    public BuildSymbolTables() {
+    public BuildSymbolTables(CompilationContext context) {
+        super(context);
         tableStack = new ArrayDeque<SymbolTable>();
         nameVarMap = new HashMap<>();
     }
@@ -135,18 +130,24 @@ public class BuildSymbolTables extends StaticAnalysis {
         }
     }
 
+    /**
+     * Add a symbol for the given variable to the current (innermost) scope,
+     * unless it is already defined, and bind the variable to its symbols.
+     */
     protected void insertVariableSymbol(ASTVariable node) {
         try {
             // TODO: Removing this fixes collections breaks globals
             List<Symbol> symbols = searchScopesForSymbol(node, node.name);
 
             // Don't add the symbol if we've already encountered it
-            if (symbols != null && !symbols.isEmpty()) {
-                return;
+            if (symbols == null) {
+                Symbol symbol = new Symbol(node, node.name, node.type);
+                getCurrentTable().insert(node.name, symbol);
+
+                symbols = searchScopesForSymbol(node, node.name);
             }
 
-            Symbol symbol = new Symbol(node, node.name, node.type);
-            getCurrentTable().insert(node.name, symbol);
+            node.symbols = symbols;
         } catch (InvalidProgramException ex) {
             addError(ex);
         }
@@ -167,57 +168,57 @@ public class BuildSymbolTables extends StaticAnalysis {
 
     @Override
     public void preVisit(ASTProgram node) {
-        node.attributes.put(SYMBOL_TABLE, initializeScope());
+        node.setSymbolTable(initializeScope());
     }
 
     @Override
     public void postVisit(ASTProgram node) {
-        nodeSymbolTableMap.put(node, getCurrentTable());
+        context.nodeSymbolTableMap.put(node, getCurrentTable());
         finalizeScope();
     }
 
     @Override
     public void preVisit(ASTClass node) {
-        node.attributes.put(SYMBOL_TABLE, initializeScope());
+        node.setSymbolTable(initializeScope());
     }
 
     @Override
     public void postVisit(ASTClass node) {
-        nodeSymbolTableMap.put(node, getCurrentTable());
+        context.nodeSymbolTableMap.put(node, getCurrentTable());
         finalizeScope();
     }
 
     @Override
     public void preVisit(ASTForLoop node) {
-        node.attributes.put(SYMBOL_TABLE, initializeScope());
+        node.setSymbolTable(initializeScope());
     }
 
     @Override
     public void postVisit(ASTForLoop node) {
-        nodeSymbolTableMap.put(node, getCurrentTable());
+        context.nodeSymbolTableMap.put(node, getCurrentTable());
         finalizeScope();
     }
 
     @Override
     public void preVisit(ASTFunction node) {
         insertFunctionSymbol(node);
-        node.attributes.put(SYMBOL_TABLE, initializeScope());
+        node.setSymbolTable(initializeScope());
     }
 
     @Override
     public void postVisit(ASTFunction node) {
-        nodeSymbolTableMap.put(node, getCurrentTable());
+        context.nodeSymbolTableMap.put(node, getCurrentTable());
         finalizeScope();
     }
 
     @Override
     public void preVisit(ASTBlock node) {
-        node.attributes.put(SYMBOL_TABLE, initializeScope());
+        node.setSymbolTable(initializeScope());
     }
 
     @Override
     public void postVisit(ASTBlock node) {
-        nodeSymbolTableMap.put(node, getCurrentTable());
+        context.nodeSymbolTableMap.put(node, getCurrentTable());
         finalizeScope();
     }
 
@@ -8,7 +8,7 @@ import com.github.lessjava.visitor.LJDefaultASTVisitor;
 
 public class LJASTBuildClassLinks extends LJDefaultASTVisitor {
 
-    public final static Map<String, ASTClass> nameClassMap = new HashMap<>();
+    private final Map<String, ASTClass> nameClassMap = new HashMap<>();
 
     @Override
     public void postVisit(ASTClass node) {
@@ -3,6 +3,7 @@ package com.github.lessjava.visitor.impl;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.ast.ASTBinaryExpr;
 import com.github.lessjava.types.ast.ASTExpression;
 import com.github.lessjava.types.ast.ASTFunction;
@@ -14,9 +15,13 @@ import com.github.lessjava.types.ast.ASTVariable;
 import com.github.lessjava.types.inference.HMType;
 
 public class LJASTCheckTypesHaveChanged extends StaticAnalysis {
-    private static Map<ASTNode, HMType> exprTypeMap = new HashMap<>();
+    private Map<ASTNode, HMType> exprTypeMap = new HashMap<>();
 
-    public static boolean typesChanged;
+    public boolean typesChanged;
+
+    public LJASTCheckTypesHaveChanged(CompilationContext context) {
+        super(context);
+    }
 
     @Override
     public void preVisit(ASTProgram node) {
@@ -1,14 +1,13 @@
 package com.github.lessjava.visitor.impl;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Stack;
-import java.util.stream.Collectors;
 
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.generated.LJBaseListener;
 import com.github.lessjava.generated.LJParser.ArgListContext;
 import com.github.lessjava.generated.LJParser.AssignmentContext;
@@ -20,6 +19,7 @@ import com.github.lessjava.generated.LJParser.ClassSignatureContext;
 import com.github.lessjava.generated.LJParser.Class_Context;
 import com.github.lessjava.generated.LJParser.ConditionalContext;
 import com.github.lessjava.generated.LJParser.ContinueContext;
+import com.github.lessjava.generated.LJParser.DeclarationContext;
 import com.github.lessjava.generated.LJParser.EntryContext;
 import com.github.lessjava.generated.LJParser.ExprBaseContext;
 import com.github.lessjava.generated.LJParser.ExprBinContext;
@@ -55,7 +55,6 @@ import com.github.lessjava.types.ast.ASTBreak;
 import com.github.lessjava.types.ast.ASTClass;
 import com.github.lessjava.types.ast.ASTClassBlock;
 import com.github.lessjava.types.ast.ASTClassSignature;
-import com.github.lessjava.types.ast.ASTCollection;
 import com.github.lessjava.types.ast.ASTConditional;
 import com.github.lessjava.types.ast.ASTContinue;
 import com.github.lessjava.types.ast.ASTEntry;
@@ -85,57 +84,126 @@ import com.github.lessjava.types.inference.HMType;
 import com.github.lessjava.types.inference.impl.HMTypeVar;
 
 public class LJASTConverter extends LJBaseListener {
+    private final CompilationContext context;
+
     private ASTProgram ast;
-    private LinkedHashMap<ParserRuleContext, ASTNode> parserASTMap;
+
+    // Nodes of the rules exited whose parent rule hasn't been yet, and, for
+    // each rule being converted, the index of the node of its first child
+    private Stack<ASTNode> nodes;
+    private Stack<Integer> firstChildren;
+    private ParserRuleContext lastExited;
+
+    // Node of the rule being exited
+    private ASTNode converted;
 
     private Stack<ASTBlock> blocks;
 
     private ASTClassBlock currentClassBlock;
     private ASTClassSignature currentClassSignature;
 
-    public LJASTConverter() {
-        parserASTMap = new LinkedHashMap<>();
+    public LJASTConverter(CompilationContext context) {
+        this.context = context;
+        nodes = new Stack<ASTNode>();
+        firstChildren = new Stack<Integer>();
         blocks = new Stack<ASTBlock>();
     }
 
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        int first = nodes.size();
+
+        // When converting during the parse, an operation of a left-recursive
+        // exprBin is entered after its left operand has been converted
+        if (ctx instanceof ExprBinContext && lastExited != null && ((ExprBinContext) ctx).left == lastExited) {
+            first--;
+        }
+
+        firstChildren.push(first);
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        nodes.setSize(firstChildren.pop());
+
+        if (converted != null) {
+            nodes.push(converted);
+            converted = null;
+        }
+
+        lastExited = ctx;
+    }
+
     @Override
     public void exitProgram(ProgramContext ctx) {
         ast = new ASTProgram();
 
-        for (Class_Context c : ctx.class_()) {
-            ast.classes.add((ASTClass) parserASTMap.get(c));
+        for (ASTNode declaration : children()) {
+            addDeclaration(declaration);
         }
 
-        for (FunctionContext f : ctx.function()) {
-            ast.functions.add((ASTAbstractFunction) parserASTMap.get(f));
+        addLibraryFunctions();
+
+        ast.setDepth(ctx.depth());
+
+        put(ast);
+    }
+
+    /**
+     * Adds a top-level declaration, parsed on its own, to the program
+     */
+    @Override
+    public void exitDeclaration(DeclarationContext ctx) {
+        if (ast == null) {
+            ast = new ASTProgram();
         }
 
-        for (GlobalContext g : ctx.global()) {
-            ast.globals.add((ASTGlobalAssignment) parserASTMap.get(g));
+        for (ASTNode declaration : children()) {
+            addDeclaration(declaration);
         }
+    }
 
-        for (TestContext t : ctx.test()) {
-            ast.tests.add((ASTTest) parserASTMap.get(t));
+    /**
+     * Forgets the partly converted declaration whose parse was given up, to be
+     * parsed again
+     */
+    public void abandonDeclaration() {
+        nodes.clear();
+        firstChildren.clear();
+        blocks.clear();
+        lastExited = null;
+        converted = null;
+    }
+
+    /**
+     * Completes the program once all its declarations have been converted
+     * separately, as by exitProgram
+     */
+    public ASTProgram endDeclarations() {
+        if (ast == null) {
+            ast = new ASTProgram();
         }
 
         addLibraryFunctions();
 
-        ast.setDepth(ctx.depth());
+        ast.setDepth(1);
 
-        parserASTMap.put(ctx, ast);
+        return ast;
     }
 
     @Override
     public void exitClass_(Class_Context ctx) {
         ASTClass class_;
 
-        ASTClassSignature classSignature = (ASTClassSignature) parserASTMap.get(ctx.classSignature());
-        ASTClassBlock classBlock = (ASTClassBlock) parserASTMap.get(ctx.classBlock());
+        ASTClassSignature classSignature = (ASTClassSignature) child(0);
+        ASTClassBlock classBlock = (ASTClassBlock) child(1);
 
         class_ = new ASTClass(classSignature, classBlock);
         class_.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, class_);
+        context.nameClassMap.put(classSignature.className, class_);
+
+        put(class_);
     }
 
     @Override
@@ -150,7 +218,7 @@ public class LJASTConverter extends LJBaseListener {
         this.currentClassSignature = signature;
 
         signature.setDepth(ctx.depth());
-        parserASTMap.put(ctx, signature);
+        put(signature);
     }
 
     @Override
@@ -158,8 +226,11 @@ public class LJASTConverter extends LJBaseListener {
         this.currentClassBlock = new ASTClassBlock();
 
         this.currentClassBlock.setDepth(ctx.depth());
+    }
 
-        parserASTMap.put(ctx, this.currentClassBlock);
+    @Override
+    public void exitClassBlock(ClassBlockContext ctx) {
+        put(this.currentClassBlock);
     }
 
     @Override
@@ -167,15 +238,16 @@ public class LJASTConverter extends LJBaseListener {
         ASTAttribute attribute;
 
         String scope = ctx.scope.getText();
-        ASTAssignment assignment = (ASTAssignment) parserASTMap.get(ctx.assignment());
+        ASTAssignment assignment = (ASTAssignment) child(0);
 
         attribute = new ASTAttribute(scope, assignment);
 
         attribute.setDepth(ctx.depth());
 
         this.currentClassBlock.addAttribute(attribute);
+        context.nameAttributeMap.put(assignment.variable.name, attribute);
 
-        parserASTMap.put(ctx, attribute);
+        put(attribute);
     }
 
     @Override
@@ -193,7 +265,7 @@ public class LJASTConverter extends LJBaseListener {
             scope = ctx.scope.getText();
         }
 
-        ASTFunction function = (ASTFunction) parserASTMap.get(ctx.function());
+        ASTFunction function = (ASTFunction) child(0);
 
         method = new ASTMethod(scope, function, this.currentClassSignature.className);
         method.isConstructor = isConstructor;
@@ -207,7 +279,7 @@ public class LJASTConverter extends LJBaseListener {
 
         method.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, method);
+        put(method);
     }
 
 
@@ -216,17 +288,17 @@ public class LJASTConverter extends LJBaseListener {
         ASTFunction function;
         ASTFunction.Parameter parameter;
 
-        function = new ASTFunction(ctx.ID().getText(), (ASTBlock) parserASTMap.get(ctx.block()));
-        if (ctx.paramList() != null && ctx.paramList().ID().size() > 0) {
-            for (TerminalNode tn : ctx.paramList().ID()) {
-                parameter = new ASTFunction.Parameter(tn.getText(), new HMTypeVar());
+        function = new ASTFunction(ctx.ID().getText(), (ASTBlock) child(0));
+        if (ctx.params != null && ctx.params.ID().size() > 0) {
+            for (TerminalNode tn : ctx.params.ID()) {
+                parameter = new ASTFunction.Parameter(tn.getText(), new HMTypeVar(true));
                 function.parameters.add(parameter);
             }
         }
 
         function.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, function);
+        put(function);
     }
 
     @Override
@@ -234,12 +306,12 @@ public class LJASTConverter extends LJBaseListener {
         ASTTest test;
         ASTExpression expr;
 
-        expr = (ASTExpression) parserASTMap.get(ctx.expr());
+        expr = (ASTExpression) child(0);
         test = new ASTTest(expr);
 
         test.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, test);
+        put(test);
     }
 
     @Override
@@ -247,12 +319,12 @@ public class LJASTConverter extends LJBaseListener {
         ASTGlobalAssignment globalAssignment;
         ASTAssignment assignment;
 
-        assignment = (ASTAssignment) parserASTMap.get(ctx.assignment());
+        assignment = (ASTAssignment) child(0);
         globalAssignment = new ASTGlobalAssignment(assignment);
 
         globalAssignment.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, globalAssignment);
+        put(globalAssignment);
     }
 
     @Override
@@ -264,13 +336,11 @@ public class LJASTConverter extends LJBaseListener {
         blocks.push(block);
 
         block.setDepth(ctx.depth());
-
-        parserASTMap.put(ctx, block);
     }
 
     @Override
     public void exitBlock(BlockContext ctx) {
-        blocks.pop();
+        put(blocks.pop());
     }
 
     @Override
@@ -279,17 +349,13 @@ public class LJASTConverter extends LJBaseListener {
 
         List<ASTExpression> args = new ArrayList<>();
 
-        for (ExprContext e : ctx.expr()) {
-            args.add((ASTExpression) parserASTMap.get(e));
-        }
-
-        for (EntryContext e : ctx.entry()) {
-            args.add((ASTExpression) parserASTMap.get(e));
+        for (ASTNode e : children()) {
+            args.add((ASTExpression) e);
         }
 
         argList = new ASTArgList(args);
 
-        parserASTMap.put(ctx, argList);
+        put(argList);
     }
 
     @Override
@@ -297,7 +363,7 @@ public class LJASTConverter extends LJBaseListener {
         ASTVoidAssignment voidAssignment;
         ASTAssignment assignment;
 
-        assignment = (ASTAssignment) parserASTMap.get(ctx.assignment());
+        assignment = (ASTAssignment) child(0);
         voidAssignment = new ASTVoidAssignment(assignment);
 
         if (!blocks.empty()) {
@@ -306,7 +372,7 @@ public class LJASTConverter extends LJBaseListener {
 
         voidAssignment.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, voidAssignment);
+        put(voidAssignment);
     }
 
     @Override
@@ -316,11 +382,11 @@ public class LJASTConverter extends LJBaseListener {
         ASTBlock ifBlock;
         ASTBlock elseBlock;
 
-        condition = (ASTExpression) parserASTMap.get(ctx.expr());
-        ifBlock = (ASTBlock) parserASTMap.get(ctx.block().get(0));
+        condition = (ASTExpression) child(0);
+        ifBlock = (ASTBlock) child(1);
 
-        if (ctx.block().size() > 1) {
-            elseBlock = (ASTBlock) parserASTMap.get(ctx.block().get(1));
+        if (children().size() > 2) {
+            elseBlock = (ASTBlock) child(2);
             conditional = new ASTConditional(condition, ifBlock, elseBlock);
         } else {
             conditional = new ASTConditional(condition, ifBlock);
@@ -332,7 +398,7 @@ public class LJASTConverter extends LJBaseListener {
 
         conditional.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, conditional);
+        put(conditional);
     }
 
     @Override
@@ -341,8 +407,8 @@ public class LJASTConverter extends LJBaseListener {
         ASTExpression guard;
         ASTBlock body;
 
-        guard = (ASTExpression) parserASTMap.get(ctx.expr());
-        body = (ASTBlock) parserASTMap.get(ctx.block());
+        guard = (ASTExpression) child(0);
+        body = (ASTBlock) child(1);
 
         whileLoop = new ASTWhileLoop(guard, body);
 
@@ -352,7 +418,7 @@ public class LJASTConverter extends LJBaseListener {
 
         whileLoop.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, whileLoop);
+        put(whileLoop);
     }
 
     @Override
@@ -363,15 +429,15 @@ public class LJASTConverter extends LJBaseListener {
         ASTExpression upperBound;
         ASTBlock block;
 
-        var = (ASTVariable) parserASTMap.get(ctx.var());
-        block = (ASTBlock) parserASTMap.get(ctx.block());
+        var = (ASTVariable) child(0);
+        block = (ASTBlock) child(children().size() - 1);
 
-        if (ctx.expr().size() > 1) {
-            lowerBound = (ASTExpression) parserASTMap.get(ctx.expr(0));
-            upperBound = (ASTExpression) parserASTMap.get(ctx.expr(1));
+        if (children().size() > 3) {
+            lowerBound = (ASTExpression) child(1);
+            upperBound = (ASTExpression) child(2);
             forLoop = new ASTForLoop(var, lowerBound, upperBound, block);
         } else {
-            upperBound = (ASTExpression) parserASTMap.get(ctx.expr(0));
+            upperBound = (ASTExpression) child(1);
             forLoop = new ASTForLoop(var, upperBound, block);
         }
 
@@ -381,7 +447,7 @@ public class LJASTConverter extends LJBaseListener {
 
         forLoop.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, forLoop);
+        put(forLoop);
     }
 
     @Override
@@ -389,7 +455,7 @@ public class LJASTConverter extends LJBaseListener {
         ASTReturn ret;
         ASTExpression expression;
 
-        expression = (ASTExpression) parserASTMap.get(ctx.expr());
+        expression = (ASTExpression) child(0);
 
         ret = new ASTReturn(expression);
 
@@ -399,7 +465,7 @@ public class LJASTConverter extends LJBaseListener {
 
         ret.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, ret);
+        put(ret);
     }
 
     @Override
@@ -414,7 +480,7 @@ public class LJASTConverter extends LJBaseListener {
 
         br.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, br);
+        put(br);
     }
 
     @Override
@@ -429,7 +495,7 @@ public class LJASTConverter extends LJBaseListener {
 
         cont.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, cont);
+        put(cont);
     }
 
     @Override
@@ -437,7 +503,7 @@ public class LJASTConverter extends LJBaseListener {
         ASTVoidFunctionCall voidFuncCall;
         ASTFunctionCall functionCall;
 
-        functionCall = (ASTFunctionCall) parserASTMap.get(ctx.funcCall());
+        functionCall = (ASTFunctionCall) child(0);
 
         voidFuncCall = new ASTVoidFunctionCall(functionCall);
 
@@ -447,7 +513,7 @@ public class LJASTConverter extends LJBaseListener {
             blocks.peek().statements.add(voidFuncCall);
         }
 
-        parserASTMap.put(ctx, voidFuncCall);
+        put(voidFuncCall);
     }
 
     @Override
@@ -455,7 +521,7 @@ public class LJASTConverter extends LJBaseListener {
         ASTVoidMethodCall voidMethodCall;
         ASTMethodCall methodCall;
 
-        methodCall = (ASTMethodCall) parserASTMap.get(ctx.methodCall());
+        methodCall = (ASTMethodCall) child(0);
         voidMethodCall = new ASTVoidMethodCall(methodCall);
 
         voidMethodCall.setDepth(ctx.depth());
@@ -464,18 +530,18 @@ public class LJASTConverter extends LJBaseListener {
             blocks.peek().statements.add(voidMethodCall);
         }
 
-        parserASTMap.put(ctx, voidMethodCall);
+        put(voidMethodCall);
     }
 
     @Override
     public void exitExpr(ExprContext ctx) {
         ASTExpression expr;
 
-        expr = (ASTExpression) parserASTMap.get(ctx.exprBin());
+        expr = (ASTExpression) child(0);
 
         expr.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, expr);
+        put(expr);
     }
 
     @Override
@@ -484,15 +550,11 @@ public class LJASTConverter extends LJBaseListener {
         ASTExpression left, right;
         BinOp binOp;
 
-        if (ctx.op == null && ctx.assignment() == null && ctx.methodCall() == null) {
-            expr = (ASTExpression) parserASTMap.get(ctx.exprUn());
-        } else if (ctx.assignment() != null) {
-            expr = (ASTAssignment) parserASTMap.get(ctx.assignment());
-        } else if (ctx.methodCall() != null) {
-            expr = (ASTMethodCall) parserASTMap.get(ctx.methodCall());
+        if (ctx.op == null) {
+            expr = (ASTExpression) child(0);
         } else {
-            left = (ASTExpression) parserASTMap.get(ctx.left);
-            right = (ASTExpression) parserASTMap.get(ctx.right);
+            left = (ASTExpression) child(0);
+            right = (ASTExpression) child(1);
             binOp = ASTBinaryExpr.stringToOp(ctx.op.getText());
 
             expr = new ASTBinaryExpr(binOp, left, right);
@@ -500,7 +562,7 @@ public class LJASTConverter extends LJBaseListener {
 
         expr.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, expr);
+        put(expr);
     }
 
     @Override
@@ -511,20 +573,20 @@ public class LJASTConverter extends LJBaseListener {
 
         // If base expression
         if (ctx.op == null) {
-            expr = (ASTExpression) parserASTMap.get(ctx.exprBase());
+            expr = (ASTExpression) child(0);
 
             expr.setDepth(ctx.depth());
 
-            parserASTMap.put(ctx, expr);
+            put(expr);
         } else {
             op = findUnaryOp(ctx.op.getText());
-            expr = (ASTExpression) parserASTMap.get(ctx.expression);
+            expr = (ASTExpression) child(0);
 
             unExpr = new ASTUnaryExpr(op, expr);
 
             unExpr.setDepth(ctx.depth());
 
-            parserASTMap.put(ctx, unExpr);
+            put(unExpr);
         }
     }
 
@@ -532,25 +594,13 @@ public class LJASTConverter extends LJBaseListener {
     public void exitExprBase(ExprBaseContext ctx) {
         ASTExpression expr;
 
-        if (ctx.memberAccess() != null) {
-            expr = (ASTMemberAccess) parserASTMap.get(ctx.memberAccess());
-        } else if (ctx.funcCall() != null) {
-            expr = (ASTFunctionCall) parserASTMap.get(ctx.funcCall());
-        } else if (ctx.methodCall() != null) {
-            expr = (ASTMethodCall) parserASTMap.get(ctx.methodCall());
-        } else if (ctx.collection() != null) {
-            expr = (ASTCollection) parserASTMap.get(ctx.collection());
-        } else if (ctx.var() != null) {
-            expr = (ASTVariable) parserASTMap.get(ctx.var());
-        } else if (ctx.lit() != null) {
-            expr = (ASTLiteral) parserASTMap.get(ctx.lit());
-        } else {
-            expr = (ASTExpression) parserASTMap.get(ctx.expr());
-        }
+        // A member access, function or method call, collection, variable,
+        // literal or parenthesized expression
+        expr = (ASTExpression) child(0);
 
         expr.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, expr);
+        put(expr);
     }
 
     @Override
@@ -562,9 +612,9 @@ public class LJASTConverter extends LJBaseListener {
         ASTExpression expression;
 
         op = ASTBinaryExpr.stringToOp(ctx.op.getText());
-        variable = (ASTVariable) parserASTMap.get(ctx.var());
-        memberAccess = (ASTMemberAccess) parserASTMap.get(ctx.memberAccess());
-        expression = (ASTExpression) parserASTMap.get(ctx.expr());
+        variable = child(0) instanceof ASTVariable ? (ASTVariable) child(0) : null;
+        memberAccess = child(0) instanceof ASTMemberAccess ? (ASTMemberAccess) child(0) : null;
+        expression = (ASTExpression) child(1);
 
 
         if (expression instanceof ASTArgList) {
@@ -580,7 +630,7 @@ public class LJASTConverter extends LJBaseListener {
 
         assignment.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, assignment);
+        put(assignment);
     }
 
     @Override
@@ -591,14 +641,17 @@ public class LJASTConverter extends LJBaseListener {
 
         funcCall.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, funcCall);
+        put(funcCall);
 
-        if (ctx.argList() == null) {
+        if (children().isEmpty()) {
             return;
         }
 
-        for (ExprContext expr : ctx.argList().expr()) {
-            funcCall.arguments.add((ASTExpression) parserASTMap.get(expr));
+        // Map entries aren't arguments
+        for (ASTExpression expr : ((ASTArgList) child(0)).arguments) {
+            if (!(expr instanceof ASTEntry)) {
+                funcCall.arguments.add(expr);
+            }
         }
     }
 
@@ -608,37 +661,31 @@ public class LJASTConverter extends LJBaseListener {
 
         ASTExpression invoker;
 
-        if (ctx.var() != null) {
-            invoker = (ASTVariable) parserASTMap.get(ctx.var());
-        } else {
-            invoker = (ASTFunctionCall) parserASTMap.get(ctx.funcCall().get(0));
-        }
+        // A variable or function call
+        invoker = (ASTExpression) child(0);
 
-        List<ASTFunctionCall> calls = ctx.funcCall().stream().map(c -> parserASTMap.get(c))
-                .map(c -> (ASTFunctionCall) c).collect(Collectors.toList());
-
-        ASTFunctionCall funcCall = calls.get(calls.size() - 1);
+        ASTFunctionCall funcCall = (ASTFunctionCall) child(1);
 
         methodCall = new ASTMethodCall(invoker, funcCall);
 
         methodCall.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, methodCall);
+        put(methodCall);
     }
 
     @Override
     public void exitVar(VarContext ctx) {
         ASTVariable var;
 
-        if (ctx.expr() == null) {
+        if (children().isEmpty()) {
             var = new ASTVariable(ctx.name.getText());
         } else {
-            var = new ASTVariable(ctx.name.getText(), (ASTExpression) parserASTMap.get(ctx.expr()));
+            var = new ASTVariable(ctx.name.getText(), (ASTExpression) child(0));
         }
 
         var.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, var);
+        put(var);
     }
 
     @Override
@@ -647,7 +694,7 @@ public class LJASTConverter extends LJBaseListener {
 
         String className = ctx.instance.getText();
         String referencedClassName = className;
-        ASTVariable var = (ASTVariable) parserASTMap.get(ctx.var());
+        ASTVariable var = (ASTVariable) child(0);
 
         if (className.equals("this")) {
             referencedClassName = this.currentClassSignature.className;
@@ -659,7 +706,7 @@ public class LJASTConverter extends LJBaseListener {
 
         memberAccess.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, memberAccess);
+        put(memberAccess);
     }
 
     @Override
@@ -680,7 +727,7 @@ public class LJASTConverter extends LJBaseListener {
 
         lit.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, lit);
+        put(lit);
     }
 
     @Override
@@ -688,12 +735,12 @@ public class LJASTConverter extends LJBaseListener {
         ASTList list;
         ASTArgList initialElements;
 
-        initialElements = (ASTArgList) parserASTMap.get(ctx.argList());
+        initialElements = children().isEmpty() ? null : (ASTArgList) child(0);
         list = new ASTList(initialElements);
 
         list.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, list);
+        put(list);
     }
 
     @Override
@@ -701,12 +748,12 @@ public class LJASTConverter extends LJBaseListener {
         ASTSet set;
         ASTArgList initialElements;
 
-        initialElements = (ASTArgList) parserASTMap.get(ctx.argList());
+        initialElements = children().isEmpty() ? null : (ASTArgList) child(0);
         set = new ASTSet(initialElements);
 
         set.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, set);
+        put(set);
     }
 
     @Override
@@ -714,12 +761,12 @@ public class LJASTConverter extends LJBaseListener {
         ASTMap map;
         ASTArgList initialElements;
 
-        initialElements = (ASTArgList) parserASTMap.get(ctx.argList());
+        initialElements = children().isEmpty() ? null : (ASTArgList) child(0);
         map = new ASTMap(initialElements);
 
         map.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, map);
+        put(map);
     }
 
     @Override
@@ -728,19 +775,49 @@ public class LJASTConverter extends LJBaseListener {
         ASTExpression key;
         ASTExpression value;
 
-        key = (ASTExpression) parserASTMap.get(ctx.key);
-        value = (ASTExpression) parserASTMap.get(ctx.value);
+        key = (ASTExpression) child(0);
+        value = (ASTExpression) child(1);
         entry = new ASTEntry(key, value);
 
         entry.setDepth(ctx.depth());
 
-        parserASTMap.put(ctx, entry);
+        put(entry);
     }
 
     public ASTProgram getAST() {
         return ast;
     }
 
+    /**
+     * @return The nodes of the children of the rule being exited, in order
+     */
+    private List<ASTNode> children() {
+        return nodes.subList(firstChildren.peek(), nodes.size());
+    }
+
+    private ASTNode child(int i) {
+        return children().get(i);
+    }
+
+    /**
+     * Sets the node of the rule being exited
+     */
+    private void put(ASTNode node) {
+        converted = node;
+    }
+
+    private void addDeclaration(ASTNode declaration) {
+        if (declaration instanceof ASTClass) {
+            ast.classes.add((ASTClass) declaration);
+        } else if (declaration instanceof ASTAbstractFunction) {
+            ast.functions.add((ASTAbstractFunction) declaration);
+        } else if (declaration instanceof ASTGlobalAssignment) {
+            ast.globals.add((ASTGlobalAssignment) declaration);
+        } else if (declaration instanceof ASTTest) {
+            ast.tests.add((ASTTest) declaration);
+        }
+    }
+
     public ASTUnaryExpr.UnaryOp findUnaryOp(String op) {
         switch (op) {
             case "!":
@@ -756,18 +833,18 @@ public class LJASTConverter extends LJBaseListener {
      * Add Library functions
      */
     private void addLibraryFunctions() {
-        for (ASTFunction f : ASTFunction.libraryFunctions) {
+        for (ASTFunction f : context.libraryFunctions) {
             f.setDepth(2);
             f.setParent(ast);
         }
 
-        for (ASTClass c : ASTClass.libraryClasses) {
+        for (ASTClass c : context.libraryClasses) {
             for (ASTMethod m : c.block.methods) {
                 m.setParent(c.block);
             }
         }
 
-        ast.functions.addAll(ASTFunction.libraryFunctions);
-        ast.classes.addAll(ASTClass.libraryClasses);
+        ast.functions.addAll(context.libraryFunctions);
+        ast.classes.addAll(context.libraryClasses);
     }
 }
@@ -1,5 +1,6 @@
 package com.github.lessjava.visitor.impl;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
 import com.github.lessjava.types.ast.ASTBlock;
 import com.github.lessjava.types.ast.ASTClass;
@@ -12,11 +13,17 @@ import com.github.lessjava.types.inference.impl.HMTypeClass;
 import com.github.lessjava.visitor.LJDefaultASTVisitor;
 
 public class LJASTInferConstructors extends LJDefaultASTVisitor {
+    private final CompilationContext context;
+
+    public LJASTInferConstructors(CompilationContext context) {
+        this.context = context;
+    }
+
     @Override
     public void postVisit(ASTClass node) {
         super.postVisit(node);
 
-        if (ASTClass.libraryClasses.contains(node)) {
+        if (context.libraryClasses.contains(node)) {
             return;
         }
 
@@ -24,12 +31,12 @@ public class LJASTInferConstructors extends LJDefaultASTVisitor {
             ASTMethod constructor = generateConstructor(node);
             ASTMethod emptyConstructor = generateEmptyConstructor(node);
 
-            node.block.methods.add(constructor);
-            node.block.methods.add(emptyConstructor);
+            node.addMethod(constructor);
+            node.addMethod(emptyConstructor);
             node.block.constructor = constructor;
         } else {
             ASTMethod emptyConstructor = generateEmptyConstructor(node);
-            node.block.methods.add(emptyConstructor);
+            node.addMethod(emptyConstructor);
         }
     }
 
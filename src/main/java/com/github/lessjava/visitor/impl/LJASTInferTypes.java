@@ -1,8 +1,10 @@
 package com.github.lessjava.visitor.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.Symbol;
 import com.github.lessjava.types.ast.ASTAbstractFunction;
 import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
@@ -10,13 +12,13 @@ import com.github.lessjava.types.ast.ASTArgList;
 import com.github.lessjava.types.ast.ASTAssignment;
 import com.github.lessjava.types.ast.ASTBinaryExpr;
 import com.github.lessjava.types.ast.ASTClass;
-import com.github.lessjava.types.ast.ASTClassBlock;
 import com.github.lessjava.types.ast.ASTConditional;
 import com.github.lessjava.types.ast.ASTEntry;
 import com.github.lessjava.types.ast.ASTExpression;
 import com.github.lessjava.types.ast.ASTForLoop;
 import com.github.lessjava.types.ast.ASTFunction;
 import com.github.lessjava.types.ast.ASTFunctionCall;
+import com.github.lessjava.types.ast.ASTLiteral;
 import com.github.lessjava.types.ast.ASTList;
 import com.github.lessjava.types.ast.ASTMap;
 import com.github.lessjava.types.ast.ASTMemberAccess;
@@ -42,17 +44,22 @@ import com.github.lessjava.visitor.LJAbstractAssignTypes;
 public class LJASTInferTypes extends LJAbstractAssignTypes {
     private HMType returnType;
 
-    private static ASTProgram program;
+    // Return statements of the current function
+    private List<ASTReturn> returns = new ArrayList<>();
+
+    private ASTProgram program;
 
     private List<Parameter> parameters;
 
+    public LJASTInferTypes(CompilationContext context) {
+        super(context);
+    }
+
     @Override
     public void preVisit(ASTProgram node) {
         super.preVisit(node);
 
-        if (LJASTInferTypes.program == null) {
-            LJASTInferTypes.program = node;
-        }
+        this.program = node;
     }
 
     @Override
@@ -64,7 +71,7 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
             node.concrete = node.function.concrete = true;
 
             for (Parameter p : node.function.parameters) {
-                p.type = unify(p.type, ASTClassBlock.nameAttributeMap.get(p.name).assignment.type);
+                p.type = unify(p.type, context.nameAttributeMap.get(p.name).assignment.type);
             }
         } else {
             node.returnType = node.function.returnType;
@@ -77,6 +84,7 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
         super.preVisit(node);
 
         this.returnType = null;
+        this.returns.clear();
         this.parameters = node.parameters;
     }
 
@@ -92,14 +100,33 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
 
         node.returnType = this.returnType == null ? HMTypeBase.VOID : unify(node.returnType, this.returnType);
         node.concrete = node.parameters.stream().noneMatch(p -> p.type instanceof HMTypeVar);
+
+        // An instance sharing its body with others, such as fact(5.0) with
+        // fact(5), returns its INT literals as doubles if it returns DOUBLE:
+        // boxed, an Integer can't be returned as a Double
+        if (node.concrete && node.returnType != null && HMTypeBase.REAL.equals(node.returnType.prune())) {
+            for (ASTReturn r : returns) {
+                if (r.value instanceof ASTLiteral && ((ASTLiteral) r.value).value instanceof Integer) {
+                    ASTLiteral literal = new ASTLiteral(BaseDataType.DOUBLE,
+                            ((Integer) ((ASTLiteral) r.value).value).doubleValue());
+
+                    literal.setParent(r);
+                    literal.setDepth(r.value.getDepth());
+                    r.value = literal;
+                }
+            }
+        }
     }
 
     @Override
     public void preVisit(ASTForLoop node) {
         if (node.lowerBound == null && node.upperBound.type instanceof HMTypeCollection) {
             node.var.type = ((HMTypeCollection) node.upperBound.type).elementType;
+        } else if (node.lowerBound == null && node.upperBound.type.prune() instanceof HMTypeVar) {
+            // Not known yet whether this iterates over a collection or counts up;
+            // guessing would bind the loop variable's uses to the wrong type
         } else {
-            node.var.type = new HMTypeBase(BaseDataType.INT);
+            node.var.type = HMTypeBase.INT;
         }
     }
 
@@ -107,8 +134,10 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
     public void postVisit(ASTReturn node) {
         super.postVisit(node);
 
+        returns.add(node);
+
         if (node.value == null) {
-            this.returnType = new HMTypeBase(BaseDataType.VOID);
+            this.returnType = HMTypeBase.VOID;
         } else if (node.value instanceof ASTVariable) {
             ASTVariable var = (ASTVariable) node.value;
 
@@ -151,7 +180,7 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
             case GT:
             case LE:
             case GE:
-                node.type = new HMTypeBase(BaseDataType.BOOL);
+                node.type = HMTypeBase.BOOL;
                 break;
         }
     }
@@ -184,12 +213,22 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
     public void postVisit(ASTFunctionCall node) {
         super.postVisit(node);
 
-        if (ASTClass.nameClassMap.containsKey(node.name)
+        if (context.nameClassMap.containsKey(node.name)
                 && !ASTFunction.libraryFunctionStrings.containsKey(node.name)) {
             node.type = new HMTypeClass(node.name);
+            node.isConstructor = true;
         } else if (ASTFunction.specialCases.containsKey(node.name)) {
             node.type = unify(node.type, ASTFunction.specialCases.get(node.name).returnType);
         } else if (idFunctionMap.containsKey(node.getIdentifyingString())) {
+            // Instances are typed independently, so a call returns what the
+            // instance for its argument types returns, once there is one
+            ASTAbstractFunction instance = context.functionInstances.get(node);
+
+            if (instance != null) {
+                node.type = unify(node.type, instance.returnType);
+                return;
+            }
+
             List<ASTAbstractFunction> functions = idFunctionMap.get(node.getIdentifyingString());
 
             for (ASTAbstractFunction function: functions) {
@@ -219,9 +258,10 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
     public void postVisit(ASTVariable node) {
         super.postVisit(node);
 
-        List<Symbol> symbols = BuildSymbolTables.searchScopesForSymbol(node, node.name);
+        List<Symbol> symbols = node.symbols != null ? node.symbols
+                : BuildSymbolTables.searchScopesForSymbol(node, node.name);
 
-        if (symbols != null && !symbols.isEmpty()) {
+        if (symbols != null) {
             symbols.forEach(s -> node.type = s.variable == null ? node.type : unify(node.type, s.type));
         }
 
@@ -232,7 +272,7 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
     public void postVisit(ASTMemberAccess node) {
         super.postVisit(node);
 
-        ASTClass containingClass = ASTClass.nameClassMap.get(node.referencedClassName);
+        ASTClass containingClass = context.nameClassMap.get(node.referencedClassName);
 
         ASTVariable attribute = containingClass.getAttribute(node.var.name);
 
@@ -245,25 +285,49 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
     public void preVisit(ASTList node) {
         super.preVisit(node);
 
-        node.type = new HMTypeList(node.initialElements.type);
+        if (node.type instanceof HMTypeList) {
+            refineElementType((HMTypeCollection) node.type, node.initialElements.type);
+        } else {
+            node.type = new HMTypeList(node.initialElements.type);
+        }
     }
 
     @Override
     public void preVisit(ASTSet node) {
         super.preVisit(node);
 
-        node.type = new HMTypeSet(node.initialElements.type);
+        if (node.type instanceof HMTypeSet) {
+            refineElementType((HMTypeCollection) node.type, node.initialElements.type);
+        } else {
+            node.type = new HMTypeSet(node.initialElements.type);
+        }
     }
 
     @Override
     public void preVisit(ASTMap node) {
         super.preVisit(node);
 
-        if (node.initialElements.type instanceof HMTypeTuple) {
+        if (node.type instanceof HMTypeMap) {
+            refineElementType((HMTypeCollection) node.type, node.initialElements.type);
+        } else if (node.initialElements.type instanceof HMTypeTuple) {
             node.type = new HMTypeMap((HMTypeTuple) node.initialElements.type);
         }
     }
 
+    /**
+     * A collection literal keeps its type from one pass to the next, so that
+     * the type only changes when its elements' type does. Unresolved element
+     * types are left to later passes, as they may stand for a function
+     * prototype's generic types.
+     */
+    private void refineElementType(HMTypeCollection collection, HMType type) {
+        type = type == null ? null : type.prune();
+
+        if (type != null && !(type instanceof HMTypeVar)) {
+            unifyElementType(collection, type);
+        }
+    }
+
     @Override
     public void preVisit(ASTEntry node) {
         List<HMType> types = Arrays.asList(new HMType[] { node.key.type, node.value.type });
@@ -316,33 +380,42 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
             String name = node.funcCall.name;
 
             if (name.equals("add")) {
-                t.elementType = unify(t.elementType, arguments.get(0).type);
+                unifyElementType(t, arguments.get(0).type);
             } else if (name.equals("insert")) {
-                t.elementType = unify(t.elementType, arguments.get(1).type);
+                unifyElementType(t, arguments.get(1).type);
             } else if (name.equals("remove")) {
                 if (!arguments.isEmpty()) {
-                    t.elementType = unify(t.elementType, arguments.get(0).type);
+                    unifyElementType(t, arguments.get(0).type);
                 }
             } else if (name.equals("put")) {
                 if (!arguments.isEmpty()) {
-                    HMTypeTuple tuple = (HMTypeTuple) t.elementType;
+                    unifyElementType(t,
+                            new HMTypeTuple(Arrays.asList(new HMType[] { arguments.get(0).type, arguments.get(1).type })));
+                }
+            } else if (name.equals("get") || name.equals("pop") || name.equals("dequeue")) {
+                HMType elementType = t.elementType.prune();
+
+                // A map's element type pairs the key with the value it gets
+                if (t instanceof HMTypeMap && elementType instanceof HMTypeTuple) {
+                    elementType = ((HMTypeTuple) elementType).types.get(1);
+                }
 
-                    HMType key = tuple.types.get(0);
-                    HMType value = tuple.types.get(1);
+                node.funcCall.type = unify(node.funcCall.type, elementType);
+            }
 
-                    key = unify(key, arguments.get(0).type);
-                    value = unify(value, arguments.get(1).type);
+            // Methods with a fixed result, such as size and contains, return
+            // what the library class declares, whatever the invoker is
+            ASTClass library = context.nameClassMap.get(t.collectionName);
+            ASTMethod method = library == null ? null : library.getMethod(name);
 
-                    t.elementType = new HMTypeTuple(Arrays.asList(new HMType[] { key, value }));
-                }
-            } else if(name.equals("get")) {
-                node.funcCall.type = unify(node.funcCall.type, t.elementType);
+            if (method != null && method.returnType instanceof HMTypeBase && method.returnType != HMTypeBase.VOID) {
+                node.funcCall.type = unify(node.funcCall.type, method.returnType);
             }
         }
 
         if (node.invoker.type instanceof HMTypeClass) {
             HMTypeClass type = (HMTypeClass) node.invoker.type;
-            HMType returnType = ASTClass.nameClassMap.get(type.name).getMethod(node.funcCall.name).returnType;
+            HMType returnType = context.nameClassMap.get(type.name).getMethod(node.funcCall.name).returnType;
 
             node.type = unify(node.type, returnType);
         }
@@ -365,6 +438,6 @@ public class LJASTInferTypes extends LJAbstractAssignTypes {
     public void preVisit(ASTConditional node) {
         super.preVisit(node);
 
-        node.condition.type = unify(node.condition.type, new HMTypeBase(BaseDataType.BOOL));
+        node.condition.type = unify(node.condition.type, HMTypeBase.BOOL);
     }
 }
@@ -7,7 +7,7 @@ import com.github.lessjava.types.ast.ASTTest;
 import com.github.lessjava.visitor.LJDefaultASTVisitor;
 
 public class LJAssignTestVariables extends LJDefaultASTVisitor {
-    private static HashSet<String> emittedVariables = new HashSet<>();
+    private HashSet<String> emittedVariables = new HashSet<>();
 
     public ASTProgram program;
 
@@ -0,0 +1,505 @@
+package com.github.lessjava.visitor.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
+import com.github.lessjava.types.ast.ASTAssignment;
+import com.github.lessjava.types.ast.ASTAttribute;
+import com.github.lessjava.types.ast.ASTBinaryExpr;
+import com.github.lessjava.types.ast.ASTCollection;
+import com.github.lessjava.types.ast.ASTConditional;
+import com.github.lessjava.types.ast.ASTEntry;
+import com.github.lessjava.types.ast.ASTExpression;
+import com.github.lessjava.types.ast.ASTForLoop;
+import com.github.lessjava.types.ast.ASTFunction;
+import com.github.lessjava.types.ast.ASTFunctionCall;
+import com.github.lessjava.types.ast.ASTGlobalAssignment;
+import com.github.lessjava.types.ast.ASTLiteral;
+import com.github.lessjava.types.ast.ASTMethodCall;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.types.ast.ASTReturn;
+import com.github.lessjava.types.ast.ASTStatement;
+import com.github.lessjava.types.ast.ASTTest;
+import com.github.lessjava.types.ast.ASTUnaryExpr;
+import com.github.lessjava.types.ast.ASTVariable;
+import com.github.lessjava.types.ast.ASTVoidAssignment;
+import com.github.lessjava.types.ast.ASTVoidFunctionCall;
+import com.github.lessjava.types.ast.ASTVoidMethodCall;
+import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.HMType.BaseDataType;
+import com.github.lessjava.types.inference.impl.HMTypeBase;
+import com.github.lessjava.visitor.LJDefaultASTVisitor;
+
+/**
+ * Folds arithmetic, comparisons and boolean operators over literals into
+ * literals, and propagates the values of constant globals and of locals that
+ * are assigned a constant once, so the generated code doesn't compute them at
+ * runtime. Runs on the typed program, before code generation.
+ *
+ * Values are computed as the generated Java computes them. An INT literal
+ * inferred to be a DOUBLE counts as a double, an operation on an INT and a
+ * DOUBLE is carried out on doubles, as
+ * {@link com.github.lessjava.visitor.LJAbstractAssignTypes} unifies their types
+ * to DOUBLE, and an INT result of a DOUBLE expression is converted. Strings
+ * aren't folded. An operation that would overflow, divide by zero or give a
+ * non-finite double is left to run, as is equality between values of different
+ * types, which boxed and primitive code decide differently.
+ *
+ * While loop guards are left alone, since javac rejects the code after a loop
+ * whose guard is a constant true, and the body of one whose guard is false.
+ */
+public class LJFoldConstants extends LJDefaultASTVisitor {
+    private final Map<String, Object> globals = new HashMap<>();
+
+    // Constant locals of the current function, once their assignment is passed
+    private final Map<String, Object> locals = new HashMap<>();
+
+    // Top-level assignments of the current function to names assigned only once
+    private final Set<ASTAssignment> singleAssignments = new HashSet<>();
+
+    // Names the current function declares, which hide globals
+    private final Set<String> localNames = new HashSet<>();
+
+    private boolean folding;
+    private boolean propagating;
+
+    @Override
+    public void preVisit(ASTProgram node) {
+        globals.clear();
+    }
+
+    @Override
+    public void preVisit(ASTGlobalAssignment node) {
+        folding = propagating = true;
+
+        fold(node.assignment);
+
+        Object value = constant(node.assignment.value);
+
+        if (value != null && node.assignment.variable.index == null && hasType(value, node.assignment.variable.type)) {
+            globals.put(node.assignment.variable.name, value);
+        }
+
+        folding = propagating = false;
+    }
+
+    @Override
+    public void preVisit(ASTAttribute node) {
+        folding = true;
+
+        fold(node.assignment);
+
+        folding = false;
+    }
+
+    @Override
+    public void preVisit(ASTFunction node) {
+        locals.clear();
+        singleAssignments.clear();
+        localNames.clear();
+
+        // Prototypes aren't typed; library functions have no body
+        folding = node.concrete && node.body != null;
+
+        // Methods may refer to attributes of their class
+        propagating = folding && node.getParent() instanceof ASTProgram;
+
+        if (!propagating) {
+            return;
+        }
+
+        Map<String, Integer> assignments = new HashMap<>();
+
+        node.body.traverse(new LJDefaultASTVisitor() {
+            @Override
+            public void preVisit(ASTAssignment assignment) {
+                if (assignment.memberAccess == null) {
+                    assignments.merge(assignment.variable.name, 1, Integer::sum);
+                }
+            }
+
+            @Override
+            public void preVisit(ASTForLoop loop) {
+                assignments.merge(loop.var.name, 2, Integer::sum);
+            }
+        });
+
+        for (Parameter p : node.parameters) {
+            assignments.merge(p.name, 2, Integer::sum);
+        }
+
+        localNames.addAll(assignments.keySet());
+
+        for (ASTStatement s : node.body.statements) {
+            if (s instanceof ASTVoidAssignment) {
+                ASTAssignment assignment = ((ASTVoidAssignment) s).assignment;
+
+                if (assignment.memberAccess == null && assignment.variable.index == null
+                        && assignments.get(assignment.variable.name) == 1) {
+                    singleAssignments.add(assignment);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void postVisit(ASTFunction node) {
+        folding = propagating = false;
+    }
+
+    @Override
+    public void preVisit(ASTTest node) {
+        folding = propagating = true;
+
+        // An equality is kept, so a failing test reports both values
+        if (node.expr instanceof ASTBinaryExpr && ((ASTBinaryExpr) node.expr).operator == ASTBinaryExpr.BinOp.EQ) {
+            ASTBinaryExpr expr = (ASTBinaryExpr) node.expr;
+
+            expr.leftChild = fold(expr.leftChild);
+            expr.rightChild = fold(expr.rightChild);
+        } else {
+            node.expr = fold(node.expr);
+        }
+
+        folding = propagating = false;
+    }
+
+    @Override
+    public void preVisit(ASTConditional node) {
+        if (folding) {
+            node.condition = fold(node.condition);
+        }
+    }
+
+    @Override
+    public void preVisit(ASTForLoop node) {
+        if (folding) {
+            if (node.lowerBound != null) {
+                node.lowerBound = fold(node.lowerBound);
+            }
+
+            node.upperBound = fold(node.upperBound);
+        }
+    }
+
+    @Override
+    public void preVisit(ASTReturn node) {
+        if (folding && node.value != null) {
+            node.value = fold(node.value);
+        }
+    }
+
+    @Override
+    public void preVisit(ASTVoidAssignment node) {
+        if (!folding) {
+            return;
+        }
+
+        fold(node.assignment);
+
+        Object value = constant(node.assignment.value);
+
+        if (value != null && singleAssignments.contains(node.assignment)
+                && hasType(value, node.assignment.variable.type)) {
+            locals.put(node.assignment.variable.name, value);
+        }
+    }
+
+    @Override
+    public void preVisit(ASTVoidFunctionCall node) {
+        if (folding) {
+            fold(node.functionCall);
+        }
+    }
+
+    @Override
+    public void preVisit(ASTVoidMethodCall node) {
+        if (folding) {
+            fold(node.methodCall);
+        }
+    }
+
+    /**
+     * Folds the constant subexpressions of an expression
+     *
+     * @return The expression, or the literal replacing it
+     */
+    private ASTExpression fold(ASTExpression node) {
+        if (node instanceof ASTAssignment) {
+            ASTAssignment assignment = (ASTAssignment) node;
+
+            assignment.value = assignment.rightChild = fold(assignment.value);
+
+            if (assignment.variable.index != null) {
+                assignment.variable.index = fold(assignment.variable.index);
+            }
+        } else if (node instanceof ASTMethodCall) {
+            fold(((ASTMethodCall) node).funcCall.arguments);
+        } else if (node instanceof ASTBinaryExpr) {
+            ASTBinaryExpr binary = (ASTBinaryExpr) node;
+
+            binary.leftChild = fold(binary.leftChild);
+            binary.rightChild = fold(binary.rightChild);
+
+            // Boxed, a promoted literal is still an Integer, which never
+            // equals a Double
+            if ((binary.operator == ASTBinaryExpr.BinOp.EQ || binary.operator == ASTBinaryExpr.BinOp.NE)
+                    && (isPromoted(binary.leftChild) || isPromoted(binary.rightChild))) {
+                return binary;
+            }
+
+            return literal(binary, fold(binary.operator, constant(binary.leftChild), constant(binary.rightChild)));
+        } else if (node instanceof ASTUnaryExpr) {
+            ASTUnaryExpr unary = (ASTUnaryExpr) node;
+
+            unary.child = fold(unary.child);
+
+            return literal(unary, fold(unary.operator, constant(unary.child)));
+        } else if (node instanceof ASTFunctionCall) {
+            fold(((ASTFunctionCall) node).arguments);
+        } else if (node instanceof ASTCollection) {
+            fold(((ASTCollection) node).initialElements.arguments);
+        } else if (node instanceof ASTEntry) {
+            ASTEntry entry = (ASTEntry) node;
+
+            entry.key = fold(entry.key);
+            entry.value = fold(entry.value);
+        } else if (node instanceof ASTVariable) {
+            ASTVariable variable = (ASTVariable) node;
+
+            if (variable.index != null) {
+                variable.index = fold(variable.index);
+            } else if (propagating) {
+                Object value = value(variable.name);
+
+                // A variable read as a DOUBLE may still hold an Integer
+                if (value != null && hasType(value, variable.type)) {
+                    return literal(variable, value);
+                }
+            }
+        }
+
+        return node;
+    }
+
+    private void fold(List<ASTExpression> expressions) {
+        for (int i = 0; i < expressions.size(); i++) {
+            expressions.set(i, fold(expressions.get(i)));
+        }
+    }
+
+    /**
+     * @return The constant value of the variable here, or null
+     */
+    private Object value(String name) {
+        if (locals.containsKey(name)) {
+            return locals.get(name);
+        }
+
+        return localNames.contains(name) ? null : globals.get(name);
+    }
+
+    /**
+     * @return The value of the operation, or null if it isn't folded
+     */
+    private static Object fold(ASTBinaryExpr.BinOp operator, Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+
+        if (left instanceof Boolean && right instanceof Boolean) {
+            boolean l = (Boolean) left;
+            boolean r = (Boolean) right;
+
+            switch (operator) {
+                case AND:
+                    return l && r;
+                case OR:
+                    return l || r;
+                case EQ:
+                    return l == r;
+                case NE:
+                    return l != r;
+                default:
+                    return null;
+            }
+        }
+
+        if (!(left instanceof Number) || !(right instanceof Number)) {
+            return null;
+        }
+
+        if (left instanceof Integer && right instanceof Integer) {
+            return fold(operator, (int) (Integer) left, (int) (Integer) right);
+        }
+
+        double l = ((Number) left).doubleValue();
+        double r = ((Number) right).doubleValue();
+
+        switch (operator) {
+            case EQ:
+            case NE:
+                // Boxed values are compared with equals(), which sets 0.0 and
+                // -0.0 apart, and never equals an Integer
+                if (left.getClass() != right.getClass() || (l == r) != left.equals(right)) {
+                    return null;
+                }
+
+                return operator == ASTBinaryExpr.BinOp.EQ ? l == r : l != r;
+            case LT:
+                return l < r;
+            case GT:
+                return l > r;
+            case LE:
+                return l <= r;
+            case GE:
+                return l >= r;
+            default:
+                break;
+        }
+
+        double value;
+
+        switch (operator) {
+            case ADD:
+                value = l + r;
+                break;
+            case SUB:
+                value = l - r;
+                break;
+            case MUL:
+                value = l * r;
+                break;
+            case DIV:
+                value = l / r;
+                break;
+            case MOD:
+                value = l % r;
+                break;
+            default:
+                return null;
+        }
+
+        return Double.isFinite(value) ? value : null;
+    }
+
+    private static Object fold(ASTBinaryExpr.BinOp operator, int l, int r) {
+        try {
+            switch (operator) {
+                case EQ:
+                    return l == r;
+                case NE:
+                    return l != r;
+                case LT:
+                    return l < r;
+                case GT:
+                    return l > r;
+                case LE:
+                    return l <= r;
+                case GE:
+                    return l >= r;
+                case ADD:
+                    return Math.addExact(l, r);
+                case SUB:
+                    return Math.subtractExact(l, r);
+                case MUL:
+                    return Math.multiplyExact(l, r);
+                case DIV:
+                    return r == 0 || (l == Integer.MIN_VALUE && r == -1) ? null : l / r;
+                case MOD:
+                    return r == 0 ? null : l % r;
+                default:
+                    return null;
+            }
+        } catch (ArithmeticException e) {
+            // Overflows at runtime
+            return null;
+        }
+    }
+
+    private static Object fold(ASTUnaryExpr.UnaryOp operator, Object value) {
+        if (operator == ASTUnaryExpr.UnaryOp.NOT && value instanceof Boolean) {
+            return !(Boolean) value;
+        }
+
+        if (operator == ASTUnaryExpr.UnaryOp.NEG && value instanceof Integer && (Integer) value != Integer.MIN_VALUE) {
+            return -(Integer) value;
+        }
+
+        if (operator == ASTUnaryExpr.UnaryOp.NEG && value instanceof Double) {
+            return -(Double) value;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The value of a literal, as a Double if it was promoted, or null
+     */
+    private static Object constant(ASTExpression node) {
+        if (!(node instanceof ASTLiteral)) {
+            return null;
+        }
+
+        Object value = ((ASTLiteral) node).value;
+
+        if (isPromoted(node)) {
+            return ((Integer) value).doubleValue();
+        }
+
+        return hasType(value, node.type) ? value : null;
+    }
+
+    /**
+     * @return Whether the node is an INT literal inferred to be a DOUBLE
+     */
+    private static boolean isPromoted(ASTExpression node) {
+        return node instanceof ASTLiteral && ((ASTLiteral) node).value instanceof Integer
+                && baseType(node.type) == BaseDataType.DOUBLE;
+    }
+
+    private static boolean hasType(Object value, HMType type) {
+        BaseDataType baseType = baseType(type);
+
+        return value instanceof Integer && baseType == BaseDataType.INT
+                || value instanceof Double && baseType == BaseDataType.DOUBLE
+                || value instanceof Boolean && baseType == BaseDataType.BOOL;
+    }
+
+    private static BaseDataType baseType(HMType type) {
+        type = type == null ? null : type.prune();
+
+        return type instanceof HMTypeBase ? ((HMTypeBase) type).getBaseType() : null;
+    }
+
+    /**
+     * Converts a value to the type of the expression it replaces, as the
+     * generated code would
+     *
+     * @return A literal in place of the expression, or the expression itself
+     *         if there is no value or it can't be converted
+     */
+    private static ASTExpression literal(ASTExpression node, Object value) {
+        BaseDataType baseType = baseType(node.type);
+
+        if (value instanceof Integer && baseType == BaseDataType.DOUBLE) {
+            value = ((Integer) value).doubleValue();
+        }
+
+        if (value == null || !hasType(value, node.type)) {
+            return node;
+        }
+
+        ASTLiteral literal = new ASTLiteral(baseType, value);
+
+        literal.type = node.type;
+        literal.setParent(node.getParent());
+        literal.setDepth(node.getDepth());
+
+        return literal;
+    }
+}
@@ -0,0 +1,1288 @@
+package com.github.lessjava.visitor.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.lessjava.CompilationContext;
+import com.github.lessjava.bytecode.ClassFile;
+import com.github.lessjava.bytecode.Code;
+import com.github.lessjava.bytecode.Code.Label;
+import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
+import com.github.lessjava.types.ast.ASTAssignment;
+import com.github.lessjava.types.ast.ASTBinaryExpr;
+import com.github.lessjava.types.ast.ASTBinaryExpr.BinOp;
+import com.github.lessjava.types.ast.ASTBlock;
+import com.github.lessjava.types.ast.ASTBreak;
+import com.github.lessjava.types.ast.ASTClass;
+import com.github.lessjava.types.ast.ASTConditional;
+import com.github.lessjava.types.ast.ASTContinue;
+import com.github.lessjava.types.ast.ASTExpression;
+import com.github.lessjava.types.ast.ASTForLoop;
+import com.github.lessjava.types.ast.ASTFunction;
+import com.github.lessjava.types.ast.ASTFunctionCall;
+import com.github.lessjava.types.ast.ASTGlobalAssignment;
+import com.github.lessjava.types.ast.ASTLiteral;
+import com.github.lessjava.types.ast.ASTNode;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.types.ast.ASTReturn;
+import com.github.lessjava.types.ast.ASTStatement;
+import com.github.lessjava.types.ast.ASTTest;
+import com.github.lessjava.types.ast.ASTUnaryExpr;
+import com.github.lessjava.types.ast.ASTUnaryExpr.UnaryOp;
+import com.github.lessjava.types.ast.ASTVariable;
+import com.github.lessjava.types.ast.ASTVoidAssignment;
+import com.github.lessjava.types.ast.ASTVoidFunctionCall;
+import com.github.lessjava.types.ast.ASTWhileLoop;
+import com.github.lessjava.types.inference.HMType;
+import com.github.lessjava.types.inference.impl.HMTypeBase;
+import com.github.lessjava.visitor.LJDefaultASTVisitor;
+
+/**
+ * Alternative to {@link LJGenerateJava} that writes Main.class directly instead
+ * of Main.java, so javac doesn't have to run. The class behaves like the one
+ * javac compiles from LJGenerateJava's output: values have the same (boxed or
+ * primitive) Java types, and operators, conversions and calls follow the Java
+ * semantics of the generated source.
+ *
+ * Code is attributed to the lines of the generated Main.java, as javac would,
+ * so stack traces and failed tests point at the same lines either way.
+ *
+ * Supported: globals, functions, main and tests whose values are numbers,
+ * booleans or strings; operators, conditionals, while loops, counting for
+ * loops, break, continue and return; calls to the program's functions and to
+ * print, println, printf, format and the read functions.
+ *
+ * Not supported: classes (including their methods, attributes and
+ * constructors), collections (list, set and map literals, indexing, for loops
+ * over a collection and collection methods), values whose type is a type
+ * variable, and the other library functions. For these an
+ * {@link UnsupportedOperationException} naming the construct is thrown, and the
+ * program goes through LJGenerateJava and javac instead. Which programs of
+ * tests/ fall back is recorded by {@code ./dotests.sh -m bytecode}.
+ */
+public class LJGenerateBytecode extends LJDefaultASTVisitor {
+    private static final String MAIN = "Main";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String STRING = "Ljava/lang/String;";
+
+    private static final String IO = "wrappers/LJIO";
+    private static final String ASSERT = "org/junit/Assert";
+
+    // Static type of each library function call in the generated source
+    private static final Map<String, String> libraryMethods = new HashMap<>();
+
+    // Library functions taking a format string and any number of values
+    private static final Map<String, String> formatMethods = new HashMap<>();
+
+    static {
+        formatMethods.put("format", "wrappers/LJString");
+        formatMethods.put("printf", IO);
+
+        libraryMethods.put("print", "(Ljava/lang/Object;)V");
+        libraryMethods.put("println", "(Ljava/lang/Object;)V");
+        libraryMethods.put("readInt", "()I");
+        libraryMethods.put("readDouble", "()D");
+        libraryMethods.put("readChar", "()Ljava/lang/String;");
+        libraryMethods.put("readWord", "()Ljava/lang/String;");
+        libraryMethods.put("readLine", "()Ljava/lang/String;");
+    }
+
+    private final CompilationContext context;
+    private final Map<ASTNode, Integer> lineNumbers;
+    private final ClassFile classFile = new ClassFile(MAIN);
+
+    private final List<ASTGlobalAssignment> globals = new ArrayList<>();
+    private final Map<String, String> globalTypes = new HashMap<>();
+    private final List<ASTFunction> functions = new ArrayList<>();
+    private final List<ASTTest> tests = new ArrayList<>();
+
+    // Emitted functions by name
+    private final Map<String, List<ASTFunction>> methods = new HashMap<>();
+
+    private byte[] bytes;
+
+    // State of the method being generated
+    private Code code;
+    private String returnType;
+    private Map<String, Integer> locals;
+    private Map<String, String> localTypes;
+    private final Map<ASTForLoop, Integer> loopVariables = new HashMap<>();
+
+    // For loops whose variable is in scope, innermost first
+    private final Deque<ASTForLoop> scopes = new ArrayDeque<>();
+    private final Deque<Label> breakLabels = new ArrayDeque<>();
+    private final Deque<Label> continueLabels = new ArrayDeque<>();
+
+    /**
+     * @param lineNumbers
+     *            Lines of Main.java the statements were generated on (see
+     *            {@link LJGenerateJava#getLineNumbers()})
+     */
+    public LJGenerateBytecode(CompilationContext context, Map<ASTNode, Integer> lineNumbers) {
+        this.context = context;
+        this.lineNumbers = lineNumbers;
+    }
+
+    /**
+     * @return Main.class, once the program has been visited
+     */
+    public byte[] getClassFile() {
+        return bytes;
+    }
+
+    @Override
+    public void preVisit(ASTProgram node) {
+        context.functionInstances.index(node);
+    }
+
+    @Override
+    public void preVisit(ASTGlobalAssignment node) {
+        globals.add(node);
+    }
+
+    @Override
+    public void preVisit(ASTClass node) {
+        if (!context.libraryClasses.contains(node)) {
+            throw new UnsupportedOperationException("class " + node.signature.className);
+        }
+    }
+
+    @Override
+    public void preVisit(ASTFunction node) {
+        if (context.libraryFunctions.contains(node) || !node.concrete) {
+            return;
+        }
+
+        // Instances with the same parameters are only emitted once, as by
+        // LJGenerateJava
+        if (context.functionInstances.get(node) != node) {
+            return;
+        }
+
+        if (node.name.equals("main") && !node.parameters.isEmpty()) {
+            throw new UnsupportedOperationException("main with parameters");
+        }
+
+        methods.computeIfAbsent(node.name, k -> new ArrayList<>()).add(node);
+        functions.add(node);
+    }
+
+    @Override
+    public void preVisit(ASTTest node) {
+        tests.add(node);
+    }
+
+    @Override
+    public void postVisit(ASTProgram node) {
+        for (ASTGlobalAssignment g : globals) {
+            String type = descriptor(g.assignment.type);
+
+            classFile.addField(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC | ClassFile.ACC_FINAL,
+                    g.assignment.variable.name, type);
+            globalTypes.put(g.assignment.variable.name, type);
+        }
+
+        generateConstructor();
+
+        if (!globals.isEmpty()) {
+            generateStaticInitializer();
+        }
+
+        for (ASTFunction f : functions) {
+            generateFunction(f);
+        }
+
+        for (int i = 0; i < tests.size(); i++) {
+            generateTest(tests.get(i), i);
+        }
+
+        bytes = classFile.toByteArray();
+    }
+
+    private void generateConstructor() {
+        startMethod("V");
+        code.newLocal("L" + MAIN + ";");
+
+        code.load(0);
+        code.invokeSpecial("java/lang/Object", "<init>", "()V");
+        code.op(Code.RETURN);
+
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", code, null);
+    }
+
+    private void generateStaticInitializer() {
+        startMethod("V");
+
+        for (ASTGlobalAssignment g : globals) {
+            String name = g.assignment.variable.name;
+
+            line(g);
+            convert(expression(g.assignment.value), globalTypes.get(name));
+            code.putStatic(MAIN, name, globalTypes.get(name));
+        }
+
+        code.op(Code.RETURN);
+
+        classFile.addMethod(ClassFile.ACC_STATIC, "<clinit>", "()V", code, null);
+    }
+
+    private void generateFunction(ASTFunction node) {
+        String descriptor = methodDescriptor(node);
+
+        startMethod(descriptor.substring(descriptor.indexOf(')') + 1));
+
+        if (node.name.equals("main")) {
+            code.newLocal("[" + STRING);
+        }
+
+        for (Parameter p : node.parameters) {
+            declareLocal(p.name, descriptor(p.type));
+        }
+
+        // Like the declarations LJGenerateJava puts at the top of the function,
+        // but initialized so that every frame has the same locals
+        List<String> declared = new ArrayList<>();
+        Map<String, String> declaredTypes = new LinkedHashMap<>();
+
+        node.body.traverse(new LJDefaultASTVisitor() {
+            @Override
+            public void preVisit(ASTAssignment assignment) {
+                String name = assignment.variable.name;
+
+                if (!locals.containsKey(name) && !declaredTypes.containsKey(name)) {
+                    declared.add(name);
+                    declaredTypes.put(name, descriptor(assignment.variable.type));
+                }
+            }
+
+            @Override
+            public void preVisit(ASTForLoop loop) {
+                loopVariables.put(loop, code.newLocal(descriptor(HMTypeBase.INT)));
+            }
+        });
+
+        for (String name : declared) {
+            declareLocal(name, declaredTypes.get(name));
+        }
+
+        for (int slot : loopVariables.values()) {
+            initialize(slot, descriptor(HMTypeBase.INT));
+        }
+        for (String name : declared) {
+            initialize(locals.get(name), localTypes.get(name));
+        }
+
+        block(node.body);
+
+        if (code.isReachable()) {
+            if (!returnType.equals("V")) {
+                throw new UnsupportedOperationException("missing return in " + node.name);
+            }
+
+            code.op(Code.RETURN);
+        }
+
+        classFile.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, node.name, descriptor, code, null);
+    }
+
+    private void generateTest(ASTTest node, int index) {
+        startMethod("V");
+        code.newLocal("L" + MAIN + ";");
+
+        line(node);
+        if (node.expr instanceof ASTBinaryExpr && !(node.expr instanceof ASTAssignment)
+                && ((ASTBinaryExpr) node.expr).operator == BinOp.EQ) {
+            ASTBinaryExpr expr = (ASTBinaryExpr) node.expr;
+
+            // assertEquals(Object, Object), expected value first
+            assertArgument(expr.rightChild);
+            assertArgument(expr.leftChild);
+            code.invokeStatic(ASSERT, "assertEquals", "(" + OBJECT + OBJECT + ")V");
+        } else {
+            convert(expression(node.expr), "Z");
+            code.invokeStatic(ASSERT, "assertTrue", "(Z)V");
+        }
+
+        code.op(Code.RETURN);
+
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "test" + index, "()V", code, "Lorg/junit/Test;");
+    }
+
+    /**
+     * Unboxed operands are cast to Object by LJGenerateJava; anything else
+     * primitive would make the assertEquals call ambiguous
+     */
+    private void assertArgument(ASTExpression expr) {
+        if (isPrimitive(expressionType(expr)) && !expr.isUnboxed()) {
+            throw new UnsupportedOperationException("ambiguous assertEquals");
+        }
+
+        boxedOperand(expr);
+    }
+
+    private void startMethod(String returnType) {
+        this.code = new Code(classFile);
+        this.returnType = returnType;
+        this.locals = new HashMap<>();
+        this.localTypes = new HashMap<>();
+        this.loopVariables.clear();
+    }
+
+    /**
+     * Attributes the code that follows to the line the node was generated on
+     */
+    private void line(ASTNode node) {
+        Integer line = lineNumbers.get(node);
+
+        if (line != null) {
+            code.line(line);
+        }
+    }
+
+    private void declareLocal(String name, String type) {
+        if (type.equals("V")) {
+            throw new UnsupportedOperationException("void variable " + name);
+        }
+
+        locals.put(name, code.newLocal(type));
+        localTypes.put(name, type);
+    }
+
+    private void initialize(int slot, String type) {
+        if (type.equals("D")) {
+            code.pushDouble(0);
+        } else if (isPrimitive(type)) {
+            code.pushInt(0);
+        } else {
+            code.op(Code.ACONST_NULL);
+        }
+
+        code.store(slot);
+    }
+
+    // Statements
+
+    private void block(ASTBlock block) {
+        for (ASTStatement s : block.statements) {
+            if (!code.isReachable()) {
+                throw new UnsupportedOperationException("unreachable statement");
+            }
+
+            statement(s);
+        }
+    }
+
+    private void statement(ASTStatement node) {
+        line(node);
+
+        if (node instanceof ASTVoidAssignment) {
+            assignment(((ASTVoidAssignment) node).assignment);
+        } else if (node instanceof ASTVoidFunctionCall) {
+            String type = expression(((ASTVoidFunctionCall) node).functionCall);
+
+            if (!type.equals("V")) {
+                code.op(type.equals("D") ? Code.POP2 : Code.POP);
+            }
+        } else if (node instanceof ASTConditional) {
+            conditional((ASTConditional) node);
+        } else if (node instanceof ASTWhileLoop) {
+            whileLoop((ASTWhileLoop) node);
+        } else if (node instanceof ASTForLoop) {
+            forLoop((ASTForLoop) node);
+        } else if (node instanceof ASTReturn) {
+            returnStatement((ASTReturn) node);
+        } else if (node instanceof ASTBreak) {
+            jumpOut(breakLabels);
+        } else if (node instanceof ASTContinue) {
+            jumpOut(continueLabels);
+        } else {
+            throw new UnsupportedOperationException(node.getClass().getSimpleName());
+        }
+    }
+
+    private void assignment(ASTAssignment node) {
+        String type = assignmentType(node);
+
+        convert(expression(node.value), type);
+        code.store(locals.get(node.variable.name));
+    }
+
+    /**
+     * Assignment used as a value, e.g. return a = b
+     */
+    private String assignmentExpression(ASTAssignment node) {
+        String type = assignmentType(node);
+
+        convert(expression(node.value), type);
+        code.op(type.equals("D") ? Code.DUP2 : Code.DUP);
+        code.store(locals.get(node.variable.name));
+
+        return type;
+    }
+
+    /**
+     * Assignments in functions are to the function's locals
+     */
+    private String assignmentType(ASTAssignment node) {
+        if (node.memberAccess != null || node.variable.index != null) {
+            throw new UnsupportedOperationException("assignment to " + node);
+        }
+
+        if (!locals.containsKey(node.variable.name) || loopVariableInScope(node.variable.name) != null) {
+            throw new UnsupportedOperationException("assignment to " + node.variable.name);
+        }
+
+        return localTypes.get(node.variable.name);
+    }
+
+    private void conditional(ASTConditional node) {
+        Label elseLabel = code.newLabel();
+        Label end = code.newLabel();
+
+        convert(expression(node.condition), "Z");
+        code.jump(Code.IFEQ, node.hasElseBlock() ? elseLabel : end);
+
+        block(node.ifBlock);
+
+        if (node.hasElseBlock()) {
+            if (code.isReachable()) {
+                code.jump(Code.GOTO, end);
+            }
+
+            code.mark(elseLabel);
+            block(node.elseBlock);
+        }
+
+        code.mark(end);
+    }
+
+    private void whileLoop(ASTWhileLoop node) {
+        Label head = code.newLabel();
+        Label end = code.newLabel();
+
+        code.mark(head);
+        convert(expression(node.guard), "Z");
+        code.jump(Code.IFEQ, end);
+
+        loopBody(node.body, end, head);
+
+        if (code.isReachable()) {
+            code.jump(Code.GOTO, head);
+        }
+
+        code.mark(end);
+    }
+
+    /**
+     * for (T var = lower; var < upper; var++), with upper evaluated on every
+     * iteration
+     */
+    private void forLoop(ASTForLoop node) {
+        if (node.lowerBound == null) {
+            throw new UnsupportedOperationException("for loop over a collection");
+        }
+
+        int slot = loopVariables.get(node);
+        String type = descriptor(HMTypeBase.INT);
+
+        Label head = code.newLabel();
+        Label next = code.newLabel();
+        Label end = code.newLabel();
+
+        convert(expression(node.lowerBound), type);
+        code.store(slot);
+
+        scopes.push(node);
+
+        code.mark(head);
+        code.load(slot);
+        String comparison = numeric(type, expressionType(node.upperBound));
+        convert(type, comparison);
+        convert(expression(node.upperBound), comparison);
+        compareAndJump(BinOp.LT, comparison, end, false);
+
+        loopBody(node.block, end, next);
+
+        code.mark(next);
+        if (code.isReachable()) {
+            // The increment is on the line of the loop
+            line(node);
+
+            if (type.equals("I")) {
+                code.iinc(slot, 1);
+            } else {
+                code.load(slot);
+                convert(type, "I");
+                code.pushInt(1);
+                code.op(Code.IADD);
+                convert("I", type);
+                code.store(slot);
+            }
+
+            code.jump(Code.GOTO, head);
+        }
+
+        scopes.pop();
+
+        code.mark(end);
+    }
+
+    private ASTForLoop loopVariableInScope(String name) {
+        for (ASTForLoop loop : scopes) {
+            if (loop.var.name.equals(name)) {
+                return loop;
+            }
+        }
+
+        return null;
+    }
+
+    private void loopBody(ASTBlock body, Label breakLabel, Label continueLabel) {
+        breakLabels.push(breakLabel);
+        continueLabels.push(continueLabel);
+
+        block(body);
+
+        breakLabels.pop();
+        continueLabels.pop();
+    }
+
+    private void jumpOut(Deque<Label> labels) {
+        if (labels.isEmpty()) {
+            throw new UnsupportedOperationException("break or continue outside of a loop");
+        }
+
+        code.jump(Code.GOTO, labels.peek());
+    }
+
+    private void returnStatement(ASTReturn node) {
+        if (!node.hasValue()) {
+            if (!returnType.equals("V")) {
+                throw new UnsupportedOperationException("return without a value");
+            }
+
+            code.op(Code.RETURN);
+            return;
+        }
+
+        if (returnType.equals("V")) {
+            throw new UnsupportedOperationException("return with a value");
+        }
+
+        convert(expression(node.value), returnType);
+
+        switch (returnType) {
+            case "I":
+            case "Z":
+                code.op(Code.IRETURN);
+                break;
+            case "D":
+                code.op(Code.DRETURN);
+                break;
+            default:
+                code.op(Code.ARETURN);
+        }
+    }
+
+    // Expressions
+
+    /**
+     * Emits an expression
+     *
+     * @return Java type of the expression in the generated source
+     */
+    private String expression(ASTExpression node) {
+        if (node instanceof ASTLiteral) {
+            return literal((ASTLiteral) node);
+        } else if (node instanceof ASTVariable) {
+            return variable((ASTVariable) node);
+        } else if (node instanceof ASTAssignment) {
+            return assignmentExpression((ASTAssignment) node);
+        } else if (node instanceof ASTBinaryExpr) {
+            return binary((ASTBinaryExpr) node);
+        } else if (node instanceof ASTUnaryExpr) {
+            return unary((ASTUnaryExpr) node);
+        } else if (node instanceof ASTFunctionCall) {
+            return call((ASTFunctionCall) node);
+        }
+
+        throw new UnsupportedOperationException(node.getClass().getSimpleName());
+    }
+
+    /**
+     * Java type of an expression, without emitting it
+     */
+    private String expressionType(ASTExpression node) {
+        if (node instanceof ASTLiteral) {
+            return literalType((ASTLiteral) node);
+        } else if (node instanceof ASTVariable) {
+            return variableType((ASTVariable) node);
+        } else if (node instanceof ASTAssignment) {
+            return assignmentType((ASTAssignment) node);
+        } else if (node instanceof ASTBinaryExpr || node instanceof ASTUnaryExpr) {
+            return descriptor(node.type);
+        } else if (node instanceof ASTFunctionCall) {
+            String descriptor = callDescriptor((ASTFunctionCall) node);
+
+            return descriptor.substring(descriptor.indexOf(')') + 1);
+        }
+
+        throw new UnsupportedOperationException(node.getClass().getSimpleName());
+    }
+
+    private String literal(ASTLiteral node) {
+        String type = literalType(node);
+        Object value = node.value;
+
+        if (value instanceof String) {
+            code.pushString(unescape(ASTLiteral.addEscapeCodes((String) value)));
+            return type;
+        }
+
+        if (value instanceof Boolean) {
+            code.pushInt((Boolean) value ? 1 : 0);
+            convert("Z", type);
+        } else if (value instanceof Integer) {
+            code.pushInt((Integer) value);
+            convert("I", type);
+        } else {
+            code.pushDouble((Double) value);
+            convert("D", type);
+        }
+
+        return type;
+    }
+
+    /**
+     * Unboxed literals have the primitive type of the expression; boxed ones go
+     * through valueOf() of their value's type
+     */
+    private String literalType(ASTLiteral node) {
+        Object value = node.value;
+
+        if (value instanceof String) {
+            return STRING;
+        }
+
+        if (node.isUnboxed()) {
+            return descriptor(node.type);
+        }
+
+        if (value instanceof Boolean) {
+            return box("Z");
+        } else if (value instanceof Integer) {
+            return box("I");
+        } else {
+            return box("D");
+        }
+    }
+
+    private String variable(ASTVariable node) {
+        String type = variableType(node);
+        ASTForLoop loop = loopVariableInScope(node.name);
+
+        if (loop != null) {
+            code.load(loopVariables.get(loop));
+        } else if (locals != null && locals.containsKey(node.name)) {
+            code.load(locals.get(node.name));
+        } else {
+            code.getStatic(MAIN, node.name, type);
+        }
+
+        return type;
+    }
+
+    private String variableType(ASTVariable node) {
+        if (node.index != null) {
+            throw new UnsupportedOperationException("indexed variable " + node.name);
+        }
+
+        if (loopVariableInScope(node.name) != null) {
+            return descriptor(HMTypeBase.INT);
+        } else if (localTypes != null && localTypes.containsKey(node.name)) {
+            return localTypes.get(node.name);
+        } else if (globalTypes.containsKey(node.name)) {
+            return globalTypes.get(node.name);
+        }
+
+        throw new UnsupportedOperationException("variable " + node.name);
+    }
+
+    private String binary(ASTBinaryExpr node) {
+        String resultType = descriptor(node.type);
+        String left = expressionType(node.leftChild);
+        String right = expressionType(node.rightChild);
+        String raw;
+
+        switch (node.operator) {
+            case ADD:
+                if (left.equals(STRING) || right.equals(STRING)) {
+                    raw = concatenation(node, left, right);
+                } else {
+                    raw = arithmetic(node, left, right);
+                }
+                break;
+            case SUB:
+            case MUL:
+            case DIV:
+            case MOD:
+                raw = arithmetic(node, left, right);
+                break;
+            case LT:
+            case GT:
+            case LE:
+            case GE:
+                String comparison = numeric(left, right);
+                operands(node, comparison, comparison);
+                raw = materialize(node.operator, comparison);
+                break;
+            case EQ:
+            case NE:
+                raw = equality(node, left, right);
+                break;
+            case AND:
+            case OR:
+                raw = logical(node);
+                break;
+            default:
+                throw new UnsupportedOperationException("operator " + ASTBinaryExpr.opToString(node.operator));
+        }
+
+        return wrap(raw, resultType);
+    }
+
+    /**
+     * Emits a numeric operation on the operands, widened to a common type
+     *
+     * @return That type
+     */
+    private String arithmetic(ASTBinaryExpr node, String left, String right) {
+        String type = numeric(left, right);
+
+        operands(node, type, type);
+        code.op(arithmetic(node.operator, type));
+
+        return type;
+    }
+
+    /**
+     * Emits both operands, each converted to the given type
+     */
+    private void operands(ASTBinaryExpr node, String leftType, String rightType) {
+        convert(expression(node.leftChild), leftType);
+        convert(expression(node.rightChild), rightType);
+    }
+
+    /**
+     * Emits an operand boxed to an Object, a promoted literal to an Integer as
+     * in the default mode (see {@link ASTLiteral#isPromoted()})
+     */
+    private void boxedOperand(ASTExpression node) {
+        if (node.isUnboxed() && node instanceof ASTLiteral && ((ASTLiteral) node).isPromoted()) {
+            code.pushInt((Integer) ((ASTLiteral) node).value);
+            convert("I", OBJECT);
+        } else {
+            convert(expression(node), OBJECT);
+        }
+    }
+
+    private String concatenation(ASTBinaryExpr node, String left, String right) {
+        expression(node.leftChild);
+        code.invokeStatic("java/lang/String", "valueOf", "(" + valueOfParameter(left) + ")" + STRING);
+        expression(node.rightChild);
+        code.invokeStatic("java/lang/String", "valueOf", "(" + valueOfParameter(right) + ")" + STRING);
+        code.invokeVirtual("java/lang/String", "concat", "(" + STRING + ")" + STRING);
+
+        return STRING;
+    }
+
+    /**
+     * Boxed mode compares with left.equals(right), primitive mode with == when
+     * the equality is primitive, and with Objects.equals otherwise (see
+     * {@link ASTBinaryExpr#isPrimitiveEquality()})
+     */
+    private String equality(ASTBinaryExpr node, String left, String right) {
+        boolean equal = node.operator == BinOp.EQ;
+
+        if (context.primitives) {
+            if (node.isPrimitiveEquality()) {
+                String comparison = unbox(left).equals("Z") && unbox(right).equals("Z") ? "Z"
+                        : numeric(left, right);
+
+                operands(node, comparison, comparison);
+
+                return materialize(node.operator, comparison);
+            }
+
+            boxedOperand(node.leftChild);
+            boxedOperand(node.rightChild);
+            code.invokeStatic("java/util/Objects", "equals", "(" + OBJECT + OBJECT + ")Z");
+        } else {
+            if (isPrimitive(left)) {
+                throw new UnsupportedOperationException("equals() on a primitive");
+            }
+
+            operands(node, left, OBJECT);
+            code.invokeVirtual("java/lang/Object", "equals", "(" + OBJECT + ")Z");
+        }
+
+        if (!equal) {
+            code.pushInt(1);
+            code.op(Code.IXOR);
+        }
+
+        return "Z";
+    }
+
+    private String logical(ASTBinaryExpr node) {
+        Label shortCircuit = code.newLabel();
+        Label end = code.newLabel();
+        int jump = node.operator == BinOp.AND ? Code.IFEQ : Code.IFNE;
+        int shortCircuitValue = node.operator == BinOp.AND ? 0 : 1;
+
+        convert(expression(node.leftChild), "Z");
+        code.jump(jump, shortCircuit);
+        convert(expression(node.rightChild), "Z");
+        code.jump(jump, shortCircuit);
+
+        code.pushInt(1 - shortCircuitValue);
+        code.jump(Code.GOTO, end);
+        code.mark(shortCircuit);
+        code.pushInt(shortCircuitValue);
+        code.mark(end);
+
+        return "Z";
+    }
+
+    /**
+     * Turns a comparison of the two values on the stack into a boolean
+     */
+    private String materialize(BinOp operator, String type) {
+        Label isFalse = code.newLabel();
+        Label end = code.newLabel();
+
+        compareAndJump(operator, type, isFalse, false);
+        code.pushInt(1);
+        code.jump(Code.GOTO, end);
+        code.mark(isFalse);
+        code.pushInt(0);
+        code.mark(end);
+
+        return "Z";
+    }
+
+    /**
+     * Compares the two values on the stack, jumping if the comparison's outcome
+     * is the given one
+     */
+    private void compareAndJump(BinOp operator, String type, Label target, boolean jumpIf) {
+        BinOp op = jumpIf ? operator : negate(operator);
+
+        if (type.equals("D")) {
+            // NaN makes <, <=, > and >= false, as in Java
+            boolean less = operator == BinOp.LT || operator == BinOp.LE;
+            code.op(less ? Code.DCMPG : Code.DCMPL);
+            code.jump(zeroComparison(op), target);
+        } else {
+            code.jump(zeroComparison(op) - Code.IFEQ + Code.IF_ICMPEQ, target);
+        }
+    }
+
+    private String unary(ASTUnaryExpr node) {
+        String resultType = descriptor(node.type);
+        String child = unbox(expressionType(node.child));
+
+        convert(expression(node.child), child);
+
+        if (node.operator == UnaryOp.NOT && child.equals("Z")) {
+            code.pushInt(1);
+            code.op(Code.IXOR);
+        } else if (node.operator == UnaryOp.NEG && child.equals("I")) {
+            code.op(Code.INEG);
+        } else if (node.operator == UnaryOp.NEG && child.equals("D")) {
+            code.op(Code.DNEG);
+        } else {
+            throw new UnsupportedOperationException("operator " + ASTUnaryExpr.opToString(node.operator));
+        }
+
+        return wrap(child, resultType);
+    }
+
+    private String call(ASTFunctionCall node) {
+        String descriptor = callDescriptor(node);
+        List<String> parameters = Code.parameterTypes(descriptor);
+
+        if (methods.containsKey(node.name)) {
+            for (int i = 0; i < node.arguments.size(); i++) {
+                convert(expression(node.arguments.get(i)), parameterType(descriptor, i));
+            }
+
+            code.invokeStatic(MAIN, node.name, descriptor);
+        } else if (formatMethods.containsKey(node.name)) {
+            convert(expression(node.arguments.get(0)), STRING);
+
+            code.pushInt(node.arguments.size() - 1);
+            code.newArray("java/lang/Object");
+
+            for (int i = 1; i < node.arguments.size(); i++) {
+                code.op(Code.DUP);
+                code.pushInt(i - 1);
+                convert(expression(node.arguments.get(i)), OBJECT);
+                code.arrayStore();
+            }
+
+            code.invokeStatic(formatMethods.get(node.name), node.name, descriptor);
+        } else {
+            for (int i = 0; i < parameters.size(); i++) {
+                convert(expression(node.arguments.get(i)), parameterType(descriptor, i));
+            }
+
+            code.invokeStatic(IO, node.name, descriptor);
+        }
+
+        return descriptor.substring(descriptor.indexOf(')') + 1);
+    }
+
+    /**
+     * Functions in Main hide the statically imported library functions of the
+     * same name. Among instances of a function, the one whose parameter types
+     * match the arguments is called.
+     */
+    private String callDescriptor(ASTFunctionCall node) {
+        if (node.isConstructor) {
+            throw new UnsupportedOperationException("constructor " + node.name);
+        }
+
+        List<ASTFunction> overloads = methods.get(node.name);
+
+        if (overloads != null) {
+            List<ASTFunction> candidates = new ArrayList<>();
+
+            for (ASTFunction f : overloads) {
+                if (f.parameters.size() == node.arguments.size() && !f.name.equals("main")) {
+                    candidates.add(f);
+                }
+            }
+
+            if (candidates.size() == 1) {
+                return methodDescriptor(candidates.get(0));
+            }
+
+            for (ASTFunction f : candidates) {
+                String descriptor = methodDescriptor(f);
+                boolean matches = true;
+
+                for (int i = 0; i < node.arguments.size(); i++) {
+                    matches &= expressionType(node.arguments.get(i)).equals(parameterType(descriptor, i));
+                }
+
+                if (matches) {
+                    return descriptor;
+                }
+            }
+
+            throw new UnsupportedOperationException("call to " + node.name);
+        }
+
+        if (formatMethods.containsKey(node.name)) {
+            if (node.arguments.isEmpty() || !expressionType(node.arguments.get(0)).equals(STRING)) {
+                throw new UnsupportedOperationException(node.name + " without a format string");
+            }
+
+            return "(" + STRING + "[" + OBJECT + ")" + (node.name.equals("printf") ? "V" : STRING);
+        }
+
+        String descriptor = libraryMethods.get(node.name);
+
+        if (descriptor == null || Code.parameterTypes(descriptor).size() != node.arguments.size()) {
+            throw new UnsupportedOperationException("call to " + node.name);
+        }
+
+        return descriptor;
+    }
+
+    // Types and conversions
+
+    /**
+     * Java type of a declaration of the given type (see
+     * {@link HMType#toDeclarationString()})
+     */
+    private String descriptor(HMType type) {
+        type = type == null ? null : type.prune();
+
+        if (type instanceof HMTypeBase) {
+            HMTypeBase base = (HMTypeBase) type;
+
+            switch (base.getBaseType()) {
+                case INT:
+                    return base.isPrimitive() ? "I" : box("I");
+                case DOUBLE:
+                    return base.isPrimitive() ? "D" : box("D");
+                case BOOL:
+                    return base.isPrimitive() ? "Z" : box("Z");
+                case STR:
+                    return STRING;
+                default:
+                    return "V";
+            }
+        }
+
+        throw new UnsupportedOperationException("type " + type);
+    }
+
+    private String methodDescriptor(ASTFunction node) {
+        StringBuilder descriptor = new StringBuilder("(");
+
+        if (node.name.equals("main")) {
+            descriptor.append("[" + STRING);
+        }
+
+        for (Parameter p : node.parameters) {
+            descriptor.append(descriptor(p.type));
+        }
+
+        return descriptor.append(")").append(descriptor(node.returnType)).toString();
+    }
+
+    private static String parameterType(String descriptor, int index) {
+        return Code.parameterTypes(descriptor).get(index);
+    }
+
+    /**
+     * Converts the value on the stack like an assignment or method argument
+     * would: boxing, unboxing and widening from int to double
+     */
+    private void convert(String from, String to) {
+        if (from.equals(to)) {
+            return;
+        }
+
+        if (to.equals(OBJECT)) {
+            if (isPrimitive(from)) {
+                boxValue(from);
+            } else if (from.equals("V")) {
+                throw new UnsupportedOperationException("void value");
+            }
+            return;
+        }
+
+        if (isPrimitive(to)) {
+            if (!isPrimitive(from)) {
+                from = unboxValue(from);
+            }
+
+            if (from.equals("I") && to.equals("D")) {
+                code.op(Code.I2D);
+                return;
+            }
+
+            if (!from.equals(to)) {
+                throw new UnsupportedOperationException("conversion from " + from + " to " + to);
+            }
+            return;
+        }
+
+        if (isPrimitive(from) && box(from).equals(to)) {
+            boxValue(from);
+            return;
+        }
+
+        throw new UnsupportedOperationException("conversion from " + from + " to " + to);
+    }
+
+    /**
+     * Converts an operator's result to the type of its expression, like the
+     * valueOf() or (double) that {@link ASTBinaryExpr#wrapPrimitive} adds
+     */
+    private String wrap(String raw, String type) {
+        if (isPrimitive(type) || type.equals(STRING)) {
+            convert(raw, type);
+        } else {
+            convert(raw, unbox(type));
+            boxValue(unbox(type));
+        }
+
+        return type;
+    }
+
+    private void boxValue(String primitive) {
+        code.invokeStatic(internalName(box(primitive)), "valueOf", "(" + primitive + ")" + box(primitive));
+    }
+
+    private String unboxValue(String boxed) {
+        String primitive = unbox(boxed);
+
+        if (primitive.equals(boxed)) {
+            throw new UnsupportedOperationException("unboxing " + boxed);
+        }
+
+        String method = primitive.equals("I") ? "intValue" : primitive.equals("D") ? "doubleValue" : "booleanValue";
+        code.invokeVirtual(internalName(boxed), method, "()" + primitive);
+
+        return primitive;
+    }
+
+    /**
+     * Binary numeric promotion
+     */
+    private String numeric(String left, String right) {
+        left = unbox(left);
+        right = unbox(right);
+
+        if (!isNumber(left) || !isNumber(right)) {
+            throw new UnsupportedOperationException("arithmetic on " + left + " and " + right);
+        }
+
+        return left.equals("D") || right.equals("D") ? "D" : "I";
+    }
+
+    private static String box(String primitive) {
+        switch (primitive) {
+            case "I":
+                return "Ljava/lang/Integer;";
+            case "D":
+                return "Ljava/lang/Double;";
+            case "Z":
+                return "Ljava/lang/Boolean;";
+            default:
+                return primitive;
+        }
+    }
+
+    private static String unbox(String type) {
+        switch (type) {
+            case "Ljava/lang/Integer;":
+                return "I";
+            case "Ljava/lang/Double;":
+                return "D";
+            case "Ljava/lang/Boolean;":
+                return "Z";
+            default:
+                return type;
+        }
+    }
+
+    private static boolean isPrimitive(String type) {
+        return type.equals("I") || type.equals("D") || type.equals("Z");
+    }
+
+    private static boolean isNumber(String type) {
+        return type.equals("I") || type.equals("D");
+    }
+
+    private static String internalName(String descriptor) {
+        return descriptor.substring(1, descriptor.length() - 1);
+    }
+
+    /**
+     * String.valueOf overload javac picks for a string conversion
+     */
+    private static String valueOfParameter(String type) {
+        return isPrimitive(type) ? type : OBJECT;
+    }
+
+    private static int arithmetic(BinOp operator, String type) {
+        int offset = type.equals("D") ? 3 : 0;
+
+        switch (operator) {
+            case ADD:
+                return Code.IADD + offset;
+            case SUB:
+                return Code.ISUB + offset;
+            case MUL:
+                return Code.IMUL + offset;
+            case DIV:
+                return Code.IDIV + offset;
+            default:
+                return Code.IREM + offset;
+        }
+    }
+
+    private static BinOp negate(BinOp operator) {
+        switch (operator) {
+            case EQ:
+                return BinOp.NE;
+            case NE:
+                return BinOp.EQ;
+            case LT:
+                return BinOp.GE;
+            case GE:
+                return BinOp.LT;
+            case GT:
+                return BinOp.LE;
+            default:
+                return BinOp.GT;
+        }
+    }
+
+    /**
+     * if<cond> instruction comparing an int with zero
+     */
+    private static int zeroComparison(BinOp operator) {
+        switch (operator) {
+            case EQ:
+                return Code.IFEQ;
+            case NE:
+                return Code.IFNE;
+            case LT:
+                return Code.IFLT;
+            case GE:
+                return Code.IFGE;
+            case GT:
+                return Code.IFGT;
+            default:
+                return Code.IFLE;
+        }
+    }
+
+    /**
+     * Interprets the escape sequences javac would find in a string literal of
+     * the generated source
+     */
+    private static String unescape(String literal) {
+        StringBuilder s = new StringBuilder();
+
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+
+            char escaped = ++i < literal.length() ? literal.charAt(i) : 'u';
+
+            switch (escaped) {
+                case 'n':
+                    s.append('\n');
+                    break;
+                case 't':
+                    s.append('\t');
+                    break;
+                case 'r':
+                    s.append('\r');
+                    break;
+                case 'b':
+                    s.append('\b');
+                    break;
+                case 'f':
+                    s.append('\f');
+                    break;
+                case '"':
+                case '\'':
+                case '\\':
+                    s.append(escaped);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("escape sequence \\" + escaped);
+            }
+        }
+
+        return s.toString();
+    }
+}
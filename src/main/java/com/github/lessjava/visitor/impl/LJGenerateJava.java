@@ -1,20 +1,22 @@
 package com.github.lessjava.visitor.impl;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.github.lessjava.types.ast.ASTAbstractFunction;
+import com.github.lessjava.CompilationContext;
+import com.github.lessjava.types.GenericFunctions;
 import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
 import com.github.lessjava.types.ast.ASTAssignment;
 import com.github.lessjava.types.ast.ASTAttribute;
@@ -26,6 +28,7 @@ import com.github.lessjava.types.ast.ASTClassBlock;
 import com.github.lessjava.types.ast.ASTClassSignature;
 import com.github.lessjava.types.ast.ASTConditional;
 import com.github.lessjava.types.ast.ASTContinue;
+import com.github.lessjava.types.ast.ASTExpression;
 import com.github.lessjava.types.ast.ASTForLoop;
 import com.github.lessjava.types.ast.ASTFunction;
 import com.github.lessjava.types.ast.ASTGlobalAssignment;
@@ -45,16 +48,8 @@ import com.github.lessjava.visitor.LJDefaultASTVisitor;
 
 public class LJGenerateJava extends LJDefaultASTVisitor {
 
-    // Create generated directory if it doesn't exist
-    static {
-        try {
-            Files.createDirectories(Paths.get("generated"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    public static Path mainFile = Paths.get("generated/Main.java");
+    private final CompilationContext context;
+    private final Path mainFile;
 
     private static String[] imports = {"import static org.junit.Assert.*;",
                                        "import static wrappers.LJString.*;",
@@ -66,13 +61,31 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
                                        "",
                                        "import wrappers.*;"};
 
-    private List<String> lines = new ArrayList<>();
-    private List<String> globalLines = new ArrayList<>();
-    private List<String> testLines = new ArrayList<>();
-    private List<String> functionLines = new ArrayList<>();
-    private List<String> classLines = new ArrayList<>();
-    private List<String> testDeclarationLines = new ArrayList<>();
+    private static final String NEWLINE = System.lineSeparator();
+
+    // Sections of Main.java, in the order they are written out
+    private final StringBuilder header = new StringBuilder();
+    private final StringBuilder globals = new StringBuilder();
+    private final StringBuilder functions = new StringBuilder();
+    private final StringBuilder tests = new StringBuilder();
+    private final StringBuilder classes = new StringBuilder();
+
+    // Lines of the current function; its local declarations are spliced in
+    // after its first two lines (signature and opening brace) once it's done
+    private final StringBuilder function = new StringBuilder();
+    private int functionLineCount;
+    private int declarationsStart;
     private Set<String> functionDeclarationLines = new HashSet<>();
+
+    // Where the first line of each statement, test or global went: the index
+    // of its section and its offset there. Offsets in the current function are
+    // kept apart until the function is appended to its section.
+    private final Map<ASTNode, int[]> positions = new IdentityHashMap<>();
+    private final Map<ASTNode, Integer> functionPositions = new IdentityHashMap<>();
+
+    // Line being assembled
+    private final StringBuilder line = new StringBuilder();
+
     private Set<String> functionVariables = new HashSet<>();
     private int indent = 1;
     private int testIndex = 0;
@@ -82,28 +95,102 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
 
     private ASTMethod currentMethod;
 
-    private Map<String, List<ASTAbstractFunction>> emittedIdFunctionMap = new HashMap<>();
+    private final GenericFunctions genericFunctions = new GenericFunctions();
+    private final Set<ASTFunction> emittedGenerics = new HashSet<>();
+
+    /**
+     * @param outputDirectory
+     *            Directory Main.java is written to; created if it doesn't exist.
+     *            If null, the source is only kept in memory (see
+     *            {@link #getSource()}).
+     */
+    public LJGenerateJava(CompilationContext context, Path outputDirectory) {
+        this.context = context;
+        this.mainFile = outputDirectory == null ? null : outputDirectory.resolve("Main.java");
+    }
+
+    /**
+     * @return The generated Main.java, once the program has been visited
+     */
+    public String getSource() {
+        StringBuilder source = new StringBuilder();
+
+        for (CharSequence section : sections()) {
+            source.append(section);
+        }
+
+        return source.toString();
+    }
+
+    private List<CharSequence> sections() {
+        return Arrays.asList(header, globals, functions, tests, classes, "}" + NEWLINE);
+    }
+
+    /**
+     * @return The line of Main.java each emitted statement, global and test
+     *         (its assertion) starts on, once the program has been visited
+     */
+    public Map<ASTNode, Integer> getLineNumbers() {
+        List<CharSequence> sections = sections();
+        int[] sectionStarts = new int[sections.size()];
+        List<Integer> lineStarts = new ArrayList<>();
+        int offset = 0;
+
+        lineStarts.add(0);
+        for (int i = 0; i < sections.size(); i++) {
+            CharSequence section = sections.get(i);
+
+            sectionStarts[i] = offset;
+            for (int j = 0; j < section.length(); j++) {
+                if (section.charAt(j) == '\n') {
+                    lineStarts.add(offset + j + 1);
+                }
+            }
+            offset += section.length();
+        }
+
+        Map<ASTNode, Integer> lineNumbers = new IdentityHashMap<>();
+
+        positions.forEach((node, position) -> {
+            int line = Collections.binarySearch(lineStarts, sectionStarts[position[0]] + position[1]);
+
+            // Lines are numbered from 1
+            lineNumbers.put(node, line >= 0 ? line + 1 : -line - 1);
+        });
+
+        return lineNumbers;
+    }
 
     @Override
     public void preVisit(ASTProgram node) {
         this.currentFunction = null;
 
-        lines.addAll(Arrays.asList(imports));
+        context.functionInstances.index(node);
+        genericFunctions.index(node, context.functionInstances);
+        emittedGenerics.clear();
 
-        lines.add("public class Main");
-        lines.add("{");
+        for (String i : imports) {
+            header.append(i).append(NEWLINE);
+        }
+
+        header.append("public class Main").append(NEWLINE);
+        header.append("{").append(NEWLINE);
     }
 
     @Override
     public void postVisit(ASTProgram node) {
-        lines.addAll(imports.length + 2, globalLines);
-        lines.addAll(testDeclarationLines);
-        lines.addAll(testLines);
-        lines.addAll(classLines);
-        lines.add("}");
+        if (mainFile == null) {
+            return;
+        }
 
         try {
-            Files.write(mainFile, lines, Charset.forName("UTF-8"));
+            Files.createDirectories(mainFile.getParent());
+
+            try (Writer out = Files.newBufferedWriter(mainFile, StandardCharsets.UTF_8)) {
+                for (CharSequence section : sections()) {
+                    out.append(section);
+                }
+            }
         } catch (IOException ioe) {
             ioe.printStackTrace();
         }
@@ -113,7 +200,9 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
     public void preVisit(ASTFunction node) {
         this.currentFunction = node;
 
-        this.functionLines.clear();
+        this.function.setLength(0);
+        this.functionLineCount = 0;
+        this.functionPositions.clear();
         this.functionVariables.clear();
         this.functionDeclarationLines.clear();
 
@@ -127,52 +216,37 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
             return;
         }
 
-        // TODO: refactor, this is a hack to prevent duplicate functions/methods
-        List<ASTAbstractFunction> functions = null;
-
-        if (node.getParent() instanceof ASTMethod) {
-            ASTMethod parent = (ASTMethod) node.getParent();
-            functions = emittedIdFunctionMap.get(parent.getIdentifyingString());
-        } else {
-            functions = emittedIdFunctionMap.get(node.getIdentifyingString());
-        }
-
-        if (functions != null && !functions.isEmpty()) {
-            for (ASTAbstractFunction f: functions) {
-                if (f.parameters.equals(node.parameters)) {
-                    return;
-                }
-            }
+        if (!isEmitted(node)) {
+            return;
         }
-        // TODO: end hack
 
         // Add parameters so they don't get declared
         this.functionVariables.addAll(node.parameters.stream()
                                                      .map(Parameter::getName)
                                                      .collect(Collectors.toList()));
 
-        String line = "";
+        String returnType = context.nameClassMap.containsKey(node.name) ? "" : node.returnType.toDeclarationString() + " ";
+        String name = node.name;
+        String scope = this.currentMethod == null ? ASTClass.PUBLIC : this.currentMethod.scope;
+        String _static = this.currentMethod == null ? "static" : "";
+        String typeParameters = genericFunctions.getTypeParameters(node);
 
-        String parameterString;
+        StringBuilder signature = line().append(scope).append(' ').append(_static).append(' ').append(typeParameters)
+                .append(returnType).append(name).append('(');
 
         // Inject main arguments
         if (node.name.equals("main")) {
-            parameterString = "String[] args";
+            signature.append("String[] args");
         } else {
-            parameterString = node.parameters.toString().substring(1,
-                    node.parameters.toString().length() - 1);
+            for (int i = 0; i < node.parameters.size(); i++) {
+                if (i > 0) {
+                    signature.append(", ");
+                }
+                signature.append(node.parameters.get(i));
+            }
         }
 
-        String returnType = ASTClass.nameClassMap.containsKey(node.name) ? "" : node.returnType.toString() + " ";
-        String name = node.name;
-        String scope = this.currentMethod == null ? ASTClass.PUBLIC : this.currentMethod.scope;
-        String _static = this.currentMethod == null ? "static" : "";
-
-        String signature = String.format("%s %s %s%s(%s)", scope, _static, returnType, name, parameterString);
-
-        line = String.format("%s", signature);
-
-        addLine(node, line);
+        addLine(node, signature.append(')'));
     }
 
     @Override
@@ -189,39 +263,30 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
             return;
         }
 
-        // TODO: refactor, this is a hack to prevent duplicate functions/methods
-        List<ASTAbstractFunction> functions = null;
-        ASTMethod parent = null;
-
-        if (node.getParent() instanceof ASTMethod) {
-            parent = (ASTMethod) node.getParent();
-            functions = emittedIdFunctionMap.get(parent.getIdentifyingString());
-        } else {
-            functions = emittedIdFunctionMap.get(node.getIdentifyingString());
-        }
+        if (!isEmitted(node)) {
+            ASTFunction generic = genericFunctions.get(node);
 
-        if (functions != null && !functions.isEmpty()) {
-            for (ASTAbstractFunction f: functions) {
-                if (f.parameters.equals(node.parameters)) {
-                    return;
-                }
+            // Emitted in place of the first of its instances
+            if (generic != null && emittedGenerics.add(generic)) {
+                generic.traverse(this);
             }
-        }
 
-        if (parent != null) {
-            emittedIdFunctionMap.computeIfAbsent(parent.getIdentifyingString(), k->new ArrayList<>()).add(node);
-        } else {
-            emittedIdFunctionMap.computeIfAbsent(node.getIdentifyingString(), k->new ArrayList<>()).add(node);
+            return;
         }
-        // TODO: end hack
 
-        try {
-            functionLines.addAll(2, functionDeclarationLines);
-        } catch(IndexOutOfBoundsException ioobe) {
-            functionLines.addAll(functionDeclarationLines);
+        int split = functionLineCount >= 2 ? declarationsStart : function.length();
+        int start = functions.length();
+
+        functions.append(function, 0, split);
+        for (String declaration : functionDeclarationLines) {
+            functions.append(declaration).append(NEWLINE);
         }
+        int shift = functions.length() - start - split;
+        functions.append(function, split, function.length());
 
-        lines.addAll(functionLines);
+        int section = sections().indexOf(functions);
+        functionPositions.forEach((n, offset) -> positions.put(n,
+                new int[] {section, start + offset + (offset >= split ? shift : 0)}));
     }
 
     @Override
@@ -251,16 +316,14 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
         String className = node.className;
         String superName = node.superName;
 
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = line();
 
-        sb.append(String.format("private static class %s", className));
+        sb.append("private static class ").append(className);
         if (superName != null) {
-            sb.append(String.format(" extends %s", superName));
+            sb.append(" extends ").append(superName);
         }
 
-        String line = sb.toString();
-
-        addLine(node, line);
+        addLine(node, sb);
     }
 
     @Override
@@ -270,9 +333,7 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
             return;
         }
 
-        String line = "{";
-
-        addLine(node, line);
+        addLine(node, "{");
 
         indent++;
     }
@@ -286,15 +347,15 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
 
         indent--;
 
-        String line = "}";
-        addLine(node, line);
+        addLine(node, "}");
     }
 
     @Override
     public void preVisit(ASTAttribute node) {
-        String line = String.format("%s", node);
+        StringBuilder line = line().append(node.scope).append(' ')
+                .append(node.assignment.type.toDeclarationString()).append(' ');
 
-        addLine(node, line);
+        addLine(node, node.assignment.appendTo(line).append(';'));
     }
 
     @Override
@@ -309,9 +370,10 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
 
     @Override
     public void preVisit(ASTGlobalAssignment node) {
-        String line = String.format("public static final %s %s;", node.assignment.type, node.assignment.toString());
+        StringBuilder line = line().append("public static final ")
+                .append(node.assignment.type.toDeclarationString()).append(' ');
 
-        addLine(node, line);
+        addLine(node, node.assignment.appendTo(line).append(';'));
     }
 
     @Override
@@ -323,8 +385,7 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
             return;
         }
 
-        String line = String.format("{");
-        addLine(node, line);
+        addLine(node, "{");
         indent++;
     }
 
@@ -338,20 +399,12 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
         }
 
         indent--;
-        String line = String.format("}");
-        addLine(node, line);
-
-        if (parent != null) {
-        }
+        addLine(node, "}");
     }
 
     @Override
     public void preVisit(ASTVoidAssignment node) {
-        String line;
-
-        line = String.format("%s;", node.assignment.toString());
-
-        addLine(node, line);
+        addLine(node, node.assignment.appendTo(line()).append(';'));
     }
 
     @Override
@@ -365,9 +418,9 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
 
         // Emit declarations
         if (!functionVariables.contains(node.variable.name)) {
-            String spaces = (indent == 0) ? "" : String.format("%" + (indent * 4) + "s", "");
-
-            String declaration = String.format("%s%s %s;", spaces, node.variable.type, node.variable.name);
+            String declaration = appendIndentation(new StringBuilder())
+                    .append(node.variable.type.toDeclarationString()).append(' ').append(node.variable.name).append(';')
+                    .toString();
 
             functionVariables.add(node.variable.name);
             functionDeclarationLines.add(declaration);
@@ -376,124 +429,158 @@ public class LJGenerateJava extends LJDefaultASTVisitor {
 
     @Override
     public void preVisit(ASTConditional node) {
-        String line = String.format("if (%s)", node.condition);
-        addLine(node, line);
+        addLine(node, node.condition.appendTo(line().append("if (")).append(')'));
     }
 
     @Override
     public void inVisit(ASTConditional node) {
-        String line = String.format("else ", node.condition);
-        addLine(node, line);
+        addLine(node, "else ");
     }
 
     @Override
     public void preVisit(ASTWhileLoop node) {
-        String line = String.format("while (%s)", node.guard);
-        addLine(node, line);
+        addLine(node, node.guard.appendTo(line().append("while (")).append(')'));
     }
 
     @Override
     public void preVisit(ASTForLoop node) {
+        // Prototypes aren't emitted, and their types aren't inferred
+        if (this.currentFunction != null && !this.currentFunction.concrete) {
+            return;
+        }
+
         if (node.lowerBound == null) {
             HMType cType = ((HMTypeCollection) node.upperBound.type).elementType;
-            String line = String.format("for (%s i : %s)", cType, node.upperBound);
-            addLine(node, line);
+            StringBuilder line = line().append("for (").append(cType.toDeclarationString()).append(" i : ");
+            addLine(node, node.upperBound.appendTo(line).append(')'));
         } else {
-            String lowerBound = node.lowerBound == null ? "0" : node.lowerBound.toString();
-            String upperBound = node.upperBound.toString();
-            String line = String.format("for (Integer %s = %s; %s < %s; %s++)", node.var, lowerBound, node.var,
-                    upperBound, node.var);
-            addLine(node, line);
+            StringBuilder line = line().append("for (").append(HMTypeBase.INT.toDeclarationString()).append(' ');
+            node.lowerBound.appendTo(node.var.appendTo(line).append(" = ")).append("; ");
+            node.upperBound.appendTo(node.var.appendTo(line).append(" < ")).append("; ");
+            addLine(node, node.var.appendTo(line).append("++)"));
         }
     }
 
     @Override
     public void preVisit(ASTReturn node) {
-        String line = String.format("return %s;", node.value);
-        addLine(node, line);
+        addLine(node, node.value.appendTo(line().append("return ")).append(';'));
     }
 
     @Override
     public void preVisit(ASTBreak node) {
-        String line = String.format("break;", node);
-        addLine(node, line);
+        addLine(node, "break;");
     }
 
     @Override
     public void preVisit(ASTContinue node) {
-        String line = String.format("continue;", node);
-        addLine(node, line);
+        addLine(node, "continue;");
     }
 
     @Override
     public void preVisit(ASTTest node) {
-        String line = String.format("@Test");
-        addLine(node, line);
+        addLine(node, "@Test");
+        addLine(node, line().append("public void test").append(testIndex++).append("() {"));
 
-        line = String.format("public void test%d() {", testIndex++, "", node.expr);
-        addLine(node, line);
+        StringBuilder line = line();
 
-        if (node.expr instanceof ASTBinaryExpr) {
-            ASTBinaryExpr expr = (ASTBinaryExpr) node.expr;
+        // Located by its assertion, where it fails
+        positions.remove(node);
 
-            if (expr.operator == ASTBinaryExpr.BinOp.EQ) {
-                line = String.format("%4sassertEquals(%s, %s);", "", expr.rightChild, expr.leftChild);
-            } else {
-                line = String.format("%4sassertTrue(%s);", "", node.expr);
-            }
+        if (node.expr instanceof ASTBinaryExpr && ((ASTBinaryExpr) node.expr).operator == ASTBinaryExpr.BinOp.EQ) {
+            ASTBinaryExpr expr = (ASTBinaryExpr) node.expr;
 
+            appendAssertArgument(line.append("    assertEquals("), expr.rightChild).append(", ");
+            appendAssertArgument(line, expr.leftChild).append(");");
         } else {
-            line = String.format("%4sassertTrue(%s);", "", node.expr);
+            node.expr.appendTo(line.append("    assertTrue(")).append(");");
         }
 
         addLine(node, line);
-
-        line = String.format("}");
-        addLine(node, line);
+        addLine(node, "}");
     }
 
     @Override
     public void preVisit(ASTVoidFunctionCall node) {
-        String line;
-
-        line = String.format("%s;", node.functionCall.toString());
-
-        addLine(node, line);
+        addLine(node, node.functionCall.appendTo(line()).append(';'));
     }
 
     @Override
     public void preVisit(ASTVoidMethodCall node) {
-        String line;
+        addLine(node, node.methodCall.appendCallTo(line()).append(';'));
+    }
 
-        line = String.format("%s;", node);
+    /**
+     * Box unboxed operands so assertEquals compares values with equals() instead
+     * of resolving to its primitive (long/double) overloads.
+     */
+    private StringBuilder appendAssertArgument(StringBuilder sb, ASTExpression expr) {
+        return expr.appendBoxedTo(expr.isUnboxed() ? sb.append("(Object) ") : sb);
+    }
 
-        addLine(node, line);
+    /**
+     * Instances with the same parameters are only emitted once, and instances
+     * sharing a generic method aren't emitted themselves
+     */
+    private boolean isEmitted(ASTFunction node) {
+        if (genericFunctions.isGeneric(node)) {
+            return true;
+        }
+
+        return genericFunctions.get(node) == null && context.functionInstances.get(node) == node;
     }
 
     private boolean inLibrary(ASTNode node) {
-        return ASTClass.libraryClasses.contains(node) || ASTFunction.libraryFunctions.contains(node);
+        return context.libraryClasses.contains(node) || context.libraryFunctions.contains(node);
     }
 
-    private void addLine(ASTNode node, String line) {
+    /**
+     * @return The emptied buffer for assembling a line
+     */
+    private StringBuilder line() {
+        line.setLength(0);
+        return line;
+    }
+
+    private StringBuilder appendIndentation(StringBuilder sb) {
+        for (int i = 0; i < indent * 4; i++) {
+            sb.append(' ');
+        }
+
+        return sb;
+    }
+
+    private void addLine(ASTNode node, CharSequence line) {
         // Don't emit prototypes
         if (this.currentFunction != null && !this.currentFunction.concrete) {
             return;
         }
 
-        String spaces = (indent == 0) ? "" : String.format("%" + (indent * 4) + "s", "");
-
         boolean inTest = node instanceof ASTTest;
         boolean inGlobal = node instanceof ASTGlobalAssignment;
         boolean inClass = this.currentClass != null;
 
+        StringBuilder section;
+
         if (inTest) {
-            testLines.add(String.format("%s%s", spaces, line));
+            section = tests;
         } else if (inGlobal) {
-            globalLines.add(String.format("%s%s", spaces, line));
+            section = globals;
         } else if (inClass) {
-            classLines.add(String.format("%s%s", spaces, line));
+            section = classes;
+        } else {
+            section = function;
+        }
+
+        if (section == function) {
+            functionPositions.putIfAbsent(node, section.length());
         } else {
-            functionLines.add(String.format("%s%s", spaces, line));
+            positions.putIfAbsent(node, new int[] {sections().indexOf(section), section.length()});
+        }
+
+        appendIndentation(section).append(line).append(NEWLINE);
+
+        if (section == function && ++functionLineCount == 2) {
+            declarationsStart = function.length();
         }
     }
 
@@ -0,0 +1,409 @@
+package com.github.lessjava.visitor.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.lessjava.CompilationContext;
+import com.github.lessjava.types.ast.ASTAbstractFunction;
+import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
+import com.github.lessjava.types.ast.ASTAttribute;
+import com.github.lessjava.types.ast.ASTClass;
+import com.github.lessjava.types.ast.ASTExpression;
+import com.github.lessjava.types.ast.ASTFunction;
+import com.github.lessjava.types.ast.ASTFunctionCall;
+import com.github.lessjava.types.ast.ASTGlobalAssignment;
+import com.github.lessjava.types.ast.ASTMemberAccess;
+import com.github.lessjava.types.ast.ASTMethod;
+import com.github.lessjava.types.ast.ASTNode;
+import com.github.lessjava.types.ast.ASTProgram;
+import com.github.lessjava.types.ast.ASTTest;
+import com.github.lessjava.types.ast.ASTVariable;
+import com.github.lessjava.types.ast.ASTVisitor;
+import com.github.lessjava.visitor.LJDefaultASTVisitor;
+
+/**
+ * Drives symbol table construction, function instantiation and type inference
+ * to a fixed point.
+ *
+ * The program is split into units: each global, each test, each group of
+ * functions sharing a name (a prototype and its instances, which calls and
+ * instantiation look up by name), and the classes (one group, since
+ * attributes are looked up by name across classes). The first round visits
+ * every unit. Afterwards only units whose
+ * types changed, and units referring to a name such a unit defines, are
+ * visited again. Once the worklist runs dry a full round confirms the fixed
+ * point, so inference stops under the same condition as re-running every pass
+ * over the whole program.
+ */
+public class LJInferenceWorklist {
+    private final ASTProgram program;
+
+    private final BuildSymbolTables buildSymbolTables;
+    private final LJInstantiateFunctions instantiateFunctions;
+    private final LJASTInferTypes inferTypes;
+    private final LJASTCheckTypesHaveChanged checkTypesHaveChanged;
+
+    // Units to visit in the current round
+    private Set<ASTNode> dirtyUnits = newIdentitySet();
+    private Set<String> dirtyFunctions = new HashSet<>();
+    private boolean dirtyClasses;
+
+    // Units whose types changed in the current round
+    private Set<ASTNode> changedUnits = newIdentitySet();
+    private Set<String> changedFunctions = new HashSet<>();
+    private boolean changedClasses;
+
+    // Names referenced by each unit, and the reverse index
+    private final Map<ASTNode, Set<String>> references = new IdentityHashMap<>();
+    private final Map<String, List<ASTNode>> referencedBy = new HashMap<>();
+
+    private final Map<ASTNode, Integer> unitSizes = new IdentityHashMap<>();
+
+    private int iterations;
+    private long nodesVisited;
+
+    public LJInferenceWorklist(CompilationContext context, ASTProgram program) {
+        this.program = program;
+
+        this.buildSymbolTables = new BuildSymbolTables(context);
+        this.instantiateFunctions = new LJInstantiateFunctions(context);
+        this.inferTypes = new LJASTInferTypes(context);
+        this.checkTypesHaveChanged = new LJASTCheckTypesHaveChanged(context);
+    }
+
+    /**
+     * Runs inference until no unit's types change
+     */
+    public void run() {
+        boolean fullRound = true;
+        scheduleAll();
+
+        while (true) {
+            runRound();
+            iterations++;
+
+            boolean changed = !changedUnits.isEmpty() || !changedFunctions.isEmpty() || changedClasses;
+
+            if (!changed && fullRound) {
+                resolveTypes();
+                return;
+            }
+
+            if (!changed) {
+                fullRound = true;
+                scheduleAll();
+            } else {
+                fullRound = false;
+                scheduleDependents();
+            }
+        }
+    }
+
+    /**
+     * @return Number of rounds run, including the initial and confirming full
+     *         rounds
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return Number of AST nodes visited, summed over all passes and rounds
+     */
+    public long getNodesVisited() {
+        return nodesVisited;
+    }
+
+    private void runRound() {
+        changedUnits = newIdentitySet();
+        changedFunctions = new HashSet<>();
+        changedClasses = false;
+
+        int functionCount = program.functions.size();
+        int methodCount = countMethods();
+
+        // Globals and the symbols of clean functions are re-declared so the
+        // program scope looks the same to dirty units as after a full traversal
+        buildSymbolTables.preVisit(program);
+        for (ASTGlobalAssignment g : program.globals) {
+            visit(g, buildSymbolTables);
+        }
+        for (ASTClass c : program.classes) {
+            if (dirtyClasses) {
+                visit(c, buildSymbolTables);
+            }
+        }
+        for (int i = 0; i < program.functions.size(); i++) {
+            ASTAbstractFunction f = program.functions.get(i);
+
+            if (isDirty(f, functionCount, i)) {
+                visit(f, buildSymbolTables);
+            } else if (f instanceof ASTFunction) {
+                buildSymbolTables.insertFunctionSymbol((ASTFunction) f);
+                nodesVisited++;
+            }
+        }
+        for (ASTTest t : program.tests) {
+            if (dirtyUnits.contains(t)) {
+                visit(t, buildSymbolTables);
+            }
+        }
+        buildSymbolTables.postVisit(program);
+
+        traverseDirty(instantiateFunctions, functionCount, false);
+        traverseDirty(inferTypes, functionCount, false);
+        traverseDirty(checkTypesHaveChanged, functionCount, true);
+
+        for (int i = functionCount; i < program.functions.size(); i++) {
+            changedFunctions.add(program.functions.get(i).name);
+        }
+
+        if (countMethods() != methodCount) {
+            changedClasses = true;
+        }
+    }
+
+    /**
+     * Replaces bound type variables throughout the program, so later passes can
+     * look at types directly
+     */
+    private void resolveTypes() {
+        program.traverse(new LJDefaultASTVisitor() {
+            @Override
+            public void defaultPreVisit(ASTNode node) {
+                if (node instanceof ASTExpression && ((ASTExpression) node).type != null) {
+                    ((ASTExpression) node).type = ((ASTExpression) node).type.resolve();
+                }
+
+                if (node instanceof ASTAbstractFunction) {
+                    ASTAbstractFunction f = (ASTAbstractFunction) node;
+
+                    if (f.returnType != null) {
+                        f.returnType = f.returnType.resolve();
+                    }
+
+                    for (Parameter p : f.parameters) {
+                        p.type = p.type.resolve();
+                    }
+                }
+            }
+        });
+    }
+
+    private void traverseDirty(ASTVisitor pass, int functionCount, boolean recordChanges) {
+        pass.preVisit(program);
+
+        for (ASTGlobalAssignment g : program.globals) {
+            if (dirtyUnits.contains(g)) {
+                visit(g, pass);
+                recordChange(g, recordChanges);
+            }
+        }
+
+        for (ASTClass c : program.classes) {
+            if (dirtyClasses) {
+                visit(c, pass);
+                recordChange(c, recordChanges);
+            }
+        }
+
+        // Functions instantiated during this round are visited by the remaining
+        // passes, as they would be by ASTProgram.traverse()
+        for (int i = 0; i < program.functions.size(); i++) {
+            ASTAbstractFunction f = program.functions.get(i);
+
+            if (isDirty(f, functionCount, i)) {
+                visit(f, pass);
+                recordChange(f, recordChanges);
+            }
+        }
+
+        for (ASTTest t : program.tests) {
+            if (dirtyUnits.contains(t)) {
+                visit(t, pass);
+                recordChange(t, recordChanges);
+            }
+        }
+
+        pass.postVisit(program);
+    }
+
+    private boolean isDirty(ASTAbstractFunction f, int functionCount, int index) {
+        return index >= functionCount || dirtyFunctions.contains(f.name);
+    }
+
+    private void visit(ASTNode unit, ASTVisitor pass) {
+        checkTypesHaveChanged.typesChanged = false;
+        unit.traverse(pass);
+        nodesVisited += sizeOf(unit);
+    }
+
+    private void recordChange(ASTNode unit, boolean recordChanges) {
+        if (!recordChanges || !checkTypesHaveChanged.typesChanged) {
+            return;
+        }
+
+        if (unit instanceof ASTAbstractFunction) {
+            changedFunctions.add(((ASTAbstractFunction) unit).name);
+        } else if (unit instanceof ASTClass) {
+            changedClasses = true;
+        } else {
+            changedUnits.add(unit);
+        }
+    }
+
+    private void scheduleAll() {
+        dirtyUnits = newIdentitySet();
+        dirtyUnits.addAll(program.globals);
+        dirtyUnits.addAll(program.tests);
+        dirtyFunctions = new HashSet<>();
+        for (ASTAbstractFunction f : program.functions) {
+            dirtyFunctions.add(f.name);
+        }
+        dirtyClasses = true;
+    }
+
+    /**
+     * Schedules every changed unit, and every unit referring to a name defined by
+     * a changed unit
+     */
+    private void scheduleDependents() {
+        dirtyUnits = newIdentitySet();
+        dirtyFunctions = new HashSet<>(changedFunctions);
+        dirtyClasses = changedClasses;
+
+        dirtyUnits.addAll(changedUnits);
+
+        Set<String> definedNames = new HashSet<>();
+
+        for (ASTNode unit : changedUnits) {
+            if (unit instanceof ASTGlobalAssignment) {
+                definedNames.add(((ASTGlobalAssignment) unit).assignment.variable.name);
+            }
+        }
+
+        for (ASTAbstractFunction f : program.functions) {
+            if (changedFunctions.contains(f.name)) {
+                definedNames.add(f.name);
+                for (Parameter p : f.parameters) {
+                    definedNames.add(p.name);
+                }
+            }
+        }
+
+        if (changedClasses) {
+            for (ASTClass c : program.classes) {
+                definedNames.add(c.signature.className);
+                for (ASTMethod m : c.block.methods) {
+                    definedNames.add(m.name);
+                }
+                for (ASTAttribute a : c.block.classAttributes) {
+                    definedNames.add(a.assignment.variable.name);
+                }
+
+                // Methods may have been added; look at the class again
+                references.remove(c);
+                unitSizes.remove(c);
+            }
+        }
+
+        indexReferences();
+
+        for (String name : definedNames) {
+            for (ASTNode unit : referencedBy.getOrDefault(name, Collections.emptyList())) {
+                if (unit instanceof ASTAbstractFunction) {
+                    dirtyFunctions.add(((ASTAbstractFunction) unit).name);
+                } else if (unit instanceof ASTClass) {
+                    dirtyClasses = true;
+                } else {
+                    dirtyUnits.add(unit);
+                }
+            }
+        }
+    }
+
+    private void indexReferences() {
+        List<ASTNode> units = new ArrayList<>();
+        units.addAll(program.globals);
+        units.addAll(program.classes);
+        units.addAll(program.functions);
+        units.addAll(program.tests);
+
+        for (ASTNode unit : units) {
+            if (references.containsKey(unit)) {
+                continue;
+            }
+
+            Set<String> names = collectReferences(unit);
+            references.put(unit, names);
+
+            for (String name : names) {
+                referencedBy.computeIfAbsent(name, k -> new ArrayList<>()).add(unit);
+            }
+        }
+    }
+
+    private int countMethods() {
+        int count = 0;
+
+        for (ASTClass c : program.classes) {
+            count += c.block.methods.size();
+        }
+
+        return count;
+    }
+
+    private int sizeOf(ASTNode unit) {
+        Integer size = unitSizes.get(unit);
+
+        if (size == null) {
+            int[] count = new int[1];
+
+            unit.traverse(new LJDefaultASTVisitor() {
+                @Override
+                public void defaultPreVisit(ASTNode node) {
+                    count[0]++;
+                }
+            });
+
+            size = count[0];
+            unitSizes.put(unit, size);
+        }
+
+        return size;
+    }
+
+    private static Set<String> collectReferences(ASTNode unit) {
+        Set<String> names = new HashSet<>();
+
+        unit.traverse(new LJDefaultASTVisitor() {
+            @Override
+            public void preVisit(ASTFunctionCall node) {
+                names.add(node.name);
+            }
+
+            @Override
+            public void preVisit(ASTVariable node) {
+                names.add(node.name);
+            }
+
+            @Override
+            public void preVisit(ASTMemberAccess node) {
+                names.add(node.referencedClassName);
+                names.add(node.var.name);
+            }
+        });
+
+        return names;
+    }
+
+    private static Set<ASTNode> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+}
@@ -3,9 +3,9 @@ package com.github.lessjava.visitor.impl;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.ast.ASTAbstractFunction;
 import com.github.lessjava.types.ast.ASTAbstractFunction.Parameter;
-import com.github.lessjava.types.ast.ASTBlock;
 import com.github.lessjava.types.ast.ASTClass;
 import com.github.lessjava.types.ast.ASTExpression;
 import com.github.lessjava.types.ast.ASTFunction;
@@ -17,14 +17,19 @@ import com.github.lessjava.types.inference.impl.HMTypeClass;
 import com.github.lessjava.visitor.LJAbstractAssignTypes;
 
 public class LJInstantiateFunctions extends LJAbstractAssignTypes {
-    private static ASTProgram program;
+    private ASTProgram program;
+
+    public LJInstantiateFunctions(CompilationContext context) {
+        super(context);
+    }
 
     @Override
     public void preVisit(ASTProgram node) {
         super.preVisit(node);
-        if (LJInstantiateFunctions.program == null) {
-            LJInstantiateFunctions.program = node;
-        }
+        this.program = node;
+
+        // Types may have changed since the last traversal
+        context.functionInstances.index(node);
     }
 
     @Override
@@ -36,10 +41,7 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
     public void postVisit(ASTFunctionCall node) {
         super.postVisit(node);
 
-        ASTAbstractFunction prototype = program.functions.stream()
-            .filter(f -> f.name.equals(node.name) && !f.concrete)
-            .findAny()
-            .orElse(null);
+        ASTAbstractFunction prototype = context.functionInstances.getPrototype(node.name);
 
         if (prototype == null || prototype.body == null) {
             return;
@@ -57,10 +59,6 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
         ASTFunction f = instantiateFunction(prototype, node.arguments);
 
         if (f != null) {
-            if (program.functions.contains(f)) {
-                return;
-            }
-
             program.functions.add(f);
 
             idFunctionMap.get(node.getIdentifyingString()).add(f);
@@ -73,13 +71,7 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
             return null;
         }
 
-        ASTBlock blockCopy = new ASTBlock();
-        blockCopy.statements = prototype.body.statements;
-        blockCopy.variables = prototype.body.variables;
-
-        ASTFunction functionInstance = new ASTFunction(prototype.name, prototype.returnType, blockCopy);
-
-        blockCopy.setParent(functionInstance);
+        ASTFunction functionInstance = new ASTFunction(prototype.name, prototype.returnType, null);
 
         functionInstance.concrete = true;
         functionInstance.parameters = new ArrayList<>();
@@ -90,12 +82,14 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
             functionInstance.parameters.add(parameter);
         }
 
-        for (ASTAbstractFunction f : program.functions) {
-            if (functionInstance.equals(f)) {
-                return null;
-            }
+        if (!context.functionInstances.add(functionInstance)) {
+            return null;
         }
 
+        // Each instance has its own copy of the body, so the types inferred for
+        // one instance don't change those of the others
+        functionInstance.body = prototype.body.clone();
+        functionInstance.traverse(new BuildParentLinks());
         functionInstance.setParent(program);
         functionInstance.setDepth(2);
 
@@ -112,7 +106,7 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
         }
 
         HMTypeClass type = (HMTypeClass) node.invoker.type;
-        ASTClass containingClass = ASTClass.nameClassMap.get(type.name);
+        ASTClass containingClass = context.nameClassMap.get(type.name);
         ASTMethod m = containingClass.getMethod(node.funcCall.name);
 
         if (m != null && m.concrete) {
@@ -122,7 +116,7 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
         m = instantiateMethod(m, node.funcCall.arguments);
 
         if (m != null) {
-            containingClass.block.methods.add(m);
+            containingClass.addMethod(m);
         }
     }
 
@@ -132,15 +126,7 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
             return null;
         }
 
-        ASTClass containingClass = ASTClass.nameClassMap.get(prototype.containingClassName);
-
-        ASTBlock blockCopy = new ASTBlock();
-        blockCopy.statements = prototype.body.statements;
-        blockCopy.variables = prototype.body.variables;
-
-        ASTFunction functionInstance = new ASTFunction(prototype.name, prototype.returnType, blockCopy);
-
-        blockCopy.setParent(functionInstance);
+        ASTFunction functionInstance = new ASTFunction(prototype.name, prototype.returnType, null);
 
         functionInstance.concrete = true;
         functionInstance.parameters = new ArrayList<>();
@@ -156,12 +142,13 @@ public class LJInstantiateFunctions extends LJAbstractAssignTypes {
         functionInstance.setParent(methodInstance);
         functionInstance.setDepth(2);
 
-        for (ASTMethod m : containingClass.block.methods) {
-            if (methodInstance.equals(m)) {
-                return null;
-            }
+        if (!context.functionInstances.add(functionInstance)) {
+            return null;
         }
 
+        functionInstance.body = methodInstance.body = prototype.body.clone();
+        functionInstance.traverse(new BuildParentLinks());
+
         return methodInstance;
     }
 }
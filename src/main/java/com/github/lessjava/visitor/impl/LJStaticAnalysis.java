@@ -1,5 +1,6 @@
 package com.github.lessjava.visitor.impl;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.ast.ASTAssignment;
 import com.github.lessjava.types.ast.ASTBinaryExpr;
 import com.github.lessjava.types.ast.ASTBlock;
@@ -19,6 +20,10 @@ import com.github.lessjava.types.ast.ASTVoidFunctionCall;
 import com.github.lessjava.types.ast.ASTWhileLoop;
 
 public class LJStaticAnalysis extends StaticAnalysis {
+    public LJStaticAnalysis(CompilationContext context) {
+        super(context);
+    }
+
     @Override
     public void preVisit(ASTProgram node) {
     }
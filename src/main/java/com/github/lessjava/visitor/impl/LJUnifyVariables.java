@@ -2,16 +2,22 @@ package com.github.lessjava.visitor.impl;
 
 import java.util.List;
 
+import com.github.lessjava.CompilationContext;
 import com.github.lessjava.types.Symbol;
 import com.github.lessjava.types.ast.ASTVariable;
 import com.github.lessjava.visitor.LJAbstractAssignTypes;
 
 public class LJUnifyVariables extends LJAbstractAssignTypes {
+    public LJUnifyVariables(CompilationContext context) {
+        super(context);
+    }
+
     @Override
     public void preVisit(ASTVariable node) {
-        List<Symbol> symbols = BuildSymbolTables.searchScopesForSymbol(node, node.name);
+        List<Symbol> symbols = node.symbols != null ? node.symbols
+                : BuildSymbolTables.searchScopesForSymbol(node, node.name);
 
-        if (symbols != null && !symbols.isEmpty()) {
+        if (symbols != null) {
             symbols.forEach(s -> node.type = unify(node.type, s.type));
         }
     }
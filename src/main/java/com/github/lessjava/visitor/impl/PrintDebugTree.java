@@ -40,12 +40,10 @@ public class PrintDebugTree extends LJDefaultASTVisitor {
     }
 
     public void indent(ASTNode node) {
-        if (node.attributes.containsKey("depth")) {
-            int level = ((Integer) node.attributes.get("depth")).intValue();
-            while (level > 1) {
-                output.print("  ");
-                level--;
-            }
+        int level = node.getDepth();
+        while (level > 1) {
+            output.print("  ");
+            level--;
         }
     }
 